@@ -0,0 +1,202 @@
+package edu.cwru.sepia.agent;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.cwru.sepia.agent.AstarAgent.MapLocation;
+
+/**
+ * Runs the agent's path searches on every query of Moving AI scenario files and checks the
+ * paths against the optimal lengths of the scenario, without starting the SEPIA engine.
+ *
+ * Each path is walked step by step to make sure it only enters free cells and ends next to
+ * the goal, and its length in steps is compared with the optimal one. A path is counted as
+ * optimal, longer, or failed when it is missing, invalid or shorter than the scenario says
+ * is possible. Every query is timed on its own, after warmup passes over the whole
+ * scenario, and the report gives the percentiles of those latencies.
+ *
+ * Usage: ScenarioBenchmark [name=value ...] file.scen ...
+ *
+ * Options are modes (default astar,jps), warmup passes (default 1) and optimal, which is
+ * scen (default) to trust the lengths in the files or bfs to recompute them with a breadth
+ * first search. The published scenarios need bfs, their lengths are octile distances. The
+ * map a query names is looked up next to its scenario file. The exit status is 1 if any
+ * path failed.
+ */
+public class ScenarioBenchmark {
+
+	// Number of failed queries printed for each scenario and mode
+	static final int FAILURES_SHOWN = 3;
+
+	public static void main(String[] args) throws IOException {
+		Map<String, String> options = new HashMap<String, String>();
+		List<File> scenarios = new ArrayList<File>();
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (separator != -1) {
+				options.put(arg.substring(0, separator).trim(), arg.substring(separator + 1).trim());
+			}
+			else {
+				scenarios.add(new File(arg));
+			}
+		}
+		if (scenarios.isEmpty()) {
+			System.err.println("Usage: ScenarioBenchmark [name=value ...] file.scen ...");
+			return;
+		}
+
+		String[] modes = option(options, "modes", "astar,jps").split(",");
+		int warmup = Integer.parseInt(option(options, "warmup", "1"));
+		boolean recompute = option(options, "optimal", "scen").equals("bfs");
+
+		System.out.printf("%-28s %-6s %7s %7s %7s %7s %9s %9s %9s %9s%n", "Scenario", "Mode", "Queries", "Optimal", "Longer", "Failed",
+				"p50 us", "p90 us", "p99 us", "max us");
+		int failures = 0;
+		for (File scenario : scenarios) {
+			List<MovingAiFormat.Query> queries = MovingAiFormat.readScenario(scenario);
+			Map<String, ObstacleGrid> maps = new HashMap<String, ObstacleGrid>();
+			double[] optimal = new double[queries.size()];
+			for (int i = 0; i < queries.size(); i++) {
+				MovingAiFormat.Query query = queries.get(i);
+				ObstacleGrid obstacles = map(scenario, query, maps);
+				optimal[i] = recompute ? MapGenerator.distances(obstacles, query.startY * query.xExtent + query.startX)[query.goalY * query.xExtent + query.goalX]
+						: query.optimalLength;
+			}
+
+			for (String mode : modes) {
+				failures += run(scenario.getName(), queries, maps, optimal, AstarAgent.SearchMode.valueOf(mode.trim().toUpperCase()), warmup);
+			}
+		}
+
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Runs every query of a scenario with one mode and prints its line of the report
+	 *
+	 * @return the number of failed queries
+	 */
+	static int run(String name, List<MovingAiFormat.Query> queries, Map<String, ObstacleGrid> maps, double[] optimal, AstarAgent.SearchMode mode, int warmup) {
+		AstarAgent agent = new AstarAgent(0, new String[] {mode.name().toLowerCase(), "planBudget=10000000000"});
+		MapLocation[] starts = new MapLocation[queries.size()];
+		MapLocation[] goals = new MapLocation[queries.size()];
+		for (int i = 0; i < queries.size(); i++) {
+			starts[i] = new MapLocation(queries.get(i).startX, queries.get(i).startY, null, 0);
+			goals[i] = new MapLocation(queries.get(i).goalX, queries.get(i).goalY, null, 0);
+		}
+
+		for (int pass = 0; pass < warmup; pass++) {
+			for (int i = 0; i < queries.size(); i++) {
+				SearchBenchmark.path(agent, mode, starts[i], goals[i], null, maps.get(queries.get(i).map));
+			}
+		}
+
+		long[] latency = new long[queries.size()];
+		int optimalCount = 0;
+		int longerCount = 0;
+		List<String> failed = new ArrayList<String>();
+		for (int i = 0; i < queries.size(); i++) {
+			MovingAiFormat.Query query = queries.get(i);
+			ObstacleGrid obstacles = maps.get(query.map);
+
+			long startTime = System.nanoTime();
+			GridPath path = SearchBenchmark.path(agent, mode, starts[i], goals[i], null, obstacles);
+			latency[i] = System.nanoTime() - startTime;
+
+			int steps = steps(obstacles, query, path);
+			if (optimal[i] < 0 ? steps == -1 : Math.abs(steps - optimal[i]) < 1e-6) {
+				optimalCount++;
+			}
+			else if (steps > optimal[i] && optimal[i] >= 0) {
+				longerCount++;
+			}
+			else {
+				failed.add(String.format("  query %d (%d, %d) -> (%d, %d): optimal %s, %s", i, query.startX, query.startY, query.goalX, query.goalY,
+						optimal[i] < 0 ? "none" : String.format("%.2f", optimal[i]), steps == -1 ? "no valid path" : steps + " steps"));
+			}
+		}
+
+		Arrays.sort(latency);
+		System.out.printf("%-28s %-6s %7d %7d %7d %7d %9.1f %9.1f %9.1f %9.1f%n", name, mode.name().toLowerCase(), queries.size(), optimalCount,
+				longerCount, failed.size(), percentile(latency, 0.5) / 1e3, percentile(latency, 0.9) / 1e3, percentile(latency, 0.99) / 1e3,
+				percentile(latency, 1) / 1e3);
+		for (String failure : failed.subList(0, Math.min(FAILURES_SHOWN, failed.size()))) {
+			System.out.println(failure);
+		}
+		return failed.size();
+	}
+
+	/**
+	 * Walks a path from the start of a query
+	 *
+	 * @return the number of steps to the goal, or -1 if there is no path or it leaves the free
+	 * cells or skips a cell
+	 */
+	static int steps(ObstacleGrid obstacles, MovingAiFormat.Query query, GridPath path) {
+		if (query.startX == query.goalX && query.startY == query.goalY) {
+			return 0;
+		}
+		if (path == null) {
+			return -1;
+		}
+
+		int xExtent = obstacles.xExtent;
+		int x = query.startX;
+		int y = query.startY;
+		for (int cell : path.cells()) {
+			int nextX = cell % xExtent;
+			int nextY = cell / xExtent;
+			if (Math.abs(nextX - x) > 1 || Math.abs(nextY - y) > 1 || !obstacles.isPassable(nextX, nextY)) {
+				return -1;
+			}
+			x = nextX;
+			y = nextY;
+		}
+
+		// The path leaves out the goal, which is one more step away
+		if (Math.abs(query.goalX - x) > 1 || Math.abs(query.goalY - y) > 1) {
+			return -1;
+		}
+		return path.size() + 1;
+	}
+
+	/**
+	 * @return the map a query names, read from next to the scenario the first time
+	 */
+	static ObstacleGrid map(File scenario, MovingAiFormat.Query query, Map<String, ObstacleGrid> maps) throws IOException {
+		ObstacleGrid obstacles = maps.get(query.map);
+		if (obstacles == null) {
+			obstacles = MovingAiFormat.readMap(new File(scenario.getAbsoluteFile().getParentFile(), query.map));
+			maps.put(query.map, obstacles);
+		}
+		if (!obstacles.fits(query.xExtent, query.yExtent)) {
+			throw new IOException(scenario + " expects " + query.map + " to be " + query.xExtent + "x" + query.yExtent + ", it is "
+					+ obstacles.xExtent + "x" + obstacles.yExtent);
+		}
+		return obstacles;
+	}
+
+	/**
+	 * @param sorted values in ascending order
+	 * @param fraction from 0 to 1
+	 * @return the smallest value that at least that fraction of the values do not exceed
+	 */
+	static long percentile(long[] sorted, double fraction) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(fraction * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+	}
+
+	private static String option(Map<String, String> options, String name, String defaultValue) {
+		return options.containsKey(name) ? options.get(name) : defaultValue;
+	}
+}
@@ -0,0 +1,274 @@
+package edu.cwru.sepia.agent;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import edu.cwru.sepia.agent.AstarAgent.MapLocation;
+
+/**
+ * Benchmarks the agent's path searches on the maze maps and on larger generated grids,
+ * without starting the SEPIA engine.
+ *
+ * Every map and search mode is warmed up first and then measured over several timed
+ * iterations, each of which calls the search in a loop. The report gives the throughput
+ * with its spread across iterations, the average latency of one search, and the bytes
+ * allocated per search and per second as counted by the JVM for the benchmark thread.
+ *
+ * Usage: SearchBenchmark [name=value ...] [map.xml ...]
+ *
+ * Options are modes (default astar,jps,hpa,ara), sizes of the generated square maps
+ * (default 64,128,256), density of their obstacles (default 0.25), warmup and time in
+ * milliseconds per iteration (default 1000 each) and iterations (default 5). Without map
+ * files every data/maze_*.xml map is used.
+ *
+ * The dial mode runs BucketSearch on the same query as astar with every cell costing 1,
+ * which compares its bucket queue with the heap of GridSearch.
+ *
+ * The batch mode is not a mode of the agent either: one run is a PathQueryService batch of
+ * BATCH_SIZE queries between random free cells, on a pool of threads (default the number
+ * of processors), and its path is the summed length. Bytes are only counted for the
+ * benchmark thread, so they leave out what the pool allocates.
+ */
+public class SearchBenchmark {
+
+	// Keeps the JIT from dropping searches whose results are never read
+	static volatile int sink;
+
+	// Number of queries in each run of the batch mode
+	static final int BATCH_SIZE = 256;
+
+	public static void main(String[] args) throws IOException {
+		Map<String, String> options = new HashMap<String, String>();
+		List<GridMap> maps = new ArrayList<GridMap>();
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (separator != -1) {
+				options.put(arg.substring(0, separator).trim(), arg.substring(separator + 1).trim());
+			}
+			else {
+				maps.add(GridMap.load(new File(arg)));
+			}
+		}
+
+		if (maps.isEmpty()) {
+			File[] files = new File("data").listFiles();
+			if (files != null) {
+				Arrays.sort(files);
+				for (File file : files) {
+					if (file.getName().startsWith("maze_") && file.getName().endsWith(".xml") && !file.getName().endsWith("_config.xml")) {
+						maps.add(GridMap.load(file));
+					}
+				}
+			}
+		}
+		double density = Double.parseDouble(option(options, "density", "0.25"));
+		for (String size : option(options, "sizes", "64,128,256").split(",")) {
+			if (!size.trim().isEmpty()) {
+				maps.add(GridMap.generate(Integer.parseInt(size.trim()), Integer.parseInt(size.trim()), density, 1));
+			}
+		}
+
+		String[] modes = option(options, "modes", "astar,jps,hpa,ara").split(",");
+		long warmup = Long.parseLong(option(options, "warmup", "1000")) * 1000000;
+		long time = Long.parseLong(option(options, "time", "1000")) * 1000000;
+		int iterations = Integer.parseInt(option(options, "iterations", "5"));
+		ForkJoinPool pool = new ForkJoinPool(Integer.parseInt(option(options, "threads", Integer.toString(Runtime.getRuntime().availableProcessors()))));
+
+		System.out.printf("%-28s %-6s %6s %14s %10s %12s %10s%n", "Map", "Mode", "Path", "ops/s", "us/op", "B/op", "MB/s");
+		for (GridMap map : maps) {
+			for (String mode : modes) {
+				Search search = search(map, mode.trim(), pool);
+				int length = search.run();
+				Result result = measure(search, warmup, time, iterations);
+				System.out.printf("%-28s %-6s %6s %14s %10.2f %12.0f %10.1f%n", map.name, mode.trim(), length == -1 ? "none" : Integer.toString(length),
+						String.format("%.0f +- %.0f", result.opsPerSecond, result.error), 1e6 / result.opsPerSecond, result.bytesPerOp,
+						result.bytesPerOp * result.opsPerSecond / (1024 * 1024));
+			}
+		}
+		pool.shutdown();
+	}
+
+	/**
+	 * One path query that can be run repeatedly
+	 */
+	interface Search {
+		/**
+		 * @return the number of steps in the path found, or -1 if there is none
+		 */
+		int run();
+	}
+
+	static class Result {
+		double opsPerSecond;
+		double error;
+		double bytesPerOp;
+	}
+
+	/**
+	 * Builds the query a search mode makes for the map. Each mode gets its own agent, so
+	 * structures an agent keeps per map are built during the warmup and reused afterwards.
+	 */
+	static Search search(final GridMap map, String mode, ForkJoinPool pool) {
+		if (mode.equals("batch")) {
+			return batch(map, pool);
+		}
+		if (mode.equals("dial")) {
+			return dial(map);
+		}
+
+		final AstarAgent agent = new AstarAgent(0, new String[] {mode, "planBudget=10000000000"});
+		final MapLocation start = new MapLocation(map.footmanX, map.footmanY, null, 0);
+		final MapLocation goal = new MapLocation(map.townhallX, map.townhallY, null, 0);
+		final MapLocation enemy = map.hasEnemy() ? new MapLocation(map.enemyX, map.enemyY, null, 0) : null;
+
+		final AstarAgent.SearchMode searchMode = AstarAgent.SearchMode.valueOf(mode.toUpperCase());
+		return new Search() {
+			public int run() {
+				return length(path(agent, searchMode, start, goal, enemy, map.obstacles));
+			}
+		};
+	}
+
+	/**
+	 * Runs one search of a mode that plans from scratch on every call
+	 *
+	 * @return the path the agent would walk, or null if it found none
+	 * @throws IllegalArgumentException if the mode keeps state between searches
+	 */
+	static GridPath path(AstarAgent agent, AstarAgent.SearchMode mode, MapLocation start, MapLocation goal, MapLocation enemy, ObstacleGrid obstacles) {
+		switch (mode) {
+		case ASTAR:
+		case JPS:
+			return agent.AstarSearch(start, goal, enemy, obstacles);
+		case HPA:
+			return agent.HpaSearch(start, goal, enemy, obstacles);
+		case ARA:
+			return agent.AraSearch(start, goal, enemy, obstacles);
+		case THETA:
+			return agent.ThetaStarSearch(start, goal, enemy, obstacles);
+		default:
+			throw new IllegalArgumentException("Mode " + mode.name().toLowerCase() + " keeps state between searches and is not benchmarked");
+		}
+	}
+
+	/**
+	 * Builds the query of the map for BucketSearch on terrain where every cell costs 1
+	 */
+	static Search dial(final GridMap map) {
+		final BucketSearch search = new BucketSearch(map.obstacles, new TerrainCosts(map.obstacles.xExtent, map.obstacles.yExtent));
+
+		return new Search() {
+			public int run() {
+				search.beginSearch();
+				if (map.hasEnemy()) {
+					search.block(map.enemyX, map.enemyY);
+				}
+				int goal = search.search(map.footmanX, map.footmanY, map.townhallX, map.townhallY);
+				int[] cells = goal == -1 ? null : search.path(goal);
+				return cells == null ? -1 : cells.length;
+			}
+		};
+	}
+
+	/**
+	 * Builds a batch of queries between random free cells of the map, the same for every run
+	 */
+	static Search batch(GridMap map, ForkJoinPool pool) {
+		final PathQueryService service = new PathQueryService(map.obstacles, pool, false);
+		final int[] starts = new int[BATCH_SIZE];
+		final int[] goals = new int[BATCH_SIZE];
+
+		Random random = new Random(1);
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			starts[i] = freeCell(map.obstacles, random);
+			goals[i] = freeCell(map.obstacles, random);
+		}
+
+		return new Search() {
+			public int run() {
+				int length = 0;
+				for (int[] path : service.findPaths(starts, goals)) {
+					length += path == null ? 0 : path.length;
+				}
+				return length;
+			}
+		};
+	}
+
+	static Result measure(Search search, long warmup, long time, int iterations) {
+		runFor(search, warmup);
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		double[] throughput = new double[iterations];
+		long totalOps = 0;
+		long totalBytes = 0;
+		for (int i = 0; i < iterations; i++) {
+			long bytesBefore = threads.getThreadAllocatedBytes(thread);
+			long start = System.nanoTime();
+			long ops = runFor(search, time);
+			long elapsed = System.nanoTime() - start;
+			totalBytes += threads.getThreadAllocatedBytes(thread) - bytesBefore;
+			totalOps += ops;
+			throughput[i] = ops * 1e9 / elapsed;
+		}
+
+		Result result = new Result();
+		for (double value : throughput) {
+			result.opsPerSecond += value / iterations;
+		}
+		double variance = 0;
+		for (double value : throughput) {
+			variance += (value - result.opsPerSecond) * (value - result.opsPerSecond);
+		}
+		result.error = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+		result.bytesPerOp = (double) totalBytes / totalOps;
+		return result;
+	}
+
+	/**
+	 * Runs the search until the time is up, reading the clock only every few calls
+	 *
+	 * @return the number of searches run
+	 */
+	static long runFor(Search search, long nanos) {
+		long end = System.nanoTime() + nanos;
+		long ops = 0;
+		int checksum = 0;
+		do {
+			for (int i = 0; i < 16; i++) {
+				checksum += search.run();
+			}
+			ops += 16;
+		} while (System.nanoTime() < end);
+		sink = checksum;
+		return ops;
+	}
+
+	static int freeCell(ObstacleGrid obstacles, Random random) {
+		while (true) {
+			int x = random.nextInt(obstacles.xExtent);
+			int y = random.nextInt(obstacles.yExtent);
+			if (obstacles.isPassable(x, y)) {
+				return y * obstacles.xExtent + x;
+			}
+		}
+	}
+
+	static int length(GridPath path) {
+		return path == null ? -1 : path.size();
+	}
+
+	private static String option(Map<String, String> options, String name, String defaultValue) {
+		return options.containsKey(name) ? options.get(name) : defaultValue;
+	}
+}
@@ -0,0 +1,288 @@
+package edu.cwru.sepia.agent;
+
+import java.util.Arrays;
+
+/**
+ * Anytime Repairing A* (ARA*) on an 8-connected grid where every step costs 1.
+ *
+ * A query first runs weighted A* with the heuristic inflated by epsilon, which finds a path
+ * that is at most epsilon times longer than the shortest one after few expansions. Each
+ * following iteration lowers epsilon and reuses the previous search effort, until epsilon
+ * reaches 1 and the path is optimal. All of the work is done inside improve(), which
+ * stops at a deadline and picks up where it left off on the next call, so the time spent
+ * per call is bounded no matter how large the map is.
+ *
+ * See Likhachev, Gordon and Thrun, "ARA*: Anytime A* with Provable Bounds on
+ * Sub-Optimality" (NIPS 2003).
+ */
+class AnytimeSearch {
+
+	// How often the clock is read while expanding
+	private static final int EXPANSIONS_PER_CLOCK_CHECK = 64;
+
+	final int xExtent;
+	final int yExtent;
+	final ObstacleGrid obstacles;
+	private final float initialEpsilon;
+	private final float epsilonStep;
+
+	private final float[] g;
+	private final int[] parent;
+	private final int[] seen;
+	private final int[] closed;
+	private final int[] inconsistent;
+	private final long[] blocked;
+	private final IndexedMinHeap openList;
+
+	// Cells that were improved after being closed in the current iteration
+	private final int[] inconsistentList;
+	private int inconsistentCount;
+
+	private int query;
+	private int iteration;
+	private int start;
+	private int goal;
+	private int goalX;
+	private int goalY;
+	private float epsilon;
+	private boolean searching;
+
+	private int[] solution;
+	private float solutionEpsilon;
+
+	/**
+	 * Allocates the search arrays for a map without static obstacles
+	 *
+	 * @param xExtent Width of the map
+	 * @param yExtent Height of the map
+	 * @param initialEpsilon heuristic inflation of the first iteration, at least 1
+	 * @param epsilonStep how much epsilon is lowered after each iteration
+	 */
+	public AnytimeSearch(int xExtent, int yExtent, float initialEpsilon, float epsilonStep) {
+		this(new ObstacleGrid(xExtent, yExtent), initialEpsilon, epsilonStep);
+	}
+
+	/**
+	 * Allocates the search arrays for the map of an obstacle grid
+	 *
+	 * @param obstacles the static obstacles, read by every query
+	 * @param initialEpsilon heuristic inflation of the first iteration, at least 1
+	 * @param epsilonStep how much epsilon is lowered after each iteration
+	 */
+	public AnytimeSearch(ObstacleGrid obstacles, float initialEpsilon, float epsilonStep) {
+		this.obstacles = obstacles;
+		this.xExtent = obstacles.xExtent;
+		this.yExtent = obstacles.yExtent;
+		this.initialEpsilon = initialEpsilon;
+		this.epsilonStep = epsilonStep;
+
+		int size = xExtent * yExtent;
+		g = new float[size];
+		parent = new int[size];
+		seen = new int[size];
+		closed = new int[size];
+		inconsistent = new int[size];
+		blocked = new long[(size + 63) >>> 6];
+		openList = new IndexedMinHeap(size);
+		inconsistentList = new int[size];
+	}
+
+	/**
+	 * Forgets the previous query and the cells blocked for it. Block any cells that are
+	 * impassable besides the static obstacles and then call start().
+	 */
+	public void beginQuery() {
+		Arrays.fill(blocked, 0);
+		openList.clear();
+		inconsistentCount = 0;
+		solution = null;
+		searching = false;
+		query++;
+		iteration++;
+	}
+
+	/**
+	 * Marks a cell as impassable for the current query. Out of bounds cells are ignored.
+	 *
+	 * @param x X coordinate of the cell
+	 * @param y Y coordinate of the cell
+	 */
+	public void block(int x, int y) {
+		if (x >= 0 && y >= 0 && x < xExtent && y < yExtent) {
+			int cell = y * xExtent + x;
+			blocked[cell >>> 6] |= 1L << cell;
+		}
+	}
+
+	/**
+	 * Sets up the first weighted search of the query. No expansions happen until improve().
+	 *
+	 * @param startX X coordinate of the start
+	 * @param startY Y coordinate of the start
+	 * @param goalX X coordinate of the goal
+	 * @param goalY Y coordinate of the goal
+	 */
+	public void start(int startX, int startY, int goalX, int goalY) {
+		this.start = startY * xExtent + startX;
+		this.goal = goalY * xExtent + goalX;
+		this.goalX = goalX;
+		this.goalY = goalY;
+		this.epsilon = initialEpsilon;
+
+		g[start] = 0;
+		parent[start] = -1;
+		seen[start] = query;
+		openList.insert(start, key(start));
+		searching = true;
+	}
+
+	/**
+	 * Continues the query until the deadline passes or the path is known to be optimal
+	 *
+	 * @param deadline value of System.nanoTime() at which to stop
+	 * @return true if a better path was found during this call
+	 */
+	public boolean improve(long deadline) {
+		boolean improved = false;
+		int expansions = 0;
+
+		while (searching) {
+			// One iteration is done once no open cell can lead to a cheaper goal under this epsilon
+			if (openList.isEmpty() || goalCost() <= openList.peekKey()) {
+				if (goalCost() < Float.POSITIVE_INFINITY) {
+					publishSolution();
+					improved = true;
+				}
+				if (epsilon <= 1 || goalCost() == Float.POSITIVE_INFINITY) {
+					searching = false;
+					break;
+				}
+				nextIteration();
+				continue;
+			}
+
+			if (++expansions % EXPANSIONS_PER_CLOCK_CHECK == 0 && System.nanoTime() >= deadline) {
+				break;
+			}
+
+			int cell = openList.poll();
+			closed[cell] = iteration;
+			expand(cell);
+		}
+
+		return improved;
+	}
+
+	/**
+	 * @return true while the query still has work left to do
+	 */
+	public boolean isSearching() {
+		return searching;
+	}
+
+	/**
+	 * @return the best path of the query from the first step up to and including the goal,
+	 * or null if none has been found yet
+	 */
+	public int[] solution() {
+		return solution;
+	}
+
+	/**
+	 * @return the bound on how much longer than optimal the current solution can be
+	 */
+	public float solutionEpsilon() {
+		return solutionEpsilon;
+	}
+
+	/**
+	 * @return the counters of the open list, which add up over queries until reset
+	 */
+	public SearchCounters counters() {
+		return openList.counters;
+	}
+
+	private void expand(int cell) {
+		int x = cell % xExtent;
+		int y = cell / xExtent;
+		float cost = g[cell] + 1;
+
+		for (int free = obstacles.neighborMask(x, y); free != 0; free &= free - 1) {
+			int direction = Integer.numberOfTrailingZeros(free);
+			int neighborX = x + GridSearch.DX[direction];
+			int neighborY = y + GridSearch.DY[direction];
+			int neighbor = neighborY * xExtent + neighborX;
+			if ((blocked[neighbor >>> 6] & (1L << neighbor)) != 0) {
+				continue;
+			}
+			if (seen[neighbor] == query && g[neighbor] <= cost) {
+				continue;
+			}
+
+			g[neighbor] = cost;
+			parent[neighbor] = cell;
+			seen[neighbor] = query;
+
+			// A cell closed in this iteration waits for the next one instead of being reopened
+			if (closed[neighbor] == iteration) {
+				if (inconsistent[neighbor] != iteration) {
+					inconsistent[neighbor] = iteration;
+					inconsistentList[inconsistentCount++] = neighbor;
+				}
+			}
+			else if (openList.contains(neighbor)) {
+				openList.decreaseKey(neighbor, key(neighbor));
+			}
+			else {
+				openList.insert(neighbor, key(neighbor));
+			}
+		}
+	}
+
+	/**
+	 * Lowers epsilon, moves the inconsistent cells back to the open list and re-keys it
+	 */
+	private void nextIteration() {
+		epsilon = Math.max(1, epsilon - epsilonStep);
+
+		int count = 0;
+		for (int i = 0; i < openList.size(); i++) {
+			inconsistentList[inconsistentCount + count++] = openList.idAt(i);
+		}
+		openList.clear();
+
+		iteration++;
+		for (int i = 0; i < inconsistentCount + count; i++) {
+			int cell = inconsistentList[i];
+			if (!openList.contains(cell)) {
+				openList.insert(cell, key(cell));
+			}
+		}
+		inconsistentCount = 0;
+	}
+
+	private void publishSolution() {
+		// A parent's cost can drop after its children were relaxed, so the chain can be shorter than g
+		int length = 0;
+		for (int cell = goal; cell != start; cell = parent[cell]) {
+			length++;
+		}
+
+		int[] path = new int[length];
+		for (int cell = goal, i = length - 1; i >= 0; cell = parent[cell], i--) {
+			path[i] = cell;
+		}
+		solution = path;
+		solutionEpsilon = epsilon;
+	}
+
+	private float goalCost() {
+		return seen[goal] == query ? g[goal] : Float.POSITIVE_INFINITY;
+	}
+
+	private double key(int cell) {
+		int xDistance = Math.abs(cell % xExtent - goalX);
+		int yDistance = Math.abs(cell / xExtent - goalY);
+		return g[cell] + epsilon * Math.max(xDistance, yDistance);
+	}
+}
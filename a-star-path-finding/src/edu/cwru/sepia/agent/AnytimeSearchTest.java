@@ -0,0 +1,61 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class AnytimeSearchTest {
+
+	/*
+	 * F - - - -
+	 * x x x - x
+	 * H - - - -
+	 */
+	private static AnytimeSearch exampleSearch() {
+		AnytimeSearch search = new AnytimeSearch(5, 3, 3.0f, 0.5f);
+		search.beginQuery();
+		search.block(0, 1);
+		search.block(1, 1);
+		search.block(2, 1);
+		search.block(4, 1);
+		search.start(0, 0, 0, 2);
+		return search;
+	}
+
+	@Test
+	public void testExamplePathIsOptimalWhenFinished() {
+		AnytimeSearch search = exampleSearch();
+		search.improve(Long.MAX_VALUE);
+
+		assertFalse(search.isSearching());
+		assertEquals(1.0f, search.solutionEpsilon(), 0);
+		assertArrayEquals(new int[] {1, 2, 8, 12, 11, 10}, search.solution());
+	}
+
+	@Test
+	public void testSearchResumesAfterDeadline() {
+		AnytimeSearch search = exampleSearch();
+
+		// A deadline in the past still lets every call make some progress
+		for (int calls = 0; search.isSearching(); calls++) {
+			search.improve(0);
+			assertTrue(calls < 100);
+		}
+		assertEquals(6, search.solution().length);
+	}
+
+	@Test
+	public void testUnreachableGoal() {
+		AnytimeSearch search = exampleSearch();
+		search.beginQuery();
+		for (int x = 0; x < 5; x++) {
+			search.block(x, 1);
+		}
+		search.start(0, 0, 0, 2);
+		search.improve(Long.MAX_VALUE);
+
+		assertFalse(search.isSearching());
+		assertNull(search.solution());
+	}
+
+}
@@ -1,14 +1,23 @@
 package edu.cwru.sepia.agent;
 
 import edu.cwru.sepia.action.Action;
+import edu.cwru.sepia.action.ActionFeedback;
+import edu.cwru.sepia.action.ActionResult;
+import edu.cwru.sepia.action.ActionType;
+import edu.cwru.sepia.action.LocatedAction;
 import edu.cwru.sepia.environment.model.history.History;
 import edu.cwru.sepia.environment.model.state.ResourceNode;
 import edu.cwru.sepia.environment.model.state.State;
 import edu.cwru.sepia.environment.model.state.Unit;
 import edu.cwru.sepia.util.Direction;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.text.SimpleDateFormat;
 import java.util.*;
 
 public class AstarAgent extends Agent {
@@ -61,18 +70,260 @@ public class AstarAgent extends Agent {
     	}
     }
 
-    Stack<MapLocation> path;
+    /**
+     * The search used by findPath. Selected by the first agent argument in the config file,
+     * e.g. <Argument>jps</Argument>. Any further arguments are name=value options, e.g.
+     * <Argument>planBudget=500000</Argument>
+     */
+    enum SearchMode
+    {
+        ASTAR,  // plain A* over every cell
+        JPS,    // Jump Point Search, same path lengths with far fewer expansions
+        DSTAR,  // D* Lite, keeps its search tree between replans and only repairs what changed
+        HPA,    // hierarchical A* over precomputed cluster entrances, near optimal on large maps
+        FLOW,   // distance field to the townhall, the next step is a lookup made every turn
+        ARA,    // anytime A*, plans within a per-turn time budget and shortens the path on later turns
+        SQUAD,  // windowed cooperative A* for every footman, the plans never put two units on one cell
+        RTAA,   // real-time A*, a bounded lookahead picks each move and learns better heuristic values
+        CPD,    // reads the path off a first move database built offline, A* when it does not fit the map
+        PREDICT, // space-time A* around where the enemy footman is forecast to walk, waits or detours ahead of it
+        THETA   // lazy Theta* waypoints joined by lines of sight, each leg walked as one compound move
+    }
+
+    GridPath path;
     int footmanID, townhallID, enemyFootmanID;
-    MapLocation nextLoc;
+    int enemyPlayerNum;
+    int nextCell = -1;
+
+    // every footman of this player, in the order their plans are stored in SQUAD mode
+    List<Integer> squadIDs;
+
+    // static obstacles of the current map, one bit per cell, and the cell of every resource in it
+    private transient ObstacleGrid obstacles;
+    private transient Map<Integer, Integer> resourceCells;
+    private transient List<Integer> knownResourceIDs;
+
+    // search arrays reused across replans, sized for the current map
+    private transient GridSearch searchCore;
+
+    // region label of every free cell, so a walled off townhall is rejected without a search
+    private transient ConnectivityIndex connectivity;
+
+    // incremental planner kept across replans in DSTAR mode
+    private transient DStarLite incrementalPlanner;
+
+    // cluster abstraction kept across replans in HPA mode, hpaCluster=<n> sets the cluster size
+    // in cells, which otherwise grows with the map
+    private transient HierarchicalGrid abstractGraph;
+
+    // distance field to the townhall kept across turns in FLOW mode
+    private transient FlowField flowField;
+
+    // where the DSTAR, HPA or FLOW structures last saw the enemy footman
+    private MapLocation plannerEnemyLoc;
+
+    // anytime planner kept across turns in ARA mode, and the cell its current query started from
+    private static final long DEFAULT_PLAN_BUDGET = 1000000; // nsecs
+    private static final float ARA_INITIAL_EPSILON = 3.0f;
+    private static final float ARA_EPSILON_STEP = 0.5f;
+    private transient AnytimeSearch anytimePlanner;
+    private int anytimeStartCell;
+
+    // how the per-turn planning budget was spent in ARA mode
+    private long planBudgetGranted = 0; // nsecs
+    private long planBudgetUsed = 0; // nsecs
+    private int planningTurns = 0;
+    private int planBudgetOverruns = 0;
+
+    // cooperative planner and the plans being followed in SQUAD mode, replanned every window/2 turns
+    private static final int DEFAULT_WINDOW = 16;
+    private transient CooperativePlanner squadPlanner;
+    private transient int[][] squadPlans;
+    private int squadStep;
+    private int squadReplans = 0;
+
+    // lookahead search and the heuristic values it learned in RTAA mode, saved with the player data
+    private static final int DEFAULT_LOOKAHEAD = 32;
+    private transient RealTimeSearch realTimePlanner;
+    private transient HeuristicTable learnedHeuristic;
+    private int realTimeSteps = 0;
+    private int realTimeExpansions = 0;
+
+    // cost of stepping onto each cell in ASTAR mode from the file given as terrain=<file>, plus
+    // enemyPenalty=<n> on the cells around the enemy footman, searched with a bucket queue
+    private static final int ENEMY_PENALTY_RADIUS = 2;
+    private transient TerrainCosts terrain;
+    private transient TerrainCosts mapTerrain;
+    private transient BucketSearch bucketSearch;
+
+    // first moves of the shortest paths of the map in CPD mode, from the file given as database=<file>
+    private transient FirstMoveDatabase firstMoves;
+    private int firstMoveLookups = 0;
+    private int firstMoveFallbacks = 0;
+
+    // results of earlier ASTAR, JPS and HPA searches, kept across episodes and saved with the player data
+    private static final int DEFAULT_PATH_CACHE_SIZE = 64;
+    private transient PathCache pathCache;
+
+    // landmark distance tables that tighten the A* heuristic in ASTAR and JPS mode, shared by layout across episodes
+    private transient LandmarkHeuristic landmarks;
+
+    // forecast of the enemy footman from its moves and orders, and the space-time planner that walks around it in PREDICT mode
+    private static final int DEFAULT_HORIZON = 16;
+    private transient BlockerPredictor blockerPredictor;
+    private transient SpaceTimeSearch spaceTimePlanner;
+
+    // turn the current path was planned on, the forecast it went around starts on that turn
+    private int planTurn;
+
+    // paths replanned by middleStep because the enemy footman got in the way
+    private int replans = 0;
+
+    // paths planned ahead on a background thread in ASTAR and JPS mode around the cells the enemy
+    // footman could step onto next, speculate=<n> keeps up to n of them
+    private transient SpeculativePlanner speculativePlanner;
+
+    // any-angle search and the ends of the legs of its path in THETA mode, where path holds every cell walked
+    private transient ThetaSearch thetaSearch;
+    private transient GridPath legs;
+
+    // the last cell of the path, or its start, that the footman was seen on in THETA mode
+    private int thetaCell = -1;
+
+    // actions given to the footmen, one per footman per turn it was told something new
+    private int actionsIssued = 0;
+
+    // one record per search written to the directory given as metrics=<dir> at the end of every episode
+    private transient SearchMetrics metrics;
+    private long cacheHitsBeforeSearch;
 
     private long totalPlanTime = 0; // nsecs
     private long totalExecutionTime = 0; //nsecs
 
+    private final SearchMode searchMode;
+    private final long planBudget; // nsecs
+    private final int window; // turns
+    private final int landmarkCount;
+    private final int lookahead;
+    private final int horizon; // turns
+    private final int enemyPenalty;
+    private final int hpaClusterSize; // cells, 0 picks one for the map
+
     public AstarAgent(int playernum)
+    {
+        this(playernum, new String[0]);
+    }
+
+    public AstarAgent(int playernum, String[] args)
     {
         super(playernum);
 
-        System.out.println("Constructed AstarAgent");
+        SearchMode mode = SearchMode.ASTAR;
+        if(args.length >= 1) {
+            try {
+                mode = SearchMode.valueOf(args[0].trim().toUpperCase());
+            } catch(IllegalArgumentException e) {
+                System.err.println("Unknown search mode " + args[0] + ". Defaulting to " + mode);
+            }
+        }
+        searchMode = mode;
+
+        Map<String, String> options = parseOptions(args);
+        planBudget = longOption(options, "planBudget", DEFAULT_PLAN_BUDGET);
+        window = (int) Math.max(2, longOption(options, "window", DEFAULT_WINDOW));
+        landmarkCount = (int) Math.max(0, longOption(options, "landmarks", 0));
+        lookahead = (int) Math.max(1, longOption(options, "lookahead", DEFAULT_LOOKAHEAD));
+        horizon = (int) Math.max(1, longOption(options, "horizon", DEFAULT_HORIZON));
+        enemyPenalty = (int) Math.min(TerrainCosts.MAX_COST - 1, Math.max(0, longOption(options, "enemyPenalty", 0)));
+        hpaClusterSize = (int) Math.max(0, longOption(options, "hpaCluster", 0));
+
+        if(options.containsKey("terrain")) {
+            if(searchMode != SearchMode.ASTAR) {
+                System.err.println("Terrain costs are only used in ASTAR mode");
+            }
+            else {
+                try {
+                    terrain = TerrainCosts.load(new File(options.get("terrain")));
+                } catch(IOException e) {
+                    System.err.println("Failed to load the terrain costs: " + e.getMessage());
+                }
+            }
+        }
+
+        if(searchMode == SearchMode.CPD) {
+            if(options.containsKey("database")) {
+                try {
+                    firstMoves = FirstMoveDatabase.read(new File(options.get("database")));
+                } catch(IOException e) {
+                    System.err.println("Failed to load the first move database: " + e.getMessage());
+                }
+            }
+            else {
+                System.err.println("No database=<file> argument. Every path will be searched with A*");
+            }
+        }
+
+        if(options.containsKey("metrics")) {
+            String runName = searchMode.name().toLowerCase() + "-player" + playernum + "-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+            metrics = new SearchMetrics(new File(options.get("metrics")), runName);
+        }
+
+        int speculate = (int) longOption(options, "speculate", 0);
+        if(speculate > 0) {
+            if(searchMode == SearchMode.JPS || searchMode == SearchMode.ASTAR && terrain == null && enemyPenalty == 0) {
+                speculativePlanner = new SpeculativePlanner(searchMode.name(), speculate, searchMode == SearchMode.JPS);
+            }
+            else {
+                System.err.println("Paths are only planned ahead in ASTAR mode without terrain costs and in JPS mode");
+            }
+        }
+
+        int cacheSize = (int) longOption(options, "pathCache", DEFAULT_PATH_CACHE_SIZE);
+        if(cacheSize > 0) {
+            pathCache = new PathCache(cacheSize);
+        }
+
+        System.out.println("Constructed AstarAgent using " + searchMode);
+    }
+
+    /**
+     * Reads the name=value options that follow the search mode in the agent arguments
+     *
+     * @param args the agent arguments from the config file
+     * @return the options by name
+     */
+    static Map<String, String> parseOptions(String[] args)
+    {
+        Map<String, String> options = new HashMap<String, String>();
+        for(int i = 1; i < args.length; i++)
+        {
+            int separator = args[i].indexOf('=');
+            if(separator == -1) {
+                System.err.println("Ignoring agent argument " + args[i] + ". Expected name=value");
+                continue;
+            }
+            options.put(args[i].substring(0, separator).trim(), args[i].substring(separator + 1).trim());
+        }
+        return options;
+    }
+
+    /**
+     * @param options the options from parseOptions
+     * @param name the name of the option
+     * @param defaultValue the value used when the option is missing or not a number
+     * @return the value of the option
+     */
+    static long longOption(Map<String, String> options, String name, long defaultValue)
+    {
+        if(!options.containsKey(name)) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(options.get(name));
+        } catch(NumberFormatException e) {
+            System.err.println("Invalid " + name + " " + options.get(name) + ". Defaulting to " + defaultValue);
+            return defaultValue;
+        }
     }
 
     @Override
@@ -88,6 +339,10 @@ public class AstarAgent extends Agent {
 
         footmanID = unitIDs.get(0);
 
+        if(metrics != null) {
+            metrics.beginEpisode();
+        }
+
         // double check that this is a footman
         if(!newstate.getUnit(footmanID).getTemplateView().getName().equals("Footman"))
         {
@@ -95,9 +350,17 @@ public class AstarAgent extends Agent {
             return null;
         }
 
+        squadIDs = new ArrayList<Integer>();
+        for(Integer unitID : unitIDs)
+        {
+            if(newstate.getUnit(unitID).getTemplateView().getName().equals("Footman")) {
+                squadIDs.add(unitID);
+            }
+        }
+
         // find the enemy playernum
         Integer[] playerNums = newstate.getPlayerNumbers();
-        int enemyPlayerNum = -1;
+        enemyPlayerNum = -1;
         for(Integer playerNum : playerNums)
         {
             if(playerNum != playernum) {
@@ -146,49 +409,142 @@ public class AstarAgent extends Agent {
             return null;
         }
 
-        long startTime = System.nanoTime();
-        path = findPath(newstate);
-        totalPlanTime += System.nanoTime() - startTime;
+        refreshObstacles(newstate);
+
+        // in SQUAD mode middleStep plans for every footman at once, in RTAA mode it plans one move at a time
+        if(searchMode != SearchMode.SQUAD && searchMode != SearchMode.RTAA) {
+            if(searchMode == SearchMode.PREDICT) {
+                observeBlocker(newstate, statehistory);
+            }
+            beginSearchRecord();
+            long startTime = System.nanoTime();
+            path = findPath(newstate);
+            long planTime = System.nanoTime() - startTime;
+            totalPlanTime += planTime;
+            recordSearch(newstate, "initial", path, planTime);
+        }
 
         return middleStep(newstate, statehistory);
     }
 
     @Override
     public Map<Integer, Action> middleStep(State.StateView newstate, History.HistoryView statehistory) {
+        if(searchMode == SearchMode.SQUAD) {
+            return squadStep(newstate, statehistory);
+        }
+
         long startTime = System.nanoTime();
         long planTime = 0;
 
         Map<Integer, Action> actions = new HashMap<Integer, Action>();
 
-        if(shouldReplanPath(newstate, statehistory, path)) {
+        if(searchMode == SearchMode.PREDICT) {
+            observeBlocker(newstate, statehistory);
+        }
+
+        // in FLOW and RTAA mode the next step is worked out again every turn
+        boolean isReplanned = searchMode != SearchMode.FLOW && searchMode != SearchMode.RTAA;
+
+        // a search that found no path is run again, the enemy footman may have moved out of the way since
+        boolean isMissing = isReplanned && path == null && !(searchMode == SearchMode.ARA && anytimePlanner != null && anytimePlanner.isSearching());
+        boolean isBlocked = isReplanned && !isMissing && shouldReplanPath(newstate, statehistory, path);
+        if(!isReplanned || isBlocked || isMissing) {
+            beginSearchRecord();
             long planStartTime = System.nanoTime();
-            path = findPath(newstate);
+            GridPath plannedPath = isBlocked ? speculativePath(newstate) : null;
+            path = plannedPath != null ? plannedPath : findPath(newstate);
+            planTime = System.nanoTime() - planStartTime;
+            totalPlanTime += planTime;
+            recordSearch(newstate, plannedPath != null ? "speculated" : isBlocked ? "blocked" : isMissing ? "no_path" : "turn", path, planTime);
+            if(isBlocked) {
+                replans++;
+            }
+
+            // the new path starts next to the footman's current position
+            nextCell = -1;
+        }
+        else if(searchMode == SearchMode.ARA && anytimePlanner != null && anytimePlanner.isSearching()) {
+            // spend this turn's budget on a shorter path, and switch to it if one was found
+            Unit.UnitView footmanUnit = newstate.getUnit(footmanID);
+            beginSearchRecord();
+            long planStartTime = System.nanoTime();
+            GridPath improvedPath = improveAnytimePath(footmanUnit.getXPosition(), footmanUnit.getYPosition(), newstate.getXExtent());
             planTime = System.nanoTime() - planStartTime;
             totalPlanTime += planTime;
+            recordSearch(newstate, "improve", improvedPath, planTime);
+
+            if(improvedPath != null) {
+                path = improvedPath;
+                nextCell = -1;
+            }
+        }
+
+        if(path == null) {
+            if(searchMode == SearchMode.ARA && anytimePlanner != null && anytimePlanner.isSearching()) {
+                // the first path was not found within the budget yet, wait for it
+                System.out.println("Still planning");
+                totalExecutionTime += System.nanoTime() - startTime - planTime;
+                return actions;
+            }
+            System.err.println("No available path");
+            totalExecutionTime += System.nanoTime() - startTime - planTime;
+            return actions;
         }
 
         Unit.UnitView footmanUnit = newstate.getUnit(footmanID);
 
         int footmanX = footmanUnit.getXPosition();
         int footmanY = footmanUnit.getYPosition();
+        int xExtent = newstate.getXExtent();
+        int footmanCell = footmanY * xExtent + footmanX;
+
+        // in THETA mode the engine walks each leg, the path only keeps up with where the footman got to
+        if(searchMode == SearchMode.THETA) {
+            if(path.contains(footmanCell)) {
+                while(path.next() != footmanCell) {
+                    // the compound move walked past these cells within one turn
+                }
+                thetaCell = footmanCell;
+            }
+            else if(footmanCell != thetaCell && nextCell != -1) {
+                // the engine routed the leg off the line, only its end and the later legs are still ahead
+                while(!path.isEmpty() && path.peek() != nextCell) {
+                    path.next();
+                }
+            }
+        }
+        GridPath steps = searchMode == SearchMode.THETA && legs != null ? legs : path;
 
-        if(!path.empty() && (nextLoc == null || (footmanX == nextLoc.x && footmanY == nextLoc.y))) {
+        boolean isNewStep = false;
+        if(!steps.isEmpty() && (nextCell == -1 || footmanCell == nextCell)) {
 
             // stat moving to the next step in the path
-            nextLoc = path.pop();
+            nextCell = steps.next();
+            isNewStep = true;
 
-            System.out.println("Moving to (" + nextLoc.x + ", " + nextLoc.y + ")");
+            System.out.println("Moving to (" + nextCell % xExtent + ", " + nextCell / xExtent + ")");
         }
 
-        if(nextLoc != null && (footmanX != nextLoc.x || footmanY != nextLoc.y))
+        if(nextCell != -1 && footmanCell != nextCell)
         {
-            int xDiff = nextLoc.x - footmanX;
-            int yDiff = nextLoc.y - footmanY;
+            if(searchMode == SearchMode.THETA) {
+                // one compound move walks the whole leg, it is only given again if the engine gave up on it
+                if(isNewStep || !isMoveUnderway(newstate, statehistory)) {
+                    actions.put(footmanID, Action.createCompoundMove(footmanID, nextCell % xExtent, nextCell / xExtent));
+                }
+            }
+            else {
+                int xDiff = nextCell % xExtent - footmanX;
+                int yDiff = nextCell / xExtent - footmanY;
 
-            // figure out the direction the footman needs to move in
-            Direction nextDirection = getNextDirection(xDiff, yDiff);
+                // figure out the direction the footman needs to move in
+                Direction nextDirection = getNextDirection(xDiff, yDiff);
 
-            actions.put(footmanID, Action.createPrimitiveMove(footmanID, nextDirection));
+                actions.put(footmanID, Action.createPrimitiveMove(footmanID, nextDirection));
+            }
+        } else if(nextCell != -1 && !steps.isEmpty()) {
+            // a PREDICT path stays put for a turn to let the enemy footman walk past
+            System.out.println("Waiting at (" + footmanX + ", " + footmanY + ")");
         } else {
             Unit.UnitView townhallUnit = newstate.getUnit(townhallID);
 
@@ -212,26 +568,357 @@ public class AstarAgent extends Agent {
             }
         }
 
+        if(speculativePlanner != null) {
+            speculate(newstate, footmanCell);
+        }
+
+        actionsIssued += actions.size();
         totalExecutionTime += System.nanoTime() - startTime - planTime;
         return actions;
     }
 
+    /**
+     * Asks the speculative planner for the paths middleStep would need next turn if the enemy
+     * footman moved onto the path. The enemy footman moves at most one cell a turn, so only
+     * its cell and the ones around it that are still ahead on the path are planned for. If it
+     * steps onto the cell the footman is moving into, the footman stays where it is, otherwise
+     * the footman will have reached that cell.
+     *
+     * @param state
+     * @param footmanCell the cell index of the footman
+     */
+    private void speculate(State.StateView state, int footmanCell)
+    {
+        Unit.UnitView townhallUnit = state.getUnit(townhallID);
+        if(enemyFootmanID == -1 || townhallUnit == null || path == null || nextCell == -1) {
+            return;
+        }
+
+        Unit.UnitView enemy = state.getUnit(enemyFootmanID);
+        int xExtent = state.getXExtent();
+        int[] starts = new int[9];
+        int[] blockers = new int[9];
+        int count = 0;
+
+        // a blocker on the cell the footman is moving into goes first, it is the likeliest one
+        for(int direction = -1; direction < 8; direction++)
+        {
+            int x = enemy.getXPosition() + (direction == -1 ? 0 : GridSearch.DX[direction]);
+            int y = enemy.getYPosition() + (direction == -1 ? 0 : GridSearch.DY[direction]);
+            int cell = y * xExtent + x;
+            if(!obstacles.isPassable(x, y) || cell == footmanCell || cell != nextCell && !path.contains(cell)) {
+                continue;
+            }
+            int at = cell == nextCell ? 0 : count;
+            starts[count] = starts[at];
+            blockers[count] = blockers[at];
+            starts[at] = cell == nextCell ? footmanCell : nextCell;
+            blockers[at] = cell;
+            count++;
+        }
+
+        if(count > 0) {
+            speculativePlanner.request(obstacles, townhallUnit.getYPosition() * xExtent + townhallUnit.getXPosition(),
+                    Arrays.copyOf(starts, count), Arrays.copyOf(blockers, count));
+        }
+    }
+
+    /**
+     * @param state
+     * @return the path planned ahead for where the footman and the enemy footman are now, or
+     * null if it was not planned, is not ready or does not exist, in which case the path has
+     * to be searched
+     */
+    private GridPath speculativePath(State.StateView state)
+    {
+        Unit.UnitView townhallUnit = state.getUnit(townhallID);
+        MapLocation enemyLoc = getEnemyFootmanLocation(state);
+        if(speculativePlanner == null || townhallUnit == null || enemyLoc == null) {
+            return null;
+        }
+
+        refreshObstacles(state);
+        Unit.UnitView footmanUnit = state.getUnit(footmanID);
+        int xExtent = state.getXExtent();
+        int[] cells = speculativePlanner.get(obstacles, footmanUnit.getYPosition() * xExtent + footmanUnit.getXPosition(),
+                townhallUnit.getYPosition() * xExtent + townhallUnit.getXPosition(), enemyLoc.y * xExtent + enemyLoc.x);
+        if(cells == null || cells == PathCache.NO_PATH) {
+            return null;
+        }
+
+        planTurn = state.getTurnNumber();
+        return new GridPath(cells);
+    }
+
+    /**
+     * @param state
+     * @param history
+     * @return true if the footman's last compound move was still being carried out last turn
+     */
+    private boolean isMoveUnderway(State.StateView state, History.HistoryView history)
+    {
+        int turn = state.getTurnNumber();
+        if(turn == 0) {
+            return false;
+        }
+        ActionResult result = history.getCommandFeedback(playernum, turn - 1).get(footmanID);
+        return result != null && result.getFeedback() == ActionFeedback.INCOMPLETE;
+    }
+
     @Override
     public void terminalStep(State.StateView newstate, History.HistoryView statehistory) {
         System.out.println("Total turns: " + newstate.getTurnNumber());
-        System.out.println("Total planning time: " + totalPlanTime/1e9);
+        System.out.println("Total planning time: " + totalPlanTime/1e9 + ", replans: " + replans);
         System.out.println("Total execution time: " + totalExecutionTime/1e9);
         System.out.println("Total time: " + (totalExecutionTime + totalPlanTime)/1e9);
+        System.out.println("Actions issued: " + actionsIssued);
+
+        if(searchMode == SearchMode.ARA) {
+            System.out.println("Planning budget per turn: " + planBudget/1e9);
+            System.out.println("Planning turns: " + planningTurns + ", over budget: " + planBudgetOverruns);
+            System.out.println("Planning budget granted: " + planBudgetGranted/1e9 + ", used: " + planBudgetUsed/1e9);
+            if(anytimePlanner != null && anytimePlanner.solution() != null) {
+                System.out.println("Final path bound: " + anytimePlanner.solutionEpsilon() + " times optimal");
+            }
+        }
+        else if(searchMode == SearchMode.SQUAD) {
+            System.out.println("Squad size: " + squadIDs.size() + ", replans: " + squadReplans);
+        }
+        else if(searchMode == SearchMode.CPD) {
+            System.out.println("First move lookups: " + firstMoveLookups + ", searched instead: " + firstMoveFallbacks);
+        }
+        else if(searchMode == SearchMode.RTAA && learnedHeuristic != null) {
+            System.out.println("Lookahead: " + lookahead + ", steps: " + realTimeSteps + ", expansions: " + realTimeExpansions);
+            System.out.println("Learned heuristic values: " + learnedHeuristic.learnedCount());
+        }
+
+        if(speculativePlanner != null) {
+            System.out.println("Paths planned ahead: " + speculativePlanner.planned() + ", used: " + speculativePlanner.hits()
+                    + ", searched instead: " + speculativePlanner.misses());
+        }
+        if(pathCache != null && isCacheable()) {
+            System.out.println("Path cache hits: " + pathCache.hits() + ", misses: " + pathCache.misses());
+        }
+        if(landmarks != null) {
+            System.out.println("Landmarks: " + landmarks.landmarks.length + ", tables built: " + LandmarkHeuristic.builds());
+        }
+
+        // terminalStep can run twice at the end of an episode, the records are only written once
+        if(metrics != null) {
+            int searches = metrics.searches();
+            try {
+                File file = metrics.writeEpisode();
+                if(file != null) {
+                    System.out.println("Search metrics: " + searches + " searches written to " + file);
+                }
+            } catch(IOException e) {
+                System.err.println("Failed to write the search metrics: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the work counters of the planner of the current search mode, or null if it
+     * has not been created yet
+     */
+    private SearchCounters modeCounters()
+    {
+        switch(searchMode)
+        {
+            case DSTAR:
+                return incrementalPlanner == null ? null : incrementalPlanner.counters();
+            case HPA:
+                return abstractGraph == null ? null : abstractGraph.counters();
+            case FLOW:
+                return flowField == null ? null : flowField.counters();
+            case ARA:
+                return anytimePlanner == null ? null : anytimePlanner.counters();
+            case SQUAD:
+                return squadPlanner == null ? null : squadPlanner.counters();
+            case RTAA:
+                return realTimePlanner == null ? null : realTimePlanner.counters();
+            case PREDICT:
+                return spaceTimePlanner == null ? null : spaceTimePlanner.counters();
+            case THETA:
+                return thetaSearch == null ? null : thetaSearch.counters();
+            default:
+                if(bucketSearch != null) {
+                    return bucketSearch.counters();
+                }
+                return searchCore == null ? null : searchCore.counters();
+        }
+    }
+
+    /**
+     * Zeroes the counters of the current planner before a search. A planner created by
+     * the search itself starts from zero anyway.
+     */
+    private void beginSearchRecord()
+    {
+        SearchCounters counters = modeCounters();
+        if(counters != null) {
+            counters.reset();
+        }
+        cacheHitsBeforeSearch = pathCache == null ? 0 : pathCache.hits();
+    }
+
+    /**
+     * Adds a record of the search that just ran to the metrics, if they are being collected
+     *
+     * @param state
+     * @param trigger why the search ran
+     * @param newPath the path it found, or null
+     * @param planTime the wall time of the search in nsecs
+     */
+    private void recordSearch(State.StateView state, String trigger, GridPath newPath, long planTime)
+    {
+        if(metrics == null) {
+            return;
+        }
+        boolean isCached = pathCache != null && pathCache.hits() != cacheHitsBeforeSearch;
+        metrics.record(state.getTurnNumber(), searchMode.name().toLowerCase(), trigger, modeCounters(),
+                newPath == null ? -1 : newPath.size(), isCached, planTime);
+    }
+
+    /**
+     * Moves every footman one step along its cooperative plan, replanning for the whole
+     * squad every window/2 turns or as soon as a footman is not where its plan expected it.
+     *
+     * @param state
+     * @param history
+     * @return an action for every footman that moves or attacks this turn
+     */
+    private Map<Integer, Action> squadStep(State.StateView state, History.HistoryView history)
+    {
+        long startTime = System.nanoTime();
+        long planTime = 0;
+
+        Map<Integer, Action> actions = new HashMap<Integer, Action>();
+
+        Unit.UnitView townhallUnit = state.getUnit(townhallID);
+
+        // if townhall was destroyed on the last turn
+        if(townhallUnit == null) {
+            terminalStep(state, history);
+            return actions;
+        }
+
+        int xExtent = state.getXExtent();
+
+        // footmen that died leave the squad, which invalidates the stored plans
+        boolean squadChanged = false;
+        for(Iterator<Integer> it = squadIDs.iterator(); it.hasNext(); )
+        {
+            if(state.getUnit(it.next()) == null) {
+                it.remove();
+                squadChanged = true;
+            }
+        }
+
+        int[] starts = new int[squadIDs.size()];
+        boolean onPlan = squadPlans != null && !squadChanged && squadStep < window / 2;
+        for(int i = 0; i < starts.length; i++)
+        {
+            Unit.UnitView unit = state.getUnit(squadIDs.get(i));
+            starts[i] = unit.getYPosition() * xExtent + unit.getXPosition();
+            if(onPlan && squadPlans[i][squadStep] != starts[i]) {
+                onPlan = false;
+            }
+        }
+
+        if(!onPlan) {
+            String trigger = squadPlans == null ? "initial" : squadChanged ? "squad_changed" : squadStep >= window / 2 ? "window" : "off_plan";
+            beginSearchRecord();
+            long planStartTime = System.nanoTime();
+            squadPlans = planSquad(state, starts);
+            squadStep = 0;
+            squadReplans++;
+            planTime = System.nanoTime() - planStartTime;
+            totalPlanTime += planTime;
+            recordSearch(state, trigger, null, planTime);
+        }
+
+        squadStep++;
+        for(int i = 0; i < starts.length; i++)
+        {
+            int unitID = squadIDs.get(i);
+            int x = starts[i] % xExtent;
+            int y = starts[i] / xExtent;
+            int next = squadPlans[i][squadStep];
+
+            if(next != starts[i]) {
+                Direction nextDirection = getNextDirection(next % xExtent - x, next / xExtent - y);
+                actions.put(unitID, Action.createPrimitiveMove(unitID, nextDirection));
+            }
+            else if(Math.abs(x - townhallUnit.getXPosition()) <= 1 && Math.abs(y - townhallUnit.getYPosition()) <= 1) {
+                actions.put(unitID, Action.createPrimitiveAttack(unitID, townhallID));
+            }
+        }
+
+        actionsIssued += actions.size();
+        totalExecutionTime += System.nanoTime() - startTime - planTime;
+        return actions;
+    }
+
+    /**
+     * Plans the next window of moves for every footman with the cooperative planner. The
+     * distance field to the townhall from FLOW mode serves as the heuristic and holds the
+     * static obstacles, including the enemy footman.
+     *
+     * @param state
+     * @param starts the cell index of every footman in squadIDs
+     * @return the cell every footman should stand on at each of the next window turns
+     */
+    private int[][] planSquad(State.StateView state, int[] starts)
+    {
+        Unit.UnitView townhallUnit = state.getUnit(townhallID);
+        MapLocation goalLoc = new MapLocation(townhallUnit.getXPosition(), townhallUnit.getYPosition(), null, 0);
+
+        refreshObstacles(state);
+        updateFlowField(goalLoc, getEnemyFootmanLocation(state), obstacles);
+
+        if(squadPlanner == null || squadPlanner.xExtent != state.getXExtent() || squadPlanner.yExtent != state.getYExtent()
+                || squadPlanner.maxUnits < starts.length) {
+            squadPlanner = new CooperativePlanner(state.getXExtent(), state.getYExtent(), window, starts.length);
+        }
+
+        return squadPlanner.plan(starts, flowField);
     }
 
     @Override
     public void savePlayerData(OutputStream os) {
-
+        try {
+            DataOutputStream out = new DataOutputStream(os);
+            // RTAA mode keeps its learned heuristic values instead of paths
+            if(searchMode == SearchMode.RTAA) {
+                if(learnedHeuristic != null) {
+                    learnedHeuristic.write(out);
+                }
+            }
+            else if(pathCache != null) {
+                pathCache.write(out);
+            }
+            out.flush();
+        } catch(IOException e) {
+            System.err.println("Failed to save the player data: " + e.getMessage());
+        }
     }
 
     @Override
     public void loadPlayerData(InputStream is) {
-
+        try {
+            if(searchMode == SearchMode.RTAA) {
+                HeuristicTable table = new HeuristicTable();
+                table.read(new DataInputStream(is));
+                learnedHeuristic = table;
+                realTimePlanner = null;
+            }
+            else if(pathCache != null) {
+                pathCache.read(new DataInputStream(is));
+            }
+        } catch(IOException e) {
+            System.err.println("Failed to load the player data: " + e.getMessage());
+        }
     }
 
     /**
@@ -246,23 +933,28 @@ public class AstarAgent extends Agent {
      * @param currentPath
      * @return
      */
-    private boolean shouldReplanPath(State.StateView state, History.HistoryView history, Stack<MapLocation> currentPath)
+    private boolean shouldReplanPath(State.StateView state, History.HistoryView history, GridPath currentPath)
     {
-    	MapLocation enemyFootmanLocation = null;
-    	if (enemyFootmanID == -1){
+    	int enemyCell;
+    	if (enemyFootmanID == -1 || currentPath == null){
     		return false;
     	}
     	else{
     		Unit.UnitView enemy = state.getUnit(enemyFootmanID);
-    		enemyFootmanLocation = new MapLocation(enemy.getXPosition(), enemy.getYPosition(), null, 0);
+    		enemyCell = enemy.getYPosition() * state.getXExtent() + enemy.getXPosition();
     	}
-    	// See if the enemy footman is within the current path
-    	for (MapLocation location : currentPath){
-    		if (enemyFootmanLocation.equals(location)){
-    			return true;
+    	// See if the enemy footman is standing on the step we are moving into
+    	if (enemyCell == nextCell) {
+    		return true;
+    	}
+    	// A PREDICT path already goes around the enemy footman if it is where the forecast put it by now
+    	if (searchMode == SearchMode.PREDICT && blockerPredictor != null) {
+    		if (blockerPredictor.occupancy(enemyCell, state.getTurnNumber() - planTurn) > 0) {
+    			return false;
     		}
     	}
-        return false;
+    	// See if the enemy footman is on the rest of the current path
+        return currentPath.contains(enemyCell);
     }
 
     /**
@@ -272,40 +964,188 @@ public class AstarAgent extends Agent {
      * @param state
      * @return
      */
-    private Stack<MapLocation> findPath(State.StateView state)
+    private GridPath findPath(State.StateView state)
     {
         Unit.UnitView townhallUnit = state.getUnit(townhallID);
         Unit.UnitView footmanUnit = state.getUnit(footmanID);
 
+        // nothing left to walk to once the townhall is destroyed
+        if(townhallUnit == null) {
+            return new GridPath(new int[0]);
+        }
+
         MapLocation startLoc = new MapLocation(footmanUnit.getXPosition(), footmanUnit.getYPosition(), null, 0);
 
         MapLocation goalLoc = new MapLocation(townhallUnit.getXPosition(), townhallUnit.getYPosition(), null, 0);
 
-        MapLocation footmanLoc = null;
-        if(enemyFootmanID != -1) {
-            Unit.UnitView enemyFootmanUnit = state.getUnit(enemyFootmanID);
-            footmanLoc = new MapLocation(enemyFootmanUnit.getXPosition(), enemyFootmanUnit.getYPosition(), null, 0);
+        MapLocation footmanLoc = getEnemyFootmanLocation(state);
+
+        // resource locations only need work when a resource was added or depleted
+        refreshObstacles(state);
+
+        // no mode has to search to find out the townhall is walled off
+        if(connectivity == null || connectivity.obstacles != obstacles) {
+            connectivity = new ConnectivityIndex(obstacles);
+        }
+        if(!connectivity.isConnected(startLoc.x, startLoc.y, goalLoc.x, goalLoc.y)) {
+            return null;
         }
 
-        // get resource locations
-        List<Integer> resourceIDs = state.getAllResourceIds();
-        Set<MapLocation> resourceLocations = new HashSet<MapLocation>();
-        for(Integer resourceID : resourceIDs)
-        {
-            ResourceNode.ResourceView resource = state.getResourceNode(resourceID);
+        planTurn = state.getTurnNumber();
+        if(pathCache == null || !isCacheable()) {
+            return search(startLoc, goalLoc, footmanLoc);
+        }
 
-            resourceLocations.add(new MapLocation(resource.getXPosition(), resource.getYPosition(), null, 0));
+        int xExtent = obstacles.xExtent;
+        PathCache.Key key = new PathCache.Key(searchMode.name(), startLoc.y * xExtent + startLoc.x, goalLoc.y * xExtent + goalLoc.x,
+                footmanLoc == null ? -1 : footmanLoc.y * xExtent + footmanLoc.x, obstacles.fingerprint());
+        int[] cells = pathCache.get(key);
+        if(cells != null) {
+            return cells == PathCache.NO_PATH ? null : new GridPath(cells);
         }
 
-        return AstarSearch(startLoc, goalLoc, state.getXExtent(), state.getYExtent(), footmanLoc, resourceLocations);
+        GridPath path = search(startLoc, goalLoc, footmanLoc);
+        pathCache.put(key, path == null ? PathCache.NO_PATH : path.cells());
+        return path;
     }
+
+    /**
+     * @return true if the search mode always finds the same path for the same query, so its
+     * results can be cached. Weighted ASTAR searches are not, the key of a cached path does
+     * not say which terrain costs or enemy penalty it was the cheapest under.
+     */
+    private boolean isCacheable()
+    {
+        if(searchMode == SearchMode.ASTAR) {
+            return terrain == null && enemyPenalty == 0;
+        }
+        return searchMode == SearchMode.JPS || searchMode == SearchMode.HPA;
+    }
+
+    /**
+     * Runs the search of the current mode on the current obstacle grid
+     *
+     * @param startLoc Starting position of the footman
+     * @param goalLoc MapLocation of the townhall
+     * @param footmanLoc Position of the enemy footman or null if there is none
+     * @return the cells of the path in the order they are walked
+     */
+    private GridPath search(MapLocation startLoc, MapLocation goalLoc, MapLocation footmanLoc)
+    {
+        if(searchMode == SearchMode.DSTAR) {
+            return DstarSearch(startLoc, goalLoc, footmanLoc, obstacles);
+        }
+        else if(searchMode == SearchMode.HPA) {
+            return HpaSearch(startLoc, goalLoc, footmanLoc, obstacles);
+        }
+        else if(searchMode == SearchMode.FLOW) {
+            return FlowFieldStep(startLoc, goalLoc, footmanLoc, obstacles);
+        }
+        else if(searchMode == SearchMode.ARA) {
+            return AraSearch(startLoc, goalLoc, footmanLoc, obstacles);
+        }
+        else if(searchMode == SearchMode.RTAA) {
+            return RealTimeStep(startLoc, goalLoc, footmanLoc, obstacles);
+        }
+        else if(searchMode == SearchMode.CPD) {
+            return FirstMoveLookup(startLoc, goalLoc, footmanLoc, obstacles);
+        }
+        else if(searchMode == SearchMode.PREDICT) {
+            return PredictiveSearch(startLoc, goalLoc, footmanLoc, obstacles);
+        }
+        else if(searchMode == SearchMode.THETA) {
+            return ThetaStarSearch(startLoc, goalLoc, footmanLoc, obstacles);
+        }
+
+        return AstarSearch(startLoc, goalLoc, footmanLoc, obstacles);
+    }
+    /**
+     * @param state
+     * @return the position of the enemy footman, or null if there is none
+     */
+    private MapLocation getEnemyFootmanLocation(State.StateView state)
+    {
+        if(enemyFootmanID == -1) {
+            return null;
+        }
+        Unit.UnitView enemyFootmanUnit = state.getUnit(enemyFootmanID);
+        return new MapLocation(enemyFootmanUnit.getXPosition(), enemyFootmanUnit.getYPosition(), null, 0);
+    }
+
+    /**
+     * Brings the obstacle grid up to date with the resources on the map. The grid is built
+     * on the first call. Later calls only compare the resource IDs with the ones seen last
+     * time, and flip the bits of the resources that were depleted or added.
+     *
+     * Changed cells are passed on to the connectivity index and the DSTAR, HPA and FLOW
+     * structures, which repair themselves instead of being rebuilt.
+     *
+     * @param state
+     */
+    private void refreshObstacles(State.StateView state)
+    {
+        List<Integer> resourceIDs = state.getAllResourceIds();
+        if(obstacles != null && obstacles.fits(state.getXExtent(), state.getYExtent()) && resourceIDs.equals(knownResourceIDs)) {
+            return;
+        }
+
+        if(obstacles == null || !obstacles.fits(state.getXExtent(), state.getYExtent())) {
+            obstacles = new ObstacleGrid(state.getXExtent(), state.getYExtent());
+            resourceCells = new HashMap<Integer, Integer>();
+        }
+
+        // depleted resources free their cells
+        Set<Integer> current = new HashSet<Integer>(resourceIDs);
+        for(Iterator<Map.Entry<Integer, Integer>> it = resourceCells.entrySet().iterator(); it.hasNext(); )
+        {
+            Map.Entry<Integer, Integer> entry = it.next();
+            if(!current.contains(entry.getKey())) {
+                setObstacle(entry.getValue() % obstacles.xExtent, entry.getValue() / obstacles.xExtent, false);
+                it.remove();
+            }
+        }
+
+        for(Integer resourceID : resourceIDs)
+        {
+            if(!resourceCells.containsKey(resourceID)) {
+                ResourceNode.ResourceView resource = state.getResourceNode(resourceID);
+                resourceCells.put(resourceID, resource.getYPosition() * obstacles.xExtent + resource.getXPosition());
+                setObstacle(resource.getXPosition(), resource.getYPosition(), true);
+            }
+        }
+
+        knownResourceIDs = new ArrayList<Integer>(resourceIDs);
+    }
+
+    /**
+     * Blocks or frees a cell of the obstacle grid and of every structure built from it
+     */
+    private void setObstacle(int x, int y, boolean isBlocked)
+    {
+        if(!obstacles.setBlocked(x, y, isBlocked)) {
+            return;
+        }
+        if(connectivity != null) {
+            connectivity.cellChanged(x, y);
+        }
+        if(incrementalPlanner != null) {
+            incrementalPlanner.setBlocked(x, y, isBlocked);
+        }
+        if(abstractGraph != null) {
+            abstractGraph.setBlocked(x, y, isBlocked);
+        }
+        if(flowField != null) {
+            flowField.setBlocked(x, y, isBlocked);
+        }
+    }
+
     /**
      * This is the method you will implement for the assignment. Your implementation
      * will use the A* algorithm to compute the optimum path from the start position to
      * a position adjacent to the goal position.
      *
-     * You will return a Stack of positions with the top of the stack being the first space to move to
-     * and the bottom of the stack being the last space to move to. If there is no path to the townhall
+     * You will return a path of cell indices with the first cell being the first space to move to
+     * and the last cell being the last space to move to. If there is no path to the townhall
      * then return null from the method and the agent will print a message and do nothing.
      * The code to execute the plan is provided for you in the middleStep method.
      *
@@ -335,89 +1175,523 @@ public class AstarAgent extends Agent {
      * (2,2)
      * (1,2)
      *
-     * Notice how the initial footman position and the townhall position are not included in the path stack
+     * Notice how the initial footman position and the townhall position are not included in the path
      *
      * @param start Starting position of the footman
      * @param goal MapLocation of the townhall
-     * @param xExtent Width of the map
-     * @param yExtent Height of the map
-     * @param resourceLocations Set of positions occupied by resources
-     * @return Stack of positions with top of stack being first move in plan
+     * @param enemyFootmanLoc Position of the enemy footman or null if there is none
+     * @param obstacles Grid of the cells occupied by resources
+     * @return the cells of the path in the order they are walked
      */
-    private Stack<MapLocation> AstarSearch(MapLocation start, MapLocation goal, int xExtent, int yExtent, MapLocation enemyFootmanLoc, Set<MapLocation> resourceLocations)
+    GridPath AstarSearch(MapLocation start, MapLocation goal, MapLocation enemyFootmanLoc, ObstacleGrid obstacles)
     {
-    	// Declare open and closed lists
-    	ArrayList<MapLocation> openList = new ArrayList<MapLocation>();
-    	ArrayList<MapLocation> closedList = new ArrayList<MapLocation>();
+    	if (searchMode == SearchMode.ASTAR && (terrain != null || enemyPenalty > 0)) {
+    		return WeightedSearch(start, goal, enemyFootmanLoc, obstacles);
+    	}
     	
-    	closedList.add(enemyFootmanLoc);
-    	// Add the starting location to the open list and empty the closed list
-    	openList.add(start);
-    	Collections.sort(openList);
+    	// The search arrays are only reallocated for a new map
+    	if (searchCore == null || searchCore.obstacles != obstacles) {
+    		searchCore = searchMode == SearchMode.JPS ? new JumpPointSearch(obstacles) : new GridSearch(obstacles);
+    	}
     	
-    	// While there are still nodes in the open list and the target hasn't been found
-    	while (openList.size() > 0) {
-    		
-    		// Goal test
-    		MapLocation curr = openList.get(0);
-    		if (curr.x == goal.x && curr.y == goal.y) {
-    			break;
+    	// Landmark tables are built once per layout and only replaced when an obstacle they counted on is gone
+    	if (landmarkCount > 0) {
+    		if (landmarks == null || !landmarks.isAdmissible(obstacles)) {
+    			landmarks = LandmarkHeuristic.forGrid(obstacles, landmarkCount);
     		}
-    		
-    		// Move this node from open list to closed list
-    		openList.remove(curr);
-    		closedList.add(curr);
-    		
-    		// Look at every neighbor of the step
-    		ArrayList<MapLocation> neighbors = produceNeighborList(curr, xExtent, yExtent, resourceLocations);
-    		for (MapLocation neighbor: neighbors) {
-    			
-    			/*
-    			 * Calculate the path cost of reaching the neighbor
-    			 * Assuming the movement cost is just 1
-    			 */
-    			float checkCost = curr.cost + 1;
-    			
-    			// If the cost is less than the cost known for this position, we have found a better path. Remove it from the open or closed lists
-    			if (checkCost < neighbor.cost) {
-    				if (openList.contains(neighbor)) {
-    					openList.remove(neighbor);
-    				}
-    				if (closedList.contains(neighbor)) {
-    					closedList.remove(neighbor);
-    				}
-    			}
-    			
-    			// If the location isn't in either the open or closed list, record the costs for location and add it to the open list. Record the path to this node.
-    			if (!openList.contains(neighbor) && !closedList.contains(neighbor)) {
-    				neighbor.cost = checkCost;
-    				neighbor.heuristic = computeHeuristicCost(curr.x, curr.y, goal.x, goal.y);
-    				openList.add(neighbor);
-    				neighbor.cameFrom = curr;
-    				Collections.sort(openList);
+    		searchCore.setLandmarks(landmarks);
+    	}
+    	searchCore.beginSearch();
+    	
+    	// Resources are already in the grid, the enemy footman's position can't be entered either
+    	if (enemyFootmanLoc != null) {
+    		searchCore.block(enemyFootmanLoc.x, enemyFootmanLoc.y);
+    	}
+    	
+    	int goalIndex = searchCore.search(start.x, start.y, goal.x, goal.y);
+    	
+    	// The open set was exhausted without reaching the goal, or the goal has no parent node
+    	if (goalIndex == -1 || searchCore.parent(goalIndex) == -1) {
+    		return null;
+    	}
+    	
+    	// Ignores the start and end nodes as specified in the problem description
+    	return new GridPath(searchCore.path(goalIndex));
+    }
+
+    /**
+     * Finds a shortest path with Lazy Theta* and splits it into straight legs.
+     * 
+     * The path is as long as the one of AstarSearch, but it only turns where an obstacle or
+     * the enemy footman is in the way of a straight line. middleStep gives one compound move
+     * per leg instead of a primitive move per step, and the engine walks the leg.
+     *
+     * @param start Starting position of the footman
+     * @param goal MapLocation of the townhall
+     * @param enemyFootmanLoc Position of the enemy footman or null if there is none
+     * @param obstacles Grid of the cells occupied by resources
+     * @return the cells of the path in the order they are walked, with the ends of its legs in legs
+     */
+    GridPath ThetaStarSearch(MapLocation start, MapLocation goal, MapLocation enemyFootmanLoc, ObstacleGrid obstacles)
+    {
+    	// The search arrays are only reallocated for a new map
+    	if (thetaSearch == null || thetaSearch.obstacles != obstacles) {
+    		thetaSearch = new ThetaSearch(obstacles);
+    	}
+    	thetaSearch.beginSearch();
+    	
+    	if (enemyFootmanLoc != null) {
+    		thetaSearch.block(enemyFootmanLoc.x, enemyFootmanLoc.y);
+    	}
+    	
+    	int goalIndex = thetaSearch.search(start.x, start.y, goal.x, goal.y);
+    	int[] cells = goalIndex == -1 ? null : thetaSearch.path(goalIndex);
+    	if (cells == null) {
+    		return null;
+    	}
+    	
+    	legs = new GridPath(thetaSearch.waypoints(goalIndex));
+    	thetaCell = start.y * obstacles.xExtent + start.x;
+    	return new GridPath(cells);
+    }
+
+    /**
+     * Finds the cheapest path when cells cost different amounts to step onto.
+     * 
+     * The costs come from the terrain file, or are 1 everywhere if there is none or it was
+     * made for another map. With an enemy penalty the cells around the enemy footman cost
+     * that much more, so the path keeps its distance when a detour is cheap. The search is
+     * A* on a bucket queue, which suits the small integer costs.
+     *
+     * @param start Starting position of the footman
+     * @param goal MapLocation of the townhall
+     * @param enemyFootmanLoc Position of the enemy footman or null if there is none
+     * @param obstacles Grid of the cells occupied by resources
+     * @return the cells of the path in the order they are walked
+     */
+    private GridPath WeightedSearch(MapLocation start, MapLocation goal, MapLocation enemyFootmanLoc, ObstacleGrid obstacles)
+    {
+    	int xExtent = obstacles.xExtent;
+    	int yExtent = obstacles.yExtent;
+    	
+    	if (mapTerrain == null || !mapTerrain.fits(xExtent, yExtent)) {
+    		if (terrain != null && !terrain.fits(xExtent, yExtent)) {
+    			System.err.println("Terrain of " + terrain.xExtent + "x" + terrain.yExtent + " does not fit the map. Every cell costs 1");
+    		}
+    		mapTerrain = terrain != null && terrain.fits(xExtent, yExtent) ? terrain : new TerrainCosts(xExtent, yExtent);
+    	}
+    	
+    	// The penalty goes on a copy, the map's own costs stay as they are
+    	TerrainCosts costs = mapTerrain;
+    	if (enemyPenalty > 0 && enemyFootmanLoc != null) {
+    		costs = mapTerrain.copy();
+    		for (int y = Math.max(0, enemyFootmanLoc.y - ENEMY_PENALTY_RADIUS); y <= Math.min(yExtent - 1, enemyFootmanLoc.y + ENEMY_PENALTY_RADIUS); y++) {
+    			for (int x = Math.max(0, enemyFootmanLoc.x - ENEMY_PENALTY_RADIUS); x <= Math.min(xExtent - 1, enemyFootmanLoc.x + ENEMY_PENALTY_RADIUS); x++) {
+    				costs.set(x, y, Math.min(TerrainCosts.MAX_COST, costs.cost(y * xExtent + x) + enemyPenalty));
     			}
     		}
     	}
-    	    	
-    	// Check that the goal has a parent node
-    	if (openList.get(0).cameFrom == null) {
+    	
+    	// The search arrays are only reallocated for a new map
+    	if (bucketSearch == null || bucketSearch.obstacles != obstacles) {
+    		bucketSearch = new BucketSearch(obstacles, costs);
+    	}
+    	else {
+    		bucketSearch.setTerrain(costs);
+    	}
+    	bucketSearch.beginSearch();
+    	
+    	if (enemyFootmanLoc != null) {
+    		bucketSearch.block(enemyFootmanLoc.x, enemyFootmanLoc.y);
+    	}
+    	
+    	int goalIndex = bucketSearch.search(start.x, start.y, goal.x, goal.y);
+    	int[] cells = goalIndex == -1 ? null : bucketSearch.path(goalIndex);
+    	return cells == null ? null : new GridPath(cells);
+    }
+
+    /**
+     * Finds the same path as AstarSearch with a D* Lite planner that is kept between calls.
+     * 
+     * The planner searches backwards from the townhall, so its distances do not change as the
+     * footman walks. On later calls only the cells the enemy footman left and entered are
+     * updated, and the planner repairs just the part of its search tree those cells affected.
+     *
+     * @param start Starting position of the footman
+     * @param goal MapLocation of the townhall
+     * @param enemyFootmanLoc Position of the enemy footman or null if there is none
+     * @param obstacles Grid of the cells occupied by resources
+     * @return the cells of the path in the order they are walked
+     */
+    private GridPath DstarSearch(MapLocation start, MapLocation goal, MapLocation enemyFootmanLoc, ObstacleGrid obstacles)
+    {
+    	int xExtent = obstacles.xExtent;
+    	
+    	// A new planner is only needed for a new map or a new goal, later resource changes reach it through setObstacle
+    	if (incrementalPlanner == null || incrementalPlanner.xExtent != xExtent || incrementalPlanner.yExtent != obstacles.yExtent
+    			|| incrementalPlanner.goalX != goal.x || incrementalPlanner.goalY != goal.y) {
+    		incrementalPlanner = new DStarLite(xExtent, obstacles.yExtent, goal.x, goal.y, start.x, start.y);
+    		for (int cell : obstacles.blockedCells()) {
+    			incrementalPlanner.setBlocked(cell % xExtent, cell / xExtent, true);
+    		}
+    		plannerEnemyLoc = null;
+    	}
+    	
+    	// Move the enemy footman's blocked cell if it has moved since the last call
+    	if (plannerEnemyLoc != null && !plannerEnemyLoc.equals(enemyFootmanLoc)) {
+    		incrementalPlanner.setBlocked(plannerEnemyLoc.x, plannerEnemyLoc.y, false);
+    	}
+    	if (enemyFootmanLoc != null) {
+    		incrementalPlanner.setBlocked(enemyFootmanLoc.x, enemyFootmanLoc.y, true);
+    	}
+    	plannerEnemyLoc = enemyFootmanLoc;
+    	
+    	incrementalPlanner.moveStart(start.x, start.y);
+    	incrementalPlanner.computeShortestPath();
+    	
+    	int startIndex = start.y * xExtent + start.x;
+    	if (incrementalPlanner.distance(startIndex) == Float.POSITIVE_INFINITY) {
     		return null;
     	}
     	
-    	/*
-    	 * Initializes a stack and returns the path on it
-    	 * Ignores the start and end nodes as specified in the problem description
-    	 */
-    	Stack<MapLocation> path = new Stack<MapLocation>();
+    	// Follow the distances downhill from the start
+    	int goalIndex = goal.y * xExtent + goal.x;
+    	int[] steps = new int[(int) incrementalPlanner.distance(startIndex)];
+    	int length = 0;
+    	for (int cell = incrementalPlanner.nextStep(startIndex); cell != goalIndex; cell = incrementalPlanner.nextStep(cell)) {
+    		steps[length++] = cell;
+    	}
     	
-    	// While the current node does not equal start
-    	MapLocation goalLoc = openList.get(0).cameFrom;
-    	while (!goalLoc.equals(start)) {
-    		path.push(goalLoc);
-    		goalLoc = goalLoc.cameFrom;
+    	return new GridPath(steps, 0, length);
+    }
+
+    /**
+     * Finds a near optimal path with an HPA* abstraction that is kept between calls.
+     * 
+     * The abstraction is built once per map from the resource locations. On later calls the
+     * enemy footman's old and new cells are the only changes, and each of them only rebuilds
+     * the entrances and distance tables of the clusters around it.
+     *
+     * @param start Starting position of the footman
+     * @param goal MapLocation of the townhall
+     * @param enemyFootmanLoc Position of the enemy footman or null if there is none
+     * @param obstacles Grid of the cells occupied by resources
+     * @return the cells of the path in the order they are walked
+     */
+    GridPath HpaSearch(MapLocation start, MapLocation goal, MapLocation enemyFootmanLoc, ObstacleGrid obstacles)
+    {
+    	int xExtent = obstacles.xExtent;
+    	
+    	if (abstractGraph == null || abstractGraph.xExtent != xExtent || abstractGraph.yExtent != obstacles.yExtent) {
+    		int clusterSize = hpaClusterSize > 0 ? hpaClusterSize : HierarchicalGrid.defaultClusterSize(xExtent, obstacles.yExtent);
+    		abstractGraph = new HierarchicalGrid(xExtent, obstacles.yExtent, clusterSize);
+    		for (int cell : obstacles.blockedCells()) {
+    			abstractGraph.block(cell % xExtent, cell / xExtent);
+    		}
+    		abstractGraph.build();
+    		plannerEnemyLoc = null;
     	}
     	
-        return path;
+    	// Move the enemy footman's blocked cell if it has moved since the last call
+    	if (plannerEnemyLoc != null && !plannerEnemyLoc.equals(enemyFootmanLoc)) {
+    		abstractGraph.setBlocked(plannerEnemyLoc.x, plannerEnemyLoc.y, false);
+    	}
+    	if (enemyFootmanLoc != null) {
+    		abstractGraph.setBlocked(enemyFootmanLoc.x, enemyFootmanLoc.y, true);
+    	}
+    	plannerEnemyLoc = enemyFootmanLoc;
+    	
+    	int[] cells = abstractGraph.findPath(start.x, start.y, goal.x, goal.y);
+    	if (cells == null || cells.length == 0) {
+    		return null;
+    	}
+    	
+    	// The last cell is the townhall itself, which is not part of the path
+    	return new GridPath(cells, 0, cells.length - 1);
+    }
+
+    /**
+     * Looks up the next step toward the townhall in a distance field kept between calls.
+     * 
+     * The field is built once per map with a breadth first search from every free cell next
+     * to the townhall. When the enemy footman moves, only the distances that depended on
+     * its old and new cells are repaired, after which the next step is a constant time lookup.
+     *
+     * @param start Starting position of the footman
+     * @param goal MapLocation of the townhall
+     * @param enemyFootmanLoc Position of the enemy footman or null if there is none
+     * @param obstacles Grid of the cells occupied by resources
+     * @return a path of only the next step, empty when next to the townhall, or null if
+     * the townhall cannot be reached
+     */
+    private GridPath FlowFieldStep(MapLocation start, MapLocation goal, MapLocation enemyFootmanLoc, ObstacleGrid obstacles)
+    {
+    	updateFlowField(goal, enemyFootmanLoc, obstacles);
+    	
+    	if (flowField.distance(start.x, start.y) == FlowField.UNREACHABLE) {
+    		return null;
+    	}
+    	
+    	int next = flowField.nextStep(start.x, start.y);
+    	return new GridPath(next == -1 ? new int[0] : new int[] {next});
+    }
+
+    /**
+     * Reads a shortest path off the first move database, one lookup per step.
+     * 
+     * The database only knows the resources of the map it was built for. A path that does
+     * not cross the enemy footman is still a shortest path with the footman on the map, since
+     * a blocked cell can only make other paths longer. When the footman is in the way, or the
+     * resources differ from the ones the database was built with, the path is found by
+     * AstarSearch instead.
+     *
+     * @param start Starting position of the footman
+     * @param goal MapLocation of the townhall
+     * @param enemyFootmanLoc Position of the enemy footman or null if there is none
+     * @param obstacles Grid of the cells occupied by resources
+     * @return the cells of the path in the order they are walked
+     */
+    private GridPath FirstMoveLookup(MapLocation start, MapLocation goal, MapLocation enemyFootmanLoc, ObstacleGrid obstacles)
+    {
+    	int xExtent = obstacles.xExtent;
+    	
+    	if (firstMoves != null && firstMoves.fits(obstacles)) {
+    		int[] cells = firstMoves.path(start.y * xExtent + start.x, goal.y * xExtent + goal.x);
+    		firstMoveLookups++;
+    		if (cells == null) {
+    			return null;
+    		}
+    		
+    		int enemyCell = enemyFootmanLoc == null ? -1 : enemyFootmanLoc.y * xExtent + enemyFootmanLoc.x;
+    		boolean isBlocked = false;
+    		for (int cell : cells) {
+    			isBlocked |= cell == enemyCell;
+    		}
+    		if (!isBlocked) {
+    			return new GridPath(cells);
+    		}
+    	}
+    	
+    	firstMoveFallbacks++;
+    	return AstarSearch(start, goal, enemyFootmanLoc, obstacles);
+    }
+
+    /**
+     * Picks the next move with a real-time search that looks at most a fixed number of cells ahead.
+     * 
+     * The time per call is bounded by the lookahead no matter how large the map is, so the
+     * footman starts moving on the first turn. Each call raises the heuristic values of the
+     * cells it looked at, which steers the footman out of dead ends it walked into. The
+     * values are kept across episodes and saved with the player data.
+     *
+     * @param start Starting position of the footman
+     * @param goal MapLocation of the townhall
+     * @param enemyFootmanLoc Position of the enemy footman or null if there is none
+     * @param obstacles Grid of the cells occupied by resources
+     * @return a path of only the next step, empty when next to the townhall, or null if
+     * the townhall cannot be reached
+     */
+    private GridPath RealTimeStep(MapLocation start, MapLocation goal, MapLocation enemyFootmanLoc, ObstacleGrid obstacles)
+    {
+    	int xExtent = obstacles.xExtent;
+    	
+    	// The learned values outlive the planner, which is only reallocated for a new map
+    	if (learnedHeuristic == null) {
+    		learnedHeuristic = new HeuristicTable();
+    	}
+    	if (realTimePlanner == null || realTimePlanner.obstacles != obstacles) {
+    		realTimePlanner = new RealTimeSearch(obstacles, lookahead, learnedHeuristic);
+    	}
+    	
+    	realTimePlanner.beginStep();
+    	if (enemyFootmanLoc != null) {
+    		realTimePlanner.block(enemyFootmanLoc.x, enemyFootmanLoc.y);
+    	}
+    	int next = realTimePlanner.step(start.x, start.y, goal.x, goal.y);
+    	realTimeSteps++;
+    	realTimeExpansions += realTimePlanner.lastExpansions();
+    	
+    	if (next == -1) {
+    		return null;
+    	}
+    	
+    	return new GridPath(next == goal.y * xExtent + goal.x ? new int[0] : new int[] {next});
+    }
+
+    /**
+     * Plans around where the enemy footman is forecast to be on each of the next turns.
+     * 
+     * The forecast follows the footman's last order from the history, or the way it moved
+     * last turn. A space-time search then waits for it or walks around it, so a footman
+     * that is only passing through does not force a replan. The distance field to the
+     * townhall guides the search and finishes the path past the horizon. It only holds the
+     * enemy footman once the forecast expects it to stay where it is going.
+     *
+     * @param start Starting position of the footman
+     * @param goal MapLocation of the townhall
+     * @param enemyFootmanLoc Position of the enemy footman or null if there is none
+     * @param obstacles Grid of the cells occupied by resources
+     * @return the cells of the path in the order they are walked, where a cell equal to the
+     * one before it is a wait
+     */
+    private GridPath PredictiveSearch(MapLocation start, MapLocation goal, MapLocation enemyFootmanLoc, ObstacleGrid obstacles)
+    {
+    	int xExtent = obstacles.xExtent;
+    	if (spaceTimePlanner == null || spaceTimePlanner.xExtent != xExtent || spaceTimePlanner.yExtent != obstacles.yExtent) {
+    		spaceTimePlanner = new SpaceTimeSearch(xExtent, obstacles.yExtent, horizon);
+    	}
+    	if (blockerPredictor == null) {
+    		blockerPredictor = new BlockerPredictor(horizon);
+    	}
+    	// The enemy footman's own moves walk around this footman
+    	blockerPredictor.predict(obstacles, start.y * xExtent + start.x);
+    	
+    	// A footman only passing through is left to the forecast, one that is going to stay put is an obstacle of the field
+    	int settledCell = blockerPredictor.settledCell(SpaceTimeSearch.BLOCKING_OCCUPANCY);
+    	updateFlowField(goal, settledCell == -1 ? null : new MapLocation(settledCell % xExtent, settledCell / xExtent, null, 0), obstacles);
+    	
+    	int[] cells = spaceTimePlanner.plan(start.y * xExtent + start.x, flowField, blockerPredictor);
+    	return cells == null ? null : new GridPath(cells);
+    }
+
+    /**
+     * Tells the forecast where the enemy footman is and where its last order sends it
+     *
+     * @param state
+     * @param history
+     */
+    private void observeBlocker(State.StateView state, History.HistoryView history)
+    {
+        Unit.UnitView enemy = enemyFootmanID == -1 ? null : state.getUnit(enemyFootmanID);
+        if(enemy == null) {
+            return;
+        }
+        if(blockerPredictor == null) {
+            blockerPredictor = new BlockerPredictor(horizon);
+        }
+
+        // the order given last turn is the latest one in the history
+        int turn = state.getTurnNumber();
+        int targetX = -1;
+        int targetY = -1;
+        Action order = turn > 0 ? history.getCommandsIssued(enemyPlayerNum, turn - 1).get(enemyFootmanID) : null;
+        if(order instanceof LocatedAction && order.getType() == ActionType.COMPOUNDMOVE) {
+            targetX = ((LocatedAction) order).getX();
+            targetY = ((LocatedAction) order).getY();
+        }
+
+        blockerPredictor.observe(turn, enemy.getXPosition(), enemy.getYPosition(), targetX, targetY);
+    }
+
+    /**
+     * Builds the distance field for a new map or townhall, otherwise only moves the enemy
+     * footman's blocked cell if it has moved since the last call
+     *
+     * @param goal MapLocation of the townhall
+     * @param enemyFootmanLoc Position of the enemy footman or null if there is none
+     * @param obstacles Grid of the cells occupied by resources
+     */
+    private void updateFlowField(MapLocation goal, MapLocation enemyFootmanLoc, ObstacleGrid obstacles)
+    {
+    	int xExtent = obstacles.xExtent;
+    	if (flowField == null || flowField.xExtent != xExtent || flowField.yExtent != obstacles.yExtent
+    			|| flowField.goalX != goal.x || flowField.goalY != goal.y) {
+    		flowField = new FlowField(xExtent, obstacles.yExtent, goal.x, goal.y);
+    		for (int cell : obstacles.blockedCells()) {
+    			flowField.block(cell % xExtent, cell / xExtent);
+    		}
+    		flowField.build();
+    		plannerEnemyLoc = null;
+    	}
+    	
+    	// Move the enemy footman's blocked cell if it has moved since the last call
+    	if (plannerEnemyLoc != null && !plannerEnemyLoc.equals(enemyFootmanLoc)) {
+    		flowField.setBlocked(plannerEnemyLoc.x, plannerEnemyLoc.y, false);
+    	}
+    	if (enemyFootmanLoc != null) {
+    		flowField.setBlocked(enemyFootmanLoc.x, enemyFootmanLoc.y, true);
+    	}
+    	plannerEnemyLoc = enemyFootmanLoc;
+    }
+
+    /**
+     * Starts an anytime search for a path and runs it for one turn's planning budget.
+     * 
+     * The first path is found by A* with an inflated heuristic, which is quick but can be up
+     * to ARA_INITIAL_EPSILON times longer than optimal. middleStep keeps improving it on the
+     * following turns through improveAnytimePath until the path is optimal or a replan
+     * starts a new search.
+     *
+     * @param start Starting position of the footman
+     * @param goal MapLocation of the townhall
+     * @param enemyFootmanLoc Position of the enemy footman or null if there is none
+     * @param obstacles Grid of the cells occupied by resources
+     * @return the cells of the path in the order they are walked, or null if no path
+     * was found within the budget
+     */
+    GridPath AraSearch(MapLocation start, MapLocation goal, MapLocation enemyFootmanLoc, ObstacleGrid obstacles)
+    {
+    	int xExtent = obstacles.xExtent;
+    	if (anytimePlanner == null || anytimePlanner.obstacles != obstacles) {
+    		anytimePlanner = new AnytimeSearch(obstacles, ARA_INITIAL_EPSILON, ARA_EPSILON_STEP);
+    	}
+    	anytimePlanner.beginQuery();
+    	
+    	// Resources are already in the grid, the enemy footman's position can't be entered either
+    	if (enemyFootmanLoc != null) {
+    		anytimePlanner.block(enemyFootmanLoc.x, enemyFootmanLoc.y);
+    	}
+    	
+    	anytimePlanner.start(start.x, start.y, goal.x, goal.y);
+    	anytimeStartCell = start.y * xExtent + start.x;
+    	
+    	return improveAnytimePath(start.x, start.y, xExtent);
+    }
+
+    /**
+     * Runs the anytime search for one turn's planning budget and records how much of it was used.
+     * 
+     * The search keeps planning from the cell its query started from, so a better path is
+     * only returned if the footman is still on it. The part the footman has already walked is
+     * cut off.
+     *
+     * @param footmanX X coordinate of the footman
+     * @param footmanY Y coordinate of the footman
+     * @param xExtent Width of the map
+     * @return the remainder of a shorter path, or null if none was found this turn
+     */
+    private GridPath improveAnytimePath(int footmanX, int footmanY, int xExtent)
+    {
+    	long planStartTime = System.nanoTime();
+    	boolean improved = anytimePlanner.improve(planStartTime + planBudget);
+    	long used = System.nanoTime() - planStartTime;
+    	
+    	planningTurns++;
+    	planBudgetGranted += planBudget;
+    	planBudgetUsed += used;
+    	if (used > planBudget) {
+    		planBudgetOverruns++;
+    	}
+    	
+    	if (!improved) {
+    		return null;
+    	}
+    	
+    	// Find where the footman is on the new path
+    	int[] cells = anytimePlanner.solution();
+    	int footmanCell = footmanY * xExtent + footmanX;
+    	int first = footmanCell == anytimeStartCell ? 0 : -1;
+    	for (int i = 0; first == -1 && i < cells.length; i++) {
+    		if (cells[i] == footmanCell) {
+    			first = i + 1;
+    		}
+    	}
+    	if (first == -1) {
+    		return null;
+    	}
+    	
+    	// The last cell is the townhall itself, which is not part of the path
+    	return new GridPath(cells, first, cells.length - 1);
     }
 
     /**
@@ -470,6 +1744,17 @@ public class AstarAgent extends Agent {
     	}
     	return !isOutsideGrid;
     }
+
+    /**
+     * Check if attempted move is valid against the obstacle grid, which also covers the map bounds
+     * 
+     * @param next the map location that is being tested
+     * @param obstacles Grid of the cells occupied by resources
+     * @return true if the next map location is valid
+     */
+    public boolean isValidMapLocation(MapLocation next, ObstacleGrid obstacles) {
+    	return obstacles.isPassable(next.x, next.y);
+    }
     
     /**
      * A method which produces a list of neighbor map locations from the current map location
@@ -487,7 +1772,7 @@ public class AstarAgent extends Agent {
     		for (int y = -1; y < 2; y++) {
     			
     			// We don't want to add the current node to the neighbors list
-    			if (x == current.x && y == current.y) {
+    			if (x == 0 && y == 0) {
     				continue;
     			}
     			
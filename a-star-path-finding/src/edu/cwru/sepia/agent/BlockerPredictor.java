@@ -0,0 +1,225 @@
+package edu.cwru.sepia.agent;
+
+import java.util.Arrays;
+
+/**
+ * Forecasts where a moving unit will stand over the next few turns, as a probability of
+ * occupying each cell at each turn.
+ *
+ * The forecast comes from what was seen of the unit on earlier turns. A unit that was
+ * ordered to walk somewhere is expected on one of the cells of a shortest walk there
+ * around the obstacles, spread evenly over all of them at every turn, and then to stay at
+ * its destination. The walk also goes around the cell of whoever the forecast is for, since
+ * the unit sees it standing there. A unit
+ * without a known destination that moved last turn is expected to keep going the same way,
+ * with less certainty for every further turn. A unit that did neither stays where it is.
+ */
+class BlockerPredictor {
+
+	// Chance that a unit with a destination walks there without stopping
+	static final float ORDER_CONFIDENCE = 0.9f;
+
+	// Chance per turn that a unit without a destination keeps moving in the same direction
+	static final float MOMENTUM = 0.8f;
+
+	final int horizon;
+
+	// The last two observations, and the destination given with the last one or -1
+	private int turn = -1;
+	private int x;
+	private int y;
+	private int previousX;
+	private int previousY;
+	private int targetX = -1;
+	private int targetY = -1;
+
+	// Cells of turn t of the forecast are cells[first[t]] up to cells[first[t + 1]]
+	private final int[] first;
+	private int[] cells;
+	private float[] probability;
+	private int count;
+
+	// Breadth first search from the destination and from the unit, sized for the last grid
+	private int[] fromTarget = new int[0];
+	private int[] fromUnit = new int[0];
+	private int[] queue = new int[0];
+
+	/**
+	 * @param horizon the number of turns forecast
+	 */
+	public BlockerPredictor(int horizon) {
+		this.horizon = horizon;
+		first = new int[horizon + 2];
+		cells = new int[4 * (horizon + 1)];
+		probability = new float[cells.length];
+	}
+
+	/**
+	 * Records where the unit is on a turn. Observing the same turn again only updates it.
+	 *
+	 * @param turn the turn number
+	 * @param x X coordinate of the unit
+	 * @param y Y coordinate of the unit
+	 * @param targetX X coordinate of the destination of the unit's last order, or -1 if unknown
+	 * @param targetY Y coordinate of the destination of the unit's last order, or -1 if unknown
+	 */
+	public void observe(int turn, int x, int y, int targetX, int targetY) {
+		if (turn != this.turn) {
+			// The direction of a move is only known from two turns in a row
+			boolean isNextTurn = this.turn != -1 && turn == this.turn + 1;
+			previousX = isNextTurn ? this.x : x;
+			previousY = isNextTurn ? this.y : y;
+			this.turn = turn;
+		}
+		this.x = x;
+		this.y = y;
+		this.targetX = targetX;
+		this.targetY = targetY;
+	}
+
+	/**
+	 * Replaces the forecast with one starting from the last observation. Before the first
+	 * observation the forecast is empty.
+	 *
+	 * @param obstacles the cells the unit can't enter
+	 * @param avoidCell a further cell an ordered unit walks around, or -1
+	 */
+	public void predict(ObstacleGrid obstacles, int avoidCell) {
+		count = 0;
+		if (turn == -1) {
+			Arrays.fill(first, 0);
+			return;
+		}
+
+		int xExtent = obstacles.xExtent;
+		int size = xExtent * obstacles.yExtent;
+		if (fromTarget.length != size) {
+			fromTarget = new int[size];
+			fromUnit = new int[size];
+			queue = new int[size];
+		}
+
+		// A destination that can't be reached tells nothing about where the unit goes
+		int distance = -1;
+		if (targetX != -1) {
+			breadthFirst(obstacles, avoidCell, targetY * xExtent + targetX, fromTarget, size);
+			distance = fromTarget[y * xExtent + x];
+		}
+		// The cells t steps from the unit are the t-th layer of the queue
+		int reached = distance > 0 ? breadthFirst(obstacles, avoidCell, y * xExtent + x, fromUnit, Math.min(distance, horizon)) : 0;
+		int layer = 0;
+
+		int dx = Integer.signum(x - previousX);
+		int dy = Integer.signum(y - previousY);
+		int cellX = x;
+		int cellY = y;
+		float momentum = 1;
+
+		for (int time = 0; time <= horizon; time++) {
+			first[time] = count;
+
+			if (distance > 0 && time > 0) {
+				// Every cell that is time steps from here and distance - time steps from the destination
+				int firstCell = count;
+				if (time >= distance) {
+					add(targetY * xExtent + targetX, 0);
+				}
+				for (; layer < reached && fromUnit[queue[layer]] <= time; layer++) {
+					int cell = queue[layer];
+					if (fromUnit[cell] == time && time < distance && fromTarget[cell] == distance - time) {
+						add(cell, 0);
+					}
+				}
+				for (int i = firstCell; i < count; i++) {
+					probability[i] = ORDER_CONFIDENCE / (count - firstCell);
+				}
+			}
+			else if (distance == -1 && (dx != 0 || dy != 0) && time > 0) {
+				// Keeps going the same way until something is in the way
+				if (obstacles.isPassable(cellX + dx, cellY + dy)) {
+					cellX += dx;
+					cellY += dy;
+				}
+				momentum *= MOMENTUM;
+				add(cellY * xExtent + cellX, momentum);
+			}
+			else {
+				add(y * xExtent + x, 1);
+			}
+		}
+		first[horizon + 1] = count;
+	}
+
+	/**
+	 * @param cell a cell index
+	 * @param time turns after the last observation, later turns than the horizon read the last one
+	 * @return the probability that the unit stands on the cell at that time
+	 */
+	public float occupancy(int cell, int time) {
+		int t = Math.min(time, horizon);
+		for (int i = first[t]; i < first[t + 1]; i++) {
+			if (cells[i] == cell) {
+				return probability[i];
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @param minProbability the least probability that counts as settled
+	 * @return the cell the unit is forecast to stay on at the end of the horizon with at least
+	 * the given probability, or -1 if it is not forecast to settle
+	 */
+	public int settledCell(float minProbability) {
+		int last = first[horizon];
+		if (first[horizon + 1] - last != 1 || probability[last] < minProbability) {
+			return -1;
+		}
+		return cells[last];
+	}
+
+	/**
+	 * Fills a table with the number of steps from a cell to every cell at most maxDistance
+	 * steps away without entering avoidCell, and -1 for the others
+	 *
+	 * @return the number of cells reached, which are in queue in the order of their distance
+	 */
+	private int breadthFirst(ObstacleGrid obstacles, int avoidCell, int source, int[] distance, int maxDistance) {
+		Arrays.fill(distance, -1);
+		int xExtent = obstacles.xExtent;
+
+		distance[source] = 0;
+		queue[0] = source;
+		int tail = 1;
+		for (int head = 0; head < tail; head++) {
+			int cell = queue[head];
+			if (distance[cell] == maxDistance) {
+				continue;
+			}
+
+			int cellX = cell % xExtent;
+			int cellY = cell / xExtent;
+			for (int free = obstacles.neighborMask(cellX, cellY); free != 0; free &= free - 1) {
+				int direction = Integer.numberOfTrailingZeros(free);
+				int neighborX = cellX + GridSearch.DX[direction];
+				int neighborY = cellY + GridSearch.DY[direction];
+				int neighbor = neighborY * xExtent + neighborX;
+				if (neighbor != avoidCell && distance[neighbor] == -1) {
+					distance[neighbor] = distance[cell] + 1;
+					queue[tail++] = neighbor;
+				}
+			}
+		}
+		return tail;
+	}
+
+	private void add(int cell, float cellProbability) {
+		if (count == cells.length) {
+			cells = Arrays.copyOf(cells, count * 2);
+			probability = Arrays.copyOf(probability, count * 2);
+		}
+		cells[count] = cell;
+		probability[count] = cellProbability;
+		count++;
+	}
+}
@@ -0,0 +1,108 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class BlockerPredictorTest {
+
+	private static final float EPSILON = 1e-6f;
+
+	@Test
+	public void testOrderedMoveAlongShortestWalk() {
+		ObstacleGrid grid = new ObstacleGrid(8, 8);
+		BlockerPredictor predictor = new BlockerPredictor(6);
+		predictor.observe(3, 6, 6, 3, 6);
+		predictor.predict(grid, -1);
+
+		assertEquals(1, predictor.occupancy(6 * 8 + 6, 0), EPSILON);
+		// The first step may go up, down or straight, each still two steps from the destination
+		assertEquals(BlockerPredictor.ORDER_CONFIDENCE / 3, predictor.occupancy(6 * 8 + 5, 1), EPSILON);
+		assertEquals(BlockerPredictor.ORDER_CONFIDENCE / 3, predictor.occupancy(5 * 8 + 5, 1), EPSILON);
+		assertEquals(0, predictor.occupancy(5 * 8 + 6, 1), EPSILON);
+		assertEquals(BlockerPredictor.ORDER_CONFIDENCE, predictor.occupancy(6 * 8 + 3, 3), EPSILON);
+		// Then it stays at its destination
+		assertEquals(BlockerPredictor.ORDER_CONFIDENCE, predictor.occupancy(6 * 8 + 3, 6), EPSILON);
+		assertEquals(BlockerPredictor.ORDER_CONFIDENCE, predictor.occupancy(6 * 8 + 3, 20), EPSILON);
+		assertEquals(0, predictor.occupancy(6 * 8 + 6, 1), EPSILON);
+		assertEquals(6 * 8 + 3, predictor.settledCell(0.5f));
+	}
+
+	@Test
+	public void testOrderedMoveSpreadsOverEqualWalks() {
+		ObstacleGrid grid = new ObstacleGrid(8, 8);
+		BlockerPredictor predictor = new BlockerPredictor(4);
+		predictor.observe(0, 0, 0, 4, 2);
+		predictor.predict(grid, -1);
+
+		// After one step it is on (1, 0) or (1, 1), both still two rows and three columns away at most
+		float total = 0;
+		for (int cell = 0; cell < 64; cell++) {
+			total += predictor.occupancy(cell, 1);
+		}
+		assertEquals(BlockerPredictor.ORDER_CONFIDENCE, total, EPSILON);
+		assertEquals(BlockerPredictor.ORDER_CONFIDENCE / 2, predictor.occupancy(1, 1), EPSILON);
+		assertEquals(BlockerPredictor.ORDER_CONFIDENCE / 2, predictor.occupancy(8 + 1, 1), EPSILON);
+	}
+
+	@Test
+	public void testOrderedMoveWalksAroundAvoidedCell() {
+		/*
+		 * - - - - -
+		 * x x - x x
+		 * - - - - -
+		 *
+		 * Ordered from (0, 0) to (0, 2) while (2, 1), the only gap, is taken
+		 */
+		ObstacleGrid grid = new ObstacleGrid(5, 3);
+		for (int x : new int[] {0, 1, 3, 4}) {
+			grid.setBlocked(x, 1, true);
+		}
+		BlockerPredictor predictor = new BlockerPredictor(4);
+		predictor.observe(0, 0, 0, 0, 2);
+
+		predictor.predict(grid, -1);
+		assertEquals(BlockerPredictor.ORDER_CONFIDENCE, predictor.occupancy(5 + 2, 2), EPSILON);
+
+		// Without a way there it stands still
+		predictor.predict(grid, 5 + 2);
+		assertEquals(1, predictor.occupancy(0, 2), EPSILON);
+	}
+
+	@Test
+	public void testKeepsDirectionWithoutOrder() {
+		ObstacleGrid grid = new ObstacleGrid(8, 8);
+		grid.setBlocked(5, 2, true);
+		BlockerPredictor predictor = new BlockerPredictor(4);
+		predictor.observe(1, 2, 2, -1, -1);
+		predictor.observe(2, 3, 2, -1, -1);
+		predictor.predict(grid, -1);
+
+		assertEquals(BlockerPredictor.MOMENTUM, predictor.occupancy(2 * 8 + 4, 1), EPSILON);
+		// Stopped by the obstacle on (5, 2)
+		assertEquals(BlockerPredictor.MOMENTUM * BlockerPredictor.MOMENTUM, predictor.occupancy(2 * 8 + 4, 2), EPSILON);
+		assertEquals(0, predictor.occupancy(2 * 8 + 5, 2), EPSILON);
+		// Less and less likely to still be moving, so it does not count as settled
+		assertEquals(-1, predictor.settledCell(0.5f));
+	}
+
+	@Test
+	public void testStandsStillWithoutMoveOrOrder() {
+		BlockerPredictor predictor = new BlockerPredictor(4);
+		predictor.observe(1, 3, 2, -1, -1);
+		// A gap in the observations gives no direction
+		predictor.observe(5, 4, 2, -1, -1);
+		predictor.predict(new ObstacleGrid(8, 8), -1);
+
+		assertEquals(1, predictor.occupancy(2 * 8 + 4, 3), EPSILON);
+		assertEquals(0, predictor.occupancy(2 * 8 + 5, 1), EPSILON);
+	}
+
+	@Test
+	public void testEmptyBeforeFirstObservation() {
+		BlockerPredictor predictor = new BlockerPredictor(4);
+		predictor.predict(new ObstacleGrid(8, 8), -1);
+
+		assertEquals(0, predictor.occupancy(0, 0), EPSILON);
+	}
+}
@@ -0,0 +1,277 @@
+package edu.cwru.sepia.agent;
+
+import java.util.Arrays;
+
+/**
+ * A* for an 8-connected grid with integer terrain costs, on a bucket queue instead of a heap.
+ *
+ * The heuristic is the Chebyshev distance times the smallest cost on the map, which never
+ * overestimates and grows by at most that cost per step, so paths are optimal and the
+ * f-cost of the cells taken off the open list never goes down. Every f-cost is an integer,
+ * and a cell put on the open list is at most maxCost + minCost above the one being expanded.
+ * The open list is therefore a ring of that many buckets plus one, each a doubly linked list
+ * of cells through next[] and previous[], and insert, decrease-key and poll are O(1) apart
+ * from stepping over empty buckets (Dial's algorithm). A bucket is taken from the front and
+ * new cells go in at the front, so ties go to the cell found last, which is nearer the goal.
+ *
+ * The arrays are reused across searches like in GridSearch: beginSearch(), block() for every
+ * other impassable cell, then search(), and path() reads the path back.
+ */
+class BucketSearch {
+
+	// Cell states, stored in the low bits of state[] next to the generation
+	private static final int UNSEEN = 0;
+	private static final int OPEN = 1;
+	private static final int CLOSED = 2;
+	private static final int BLOCKED = 3;
+
+	private static final int STATE_BITS = 2;
+	private static final int STATE_MASK = (1 << STATE_BITS) - 1;
+	private static final int MAX_GENERATION = Integer.MAX_VALUE >>> STATE_BITS;
+
+	final int xExtent;
+	final int yExtent;
+	final ObstacleGrid obstacles;
+
+	private TerrainCosts terrain;
+
+	private final int[] gCost;
+	private final int[] fCost;
+	private final int[] parent;
+	private final int[] state;
+	private int generation;
+	private int goalX;
+	private int goalY;
+
+	// Ring of buckets by f-cost, and the list links of the cells in them
+	private int[] bucket = new int[0];
+	private final int[] next;
+	private final int[] previous;
+	private int openSize;
+
+	private final SearchCounters counters = new SearchCounters();
+
+	/**
+	 * Allocates the search arrays for the map of an obstacle grid
+	 *
+	 * @param obstacles the static obstacles, read by every search
+	 * @param terrain the cost of stepping onto each cell
+	 */
+	public BucketSearch(ObstacleGrid obstacles, TerrainCosts terrain) {
+		if (!terrain.fits(obstacles.xExtent, obstacles.yExtent)) {
+			throw new IllegalArgumentException("Terrain of " + terrain.xExtent + "x" + terrain.yExtent + " does not fit a map of "
+					+ obstacles.xExtent + "x" + obstacles.yExtent);
+		}
+		this.obstacles = obstacles;
+		this.xExtent = obstacles.xExtent;
+		this.yExtent = obstacles.yExtent;
+		this.terrain = terrain;
+
+		int size = xExtent * yExtent;
+		gCost = new int[size];
+		fCost = new int[size];
+		parent = new int[size];
+		state = new int[size];
+		next = new int[size];
+		previous = new int[size];
+	}
+
+	/**
+	 * @param terrain the cost of stepping onto each cell for later searches, of the same map
+	 */
+	public void setTerrain(TerrainCosts terrain) {
+		if (!terrain.fits(xExtent, yExtent)) {
+			throw new IllegalArgumentException("Terrain of " + terrain.xExtent + "x" + terrain.yExtent + " does not fit a map of "
+					+ xExtent + "x" + yExtent);
+		}
+		this.terrain = terrain;
+	}
+
+	/**
+	 * Starts a new search. Every cell becomes unseen and the cells blocked for the last search
+	 * are freed, without touching the arrays.
+	 */
+	public void beginSearch() {
+		generation++;
+
+		// Only once the generation wraps around are the stale states actually wiped
+		if (generation > MAX_GENERATION) {
+			Arrays.fill(state, 0);
+			generation = 1;
+		}
+	}
+
+	/**
+	 * Marks a cell as impassable for the current search. Out of bounds cells are ignored.
+	 *
+	 * @param x X coordinate of the cell
+	 * @param y Y coordinate of the cell
+	 */
+	public void block(int x, int y) {
+		if (x >= 0 && y >= 0 && x < xExtent && y < yExtent) {
+			setState(y * xExtent + x, BLOCKED);
+		}
+	}
+
+	/**
+	 * Runs A* from start to goal
+	 *
+	 * @param startX X coordinate of the start
+	 * @param startY Y coordinate of the start
+	 * @param goalX X coordinate of the goal
+	 * @param goalY Y coordinate of the goal
+	 * @return the cell index of the goal if it was reached, -1 otherwise
+	 */
+	public int search(int startX, int startY, int goalX, int goalY) {
+		this.goalX = goalX;
+		this.goalY = goalY;
+
+		// A cell on the open list is at most maxCost + minCost above the cheapest one
+		int ringSize = terrain.maxCost() + terrain.minCost() + 1;
+		if (bucket.length != ringSize) {
+			bucket = new int[ringSize];
+		}
+		Arrays.fill(bucket, -1);
+		openSize = 0;
+
+		int start = startY * xExtent + startX;
+		int goal = goalY * xExtent + goalX;
+		gCost[start] = 0;
+		parent[start] = -1;
+		open(start);
+
+		int f = fCost[start];
+		while (openSize > 0) {
+			while (bucket[f % ringSize] == -1) {
+				f++;
+			}
+
+			int current = bucket[f % ringSize];
+			unlink(current);
+			openSize--;
+			counters.expanded();
+			if (current == goal) {
+				return goal;
+			}
+			setState(current, CLOSED);
+
+			int x = current % xExtent;
+			int y = current / xExtent;
+			for (int free = obstacles.neighborMask(x, y); free != 0; free &= free - 1) {
+				int direction = Integer.numberOfTrailingZeros(free);
+				int neighborX = x + GridSearch.DX[direction];
+				int neighborY = y + GridSearch.DY[direction];
+				int neighbor = neighborY * xExtent + neighborX;
+				int cost = gCost[current] + terrain.cost(neighbor);
+				int neighborState = state(neighbor);
+				if (neighborState == UNSEEN) {
+					gCost[neighbor] = cost;
+					parent[neighbor] = current;
+					open(neighbor);
+				}
+				else if (neighborState == OPEN && cost < gCost[neighbor]) {
+					unlink(neighbor);
+					gCost[neighbor] = cost;
+					parent[neighbor] = current;
+					fCost[neighbor] = cost + heuristic(neighbor);
+					link(neighbor);
+				}
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @param cell a cell reached by the last search
+	 * @return the cost of the cheapest path to it
+	 */
+	public int cost(int cell) {
+		return gCost[cell];
+	}
+
+	/**
+	 * @param goal the cell index the last search returned
+	 * @return the cell indices in the order they are walked, without the start and the goal,
+	 * or null if the goal is the start
+	 */
+	public int[] path(int goal) {
+		if (parent[goal] == -1) {
+			return null;
+		}
+
+		int length = 0;
+		for (int cell = parent[goal]; parent[cell] != -1; cell = parent[cell]) {
+			length++;
+		}
+		int[] cells = new int[length];
+		for (int cell = parent[goal]; parent[cell] != -1; cell = parent[cell]) {
+			cells[--length] = cell;
+		}
+		return cells;
+	}
+
+	/**
+	 * @return the counters of the open list, which add up over searches until reset
+	 */
+	public SearchCounters counters() {
+		return counters;
+	}
+
+	/**
+	 * @param cell a cell index
+	 * @return the Chebyshev distance from the cell to the goal times the smallest cost
+	 */
+	private int heuristic(int cell) {
+		int xDistance = Math.abs(cell % xExtent - goalX);
+		int yDistance = Math.abs(cell / xExtent - goalY);
+		return terrain.minCost() * Math.max(xDistance, yDistance);
+	}
+
+	private void open(int cell) {
+		fCost[cell] = gCost[cell] + heuristic(cell);
+		setState(cell, OPEN);
+		link(cell);
+
+		openSize++;
+		counters.generated(openSize);
+	}
+
+	/**
+	 * Puts a cell at the front of the bucket of its f-cost
+	 */
+	private void link(int cell) {
+		int ring = fCost[cell] % bucket.length;
+		int first = bucket[ring];
+		next[cell] = first;
+		previous[cell] = -1;
+		if (first != -1) {
+			previous[first] = cell;
+		}
+		bucket[ring] = cell;
+	}
+
+	/**
+	 * Takes a cell out of the bucket it is in
+	 */
+	private void unlink(int cell) {
+		if (previous[cell] == -1) {
+			bucket[fCost[cell] % bucket.length] = next[cell];
+		}
+		else {
+			next[previous[cell]] = next[cell];
+		}
+		if (next[cell] != -1) {
+			previous[next[cell]] = previous[cell];
+		}
+	}
+
+	private int state(int cell) {
+		int cellState = state[cell];
+		return (cellState >>> STATE_BITS) == generation ? cellState & STATE_MASK : UNSEEN;
+	}
+
+	private void setState(int cell, int cellState) {
+		state[cell] = (generation << STATE_BITS) | cellState;
+	}
+}
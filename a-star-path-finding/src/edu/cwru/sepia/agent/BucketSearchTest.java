@@ -0,0 +1,136 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BucketSearchTest {
+
+	/**
+	 * @return the cost of the cheapest path from start to every cell, by relaxing every step
+	 * until nothing changes
+	 */
+	private static int[] cheapestCosts(ObstacleGrid grid, TerrainCosts terrain, int start) {
+		int xExtent = grid.xExtent;
+		int[] cost = new int[xExtent * grid.yExtent];
+		Arrays.fill(cost, Integer.MAX_VALUE);
+		cost[start] = 0;
+
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int cell = 0; cell < cost.length; cell++) {
+				if (cost[cell] == Integer.MAX_VALUE) {
+					continue;
+				}
+				for (int direction = 0; direction < 8; direction++) {
+					int x = cell % xExtent + GridSearch.DX[direction];
+					int y = cell / xExtent + GridSearch.DY[direction];
+					if (grid.isPassable(x, y) && cost[cell] + terrain.cost(y * xExtent + x) < cost[y * xExtent + x]) {
+						cost[y * xExtent + x] = cost[cell] + terrain.cost(y * xExtent + x);
+						changed = true;
+					}
+				}
+			}
+		}
+		return cost;
+	}
+
+	@Test
+	public void testRoadBeatsShortcutThroughSwamp() {
+		/*
+		 * S 9 9 9 G
+		 * 1 9 9 9 1
+		 * 1 1 1 1 1
+		 */
+		ObstacleGrid grid = new ObstacleGrid(5, 3);
+		TerrainCosts terrain = new TerrainCosts(5, 3);
+		for (int x = 1; x < 4; x++) {
+			terrain.set(x, 0, 9);
+			terrain.set(x, 1, 9);
+		}
+
+		BucketSearch search = new BucketSearch(grid, terrain);
+		search.beginSearch();
+		int goal = search.search(0, 0, 4, 0);
+
+		assertEquals(4, goal);
+		assertEquals(6, search.cost(goal));
+		assertArrayEquals(new int[] {5, 11, 12, 13, 9}, search.path(goal));
+	}
+
+	@Test
+	public void testCostsAreOptimal() {
+		Random random = new Random(5);
+		ObstacleGrid grid = new ObstacleGrid(20, 15);
+		TerrainCosts terrain = new TerrainCosts(20, 15);
+		for (int cell = 0; cell < 20 * 15; cell++) {
+			if (random.nextInt(5) == 0) {
+				grid.setBlocked(cell % 20, cell / 20, true);
+			}
+			terrain.set(cell % 20, cell / 20, 1 + random.nextInt(7));
+		}
+
+		BucketSearch search = new BucketSearch(grid, terrain);
+		for (int query = 0; query < 200; query++) {
+			int start = random.nextInt(20 * 15);
+			int goal = random.nextInt(20 * 15);
+			if (start == goal || !grid.isPassable(start % 20, start / 20) || !grid.isPassable(goal % 20, goal / 20)) {
+				continue;
+			}
+
+			int[] expected = cheapestCosts(grid, terrain, start);
+			search.beginSearch();
+			int reached = search.search(start % 20, start / 20, goal % 20, goal / 20);
+			if (expected[goal] == Integer.MAX_VALUE) {
+				assertEquals(-1, reached);
+				continue;
+			}
+			assertEquals(expected[goal], search.cost(reached));
+
+			// The path adds up to the same cost one step at a time
+			int cost = terrain.cost(goal);
+			int previous = start;
+			for (int cell : search.path(reached)) {
+				assertTrue(Math.abs(cell % 20 - previous % 20) <= 1 && Math.abs(cell / 20 - previous / 20) <= 1);
+				cost += terrain.cost(cell);
+				previous = cell;
+			}
+			assertEquals(expected[goal], cost);
+		}
+	}
+
+	@Test
+	public void testUniformCostsMatchGridSearch() {
+		ObstacleGrid grid = new ObstacleGrid(12, 12);
+		for (int y = 0; y < 10; y++) {
+			grid.setBlocked(6, y, true);
+		}
+
+		BucketSearch bucketSearch = new BucketSearch(grid, new TerrainCosts(12, 12));
+		GridSearch gridSearch = new GridSearch(grid);
+		bucketSearch.beginSearch();
+		gridSearch.beginSearch();
+
+		int goal = bucketSearch.search(0, 0, 11, 0);
+		assertEquals(gridSearch.path(gridSearch.search(0, 0, 11, 0)).length, bucketSearch.path(goal).length);
+		assertEquals(bucketSearch.path(goal).length + 1, bucketSearch.cost(goal));
+	}
+
+	@Test
+	public void testBlockedCell() {
+		ObstacleGrid grid = new ObstacleGrid(3, 1);
+		BucketSearch search = new BucketSearch(grid, new TerrainCosts(3, 1));
+
+		search.beginSearch();
+		search.block(1, 0);
+		assertEquals(-1, search.search(0, 0, 2, 0));
+
+		// Blocks only last for one search
+		search.beginSearch();
+		assertEquals(2, search.search(0, 0, 2, 0));
+	}
+}
@@ -0,0 +1,204 @@
+package edu.cwru.sepia.agent;
+
+/**
+ * Labels every free cell of an obstacle grid with the region of free cells it belongs to, so
+ * whether one cell can be reached from another is a comparison of two labels.
+ *
+ * The labels are found once by flood filling the grid and then kept up to date as cells are
+ * blocked or freed. Freeing a cell joins the regions around it, which only needs a flood
+ * when it touches more than one. Blocking a cell can only split its region if its free
+ * neighbors stop touching each other without it. That is checked on the eight cells around
+ * it, and in the common case nothing is flooded at all.
+ */
+class ConnectivityIndex {
+
+	// Label of blocked cells
+	static final int NONE = 0;
+
+	final int xExtent;
+	final int yExtent;
+	final ObstacleGrid obstacles;
+
+	private final int[] label;
+	private final int[] queue;
+	private int nextLabel = NONE + 1;
+	private int floods;
+
+	/**
+	 * Labels every region of the grid
+	 *
+	 * @param obstacles the grid, which the index reads and has to be told about changes to
+	 */
+	public ConnectivityIndex(ObstacleGrid obstacles) {
+		this.obstacles = obstacles;
+		this.xExtent = obstacles.xExtent;
+		this.yExtent = obstacles.yExtent;
+
+		int size = xExtent * yExtent;
+		label = new int[size];
+		queue = new int[size];
+
+		for (int cell = 0; cell < size; cell++) {
+			if (label[cell] == NONE && obstacles.isPassable(cell % xExtent, cell / xExtent)) {
+				flood(cell, nextLabel++);
+			}
+		}
+	}
+
+	/**
+	 * @param fromX X coordinate of the first cell
+	 * @param fromY Y coordinate of the first cell
+	 * @param toX X coordinate of the second cell
+	 * @param toY Y coordinate of the second cell
+	 * @return true if both cells are free and a path of free cells joins them
+	 */
+	public boolean isConnected(int fromX, int fromY, int toX, int toY) {
+		int from = label(fromX, fromY);
+		return from != NONE && from == label(toX, toY);
+	}
+
+	/**
+	 * @param x X coordinate of the cell
+	 * @param y Y coordinate of the cell
+	 * @return the label of the cell's region, or NONE if it is blocked or outside the map
+	 */
+	public int label(int x, int y) {
+		if (x < 0 || y < 0 || x >= xExtent || y >= yExtent) {
+			return NONE;
+		}
+		return label[y * xExtent + x];
+	}
+
+	/**
+	 * Relabels what a change to one cell of the grid affected. Call it after the cell was
+	 * blocked or freed in the grid.
+	 *
+	 * @param x X coordinate of the cell
+	 * @param y Y coordinate of the cell
+	 */
+	public void cellChanged(int x, int y) {
+		if (x < 0 || y < 0 || x >= xExtent || y >= yExtent) {
+			return;
+		}
+		int cell = y * xExtent + x;
+
+		if (obstacles.isPassable(x, y)) {
+			if (label[cell] == NONE) {
+				cellFreed(cell, x, y);
+			}
+		}
+		else if (label[cell] != NONE) {
+			cellBlocked(cell, x, y);
+		}
+	}
+
+	/**
+	 * @return the number of flood fills done by updates since the index was built
+	 */
+	public int floods() {
+		return floods;
+	}
+
+	private void cellFreed(int cell, int x, int y) {
+		// The freed cell joins the region around it, or joins several of them into one
+		int joined = NONE;
+		for (int direction = 0; direction < 8; direction++) {
+			int neighborLabel = label(x + GridSearch.DX[direction], y + GridSearch.DY[direction]);
+			if (neighborLabel == NONE || neighborLabel == joined) {
+				continue;
+			}
+			if (joined != NONE) {
+				flood(cell, nextLabel++);
+				floods++;
+				return;
+			}
+			joined = neighborLabel;
+		}
+		label[cell] = joined != NONE ? joined : nextLabel++;
+	}
+
+	private void cellBlocked(int cell, int x, int y) {
+		int oldLabel = label[cell];
+		label[cell] = NONE;
+
+		// Group the free neighbors by which of them touch each other directly
+		int[] group = new int[8];
+		int groups = 0;
+		for (int direction = 0; direction < 8; direction++) {
+			if (label(x + GridSearch.DX[direction], y + GridSearch.DY[direction]) == NONE) {
+				group[direction] = -1;
+				continue;
+			}
+			group[direction] = groups++;
+			for (int other = 0; other < direction; other++) {
+				if (group[other] != -1 && group[other] != group[direction] && touches(direction, other)) {
+					groups = merge(group, group[other], group[direction], groups);
+				}
+			}
+		}
+		if (groups <= 1) {
+			return;
+		}
+
+		// The region may have split, each group that was not reached by an earlier flood gets a new label
+		for (int direction = 0; direction < 8; direction++) {
+			int neighbor = (y + GridSearch.DY[direction]) * xExtent + x + GridSearch.DX[direction];
+			if (group[direction] != -1 && label[neighbor] == oldLabel) {
+				flood(neighbor, nextLabel++);
+				floods++;
+			}
+		}
+	}
+
+	/**
+	 * @return true if the neighbors in two directions are next to each other
+	 */
+	private static boolean touches(int direction, int other) {
+		return Math.abs(GridSearch.DX[direction] - GridSearch.DX[other]) <= 1 && Math.abs(GridSearch.DY[direction] - GridSearch.DY[other]) <= 1;
+	}
+
+	/**
+	 * Renames group from to group into and closes the gap it leaves in the numbering
+	 *
+	 * @return the new number of groups
+	 */
+	private static int merge(int[] group, int from, int into, int groups) {
+		int kept = Math.min(from, into);
+		int removed = Math.max(from, into);
+		for (int i = 0; i < group.length; i++) {
+			if (group[i] == removed) {
+				group[i] = kept;
+			}
+			else if (group[i] > removed) {
+				group[i]--;
+			}
+		}
+		return groups - 1;
+	}
+
+	/**
+	 * Gives every free cell connected to a cell the same new label
+	 */
+	private void flood(int source, int newLabel) {
+		label[source] = newLabel;
+		queue[0] = source;
+
+		int tail = 1;
+		for (int head = 0; head < tail; head++) {
+			int cell = queue[head];
+			int x = cell % xExtent;
+			int y = cell / xExtent;
+
+			for (int free = obstacles.neighborMask(x, y); free != 0; free &= free - 1) {
+				int direction = Integer.numberOfTrailingZeros(free);
+				int neighborX = x + GridSearch.DX[direction];
+				int neighborY = y + GridSearch.DY[direction];
+				int neighbor = neighborY * xExtent + neighborX;
+				if (label[neighbor] != newLabel) {
+					label[neighbor] = newLabel;
+					queue[tail++] = neighbor;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ConnectivityIndexTest {
+
+	@Test
+	public void testWalledOffGoal() {
+		ConnectivityIndex index = new ConnectivityIndex(TestGrids.grid(new String[] {
+			"F.x..",
+			"..x..",
+			"xxx.H",
+		}));
+
+		assertFalse(index.isConnected(0, 0, 4, 2));
+		assertTrue(index.isConnected(3, 0, 4, 2));
+		assertFalse(index.isConnected(0, 0, 2, 0));
+		assertEquals(ConnectivityIndex.NONE, index.label(2, 1));
+	}
+
+	@Test
+	public void testDiagonalGapConnects() {
+		// Moves may cut corners, so the two halves touch through the diagonal gap
+		ConnectivityIndex index = new ConnectivityIndex(TestGrids.grid(new String[] {
+			"..x..",
+			"..x..",
+			"xx.xx",
+			"..x..",
+		}));
+
+		assertTrue(index.isConnected(0, 0, 4, 3));
+	}
+
+	@Test
+	public void testBlockingSplitsAndFreeingJoins() {
+		ObstacleGrid grid = TestGrids.grid(new String[] {
+			"..x..",
+			"..x..",
+			".....",
+			"..x..",
+		});
+		ConnectivityIndex index = new ConnectivityIndex(grid);
+		assertTrue(index.isConnected(0, 0, 4, 0));
+
+		grid.setBlocked(2, 2, true);
+		index.cellChanged(2, 2);
+		assertFalse(index.isConnected(0, 0, 4, 0));
+		assertTrue(index.isConnected(0, 0, 0, 3));
+
+		grid.setBlocked(2, 2, false);
+		index.cellChanged(2, 2);
+		assertTrue(index.isConnected(0, 0, 4, 3));
+	}
+
+	@Test
+	public void testBlockingWithoutSplitDoesNotFlood() {
+		ObstacleGrid grid = new ObstacleGrid(6, 6);
+		ConnectivityIndex index = new ConnectivityIndex(grid);
+
+		grid.setBlocked(3, 3, true);
+		index.cellChanged(3, 3);
+		assertEquals(0, index.floods());
+		assertTrue(index.isConnected(0, 0, 5, 5));
+	}
+
+	@Test
+	public void testUpdatesMatchRebuild() {
+		Random random = new Random(7);
+		ObstacleGrid grid = new ObstacleGrid(12, 9);
+		ConnectivityIndex index = new ConnectivityIndex(grid);
+
+		for (int change = 0; change < 2000; change++) {
+			int x = random.nextInt(12);
+			int y = random.nextInt(9);
+			grid.setBlocked(x, y, random.nextInt(3) != 0);
+			index.cellChanged(x, y);
+
+			if (change % 50 == 0) {
+				ConnectivityIndex rebuilt = new ConnectivityIndex(grid);
+				for (int a = 0; a < 12 * 9; a++) {
+					int b = random.nextInt(12 * 9);
+					assertEquals(rebuilt.isConnected(a % 12, a / 12, b % 12, b / 12), index.isConnected(a % 12, a / 12, b % 12, b / 12));
+				}
+			}
+		}
+	}
+}
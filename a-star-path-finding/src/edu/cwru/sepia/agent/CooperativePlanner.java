@@ -0,0 +1,197 @@
+package edu.cwru.sepia.agent;
+
+/**
+ * Windowed Hierarchical Cooperative A* (WHCA*) for a squad of units on an 8-connected grid.
+ *
+ * Units are planned one after another. Each unit runs an A* search over (cell, time)
+ * states for a fixed window of time steps, where every step is a move to a neighbor or a
+ * wait in place, and then reserves the cells it will stand on in a shared reservation table.
+ * Units planned later treat those reservations as obstacles, so no two plans put units on
+ * the same cell at the same time or swap two units through each other. Units that are not
+ * planned yet are obstacles for the whole window, so every unit can at least keep standing
+ * where it is and a collision free plan always exists. Past the window the
+ * search is guided by the true distance to the goal from a flow field, which ignores the
+ * other units. The priority order rotates with every call so no unit is always planned last.
+ *
+ * See Silver, "Cooperative Pathfinding" (AIIDE 2005).
+ */
+class CooperativePlanner {
+
+	final int xExtent;
+	final int yExtent;
+	final int window;
+	final int maxUnits;
+
+	private final int cells;
+	private final ReservationTable reservations;
+
+	// Cells of the units that are not planned yet in the current call, marked with planCall
+	private final int[] pendingStamp;
+	private int planCall;
+
+	// Search arrays over (cell, time) states, indexed by time * cells + cell
+	private final int[] seen;
+	private final int[] parent;
+	private final IndexedMinHeap openList;
+	private int generation;
+
+	private int firstUnit;
+
+	/**
+	 * Allocates the search arrays and the reservation table
+	 *
+	 * @param xExtent Width of the map
+	 * @param yExtent Height of the map
+	 * @param window the number of time steps each unit plans ahead
+	 * @param maxUnits the largest squad that will be planned for
+	 */
+	public CooperativePlanner(int xExtent, int yExtent, int window, int maxUnits) {
+		this.xExtent = xExtent;
+		this.yExtent = yExtent;
+		this.window = window;
+		this.maxUnits = maxUnits;
+
+		cells = xExtent * yExtent;
+		reservations = new ReservationTable(maxUnits * (window + 1));
+		pendingStamp = new int[cells];
+		seen = new int[cells * (window + 1)];
+		parent = new int[cells * (window + 1)];
+		openList = new IndexedMinHeap(cells * (window + 1));
+	}
+
+	/**
+	 * Plans the next window of moves for every unit so that no two units collide
+	 *
+	 * @param starts the cell index of every unit, at most maxUnits of them
+	 * @param field distances to the goal, whose blocked cells are the static obstacles
+	 * @return for every unit, the cell it should stand on at each time step 0 to window
+	 */
+	public int[][] plan(int[] starts, FlowField field) {
+		reservations.clear();
+		planCall++;
+		for (int unit = 0; unit < starts.length; unit++) {
+			pendingStamp[starts[unit]] = planCall;
+		}
+
+		int[][] plans = new int[starts.length][];
+		for (int i = 0; i < starts.length; i++) {
+			int unit = (firstUnit + i) % starts.length;
+			pendingStamp[starts[unit]] = 0;
+			plans[unit] = planUnit(unit, starts[unit], field);
+		}
+		firstUnit = starts.length == 0 ? 0 : (firstUnit + 1) % starts.length;
+
+		return plans;
+	}
+
+	/**
+	 * @return the counters of the open list, which add up over plans until reset
+	 */
+	public SearchCounters counters() {
+		return openList.counters;
+	}
+
+	/**
+	 * Space-time A* for one unit. A search ends at the first state that either reaches the
+	 * end of the window or is a goal cell the unit can stay on until the end of the window.
+	 */
+	private int[] planUnit(int unit, int start, FlowField field) {
+		generation++;
+		openList.clear();
+
+		seen[start] = generation;
+		parent[start] = -1;
+		openList.insert(start, key(start, field));
+
+		int end = -1;
+		while (!openList.isEmpty()) {
+			int state = openList.poll();
+			int time = state / cells;
+			int cell = state - time * cells;
+
+			if (time == window || (heuristic(cell, field) == 0 && isFreeUntilEnd(cell, time + 1, unit))) {
+				end = state;
+				break;
+			}
+
+			// Waiting in place
+			if (isFree(cell, time + 1, unit)) {
+				open(state, cell, time + 1, field);
+			}
+
+			int x = cell % xExtent;
+			int y = cell / xExtent;
+			for (int free = field.neighborMask(x, y); free != 0; free &= free - 1) {
+				int direction = Integer.numberOfTrailingZeros(free);
+				int neighborX = x + GridSearch.DX[direction];
+				int neighborY = y + GridSearch.DY[direction];
+				int neighbor = neighborY * xExtent + neighborX;
+				if (pendingStamp[neighbor] == planCall || !isFree(neighbor, time + 1, unit)) {
+					continue;
+				}
+
+				// Two units may not swap cells in the same step
+				int other = reservations.owner(neighbor, time);
+				if (other != -1 && other != unit && reservations.owner(cell, time + 1) == other) {
+					continue;
+				}
+
+				open(state, neighbor, time + 1, field);
+			}
+		}
+
+		int[] plan = new int[window + 1];
+		// A unit that stopped early on a goal cell stays there for the rest of the window
+		int endTime = end / cells;
+		for (int time = window; time > endTime; time--) {
+			plan[time] = end - endTime * cells;
+		}
+		for (int state = end; state != -1; state = parent[state]) {
+			plan[state / cells] = state % cells;
+		}
+		for (int time = 0; time <= window; time++) {
+			reservations.reserve(plan[time], time, unit);
+		}
+
+		return plan;
+	}
+
+	private void open(int from, int cell, int time, FlowField field) {
+		int state = time * cells + cell;
+		if (seen[state] == generation) {
+			return;
+		}
+
+		// Every step takes one time step, so a state is first reached along a cheapest route
+		seen[state] = generation;
+		parent[state] = from;
+		openList.insert(state, key(state, field));
+	}
+
+	private boolean isFree(int cell, int time, int unit) {
+		int owner = reservations.owner(cell, time);
+		return owner == -1 || owner == unit;
+	}
+
+	private boolean isFreeUntilEnd(int cell, int time, int unit) {
+		for (; time <= window; time++) {
+			if (!isFree(cell, time, unit)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return f = time + distance to the goal, with ties broken toward later states
+	 */
+	private double key(int state, FlowField field) {
+		int time = state / cells;
+		return (time + heuristic(state - time * cells, field)) * (window + 1.0) + (window - time);
+	}
+
+	private int heuristic(int cell, FlowField field) {
+		int distance = field.distance(cell % xExtent, cell / xExtent);
+		return distance == FlowField.UNREACHABLE ? cells : distance;
+	}
+}
@@ -0,0 +1,58 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class CooperativePlannerTest {
+
+	/*
+	 * - - - - - - -
+	 * x x x x x x H
+	 *
+	 * Two units in a corridor, the second one right behind the first
+	 */
+	@Test
+	public void testCorridorWithoutCollisions() {
+		FlowField field = new FlowField(7, 2, 6, 1);
+		for (int x = 0; x < 6; x++) {
+			field.block(x, 1);
+		}
+		field.build();
+
+		CooperativePlanner planner = new CooperativePlanner(7, 2, 8, 2);
+		int[][] plans = planner.plan(new int[] {1, 0}, field);
+
+		for (int time = 0; time <= 8; time++) {
+			assertNotEquals(plans[0][time], plans[1][time]);
+			if (time > 0) {
+				assertFalse(plans[0][time] == plans[1][time - 1] && plans[1][time] == plans[0][time - 1]);
+			}
+		}
+
+		// Only one of the units fits on (5, 0), the cell next to the townhall
+		assertEquals(5, plans[0][8]);
+		assertEquals(4, plans[1][8]);
+	}
+
+	/*
+	 * - - - -
+	 * - - - H
+	 *
+	 * Two units facing each other must not swap cells
+	 */
+	@Test
+	public void testNoSwap() {
+		FlowField field = new FlowField(4, 2, 3, 1);
+		field.build();
+
+		CooperativePlanner planner = new CooperativePlanner(4, 2, 4, 2);
+		int[][] plans = planner.plan(new int[] {1, 2}, field);
+
+		for (int time = 1; time <= 4; time++) {
+			assertNotEquals(plans[0][time], plans[1][time]);
+			assertFalse(plans[0][time] == plans[1][time - 1] && plans[1][time] == plans[0][time - 1]);
+		}
+	}
+
+}
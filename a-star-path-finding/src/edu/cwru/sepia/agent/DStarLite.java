@@ -0,0 +1,246 @@
+package edu.cwru.sepia.agent;
+
+import java.util.Arrays;
+
+/**
+ * Incremental D* Lite planner for an 8-connected grid where every step costs 1.
+ *
+ * The search runs backwards from the goal, so the g-values it keeps are distances to the
+ * goal and stay valid while the unit walks along its path. When a cell becomes blocked or
+ * free only that cell and its neighbors are put back on the open list, and the next call to
+ * computeShortestPath() repairs the part of the search tree that the change affected
+ * instead of searching the whole map again.
+ *
+ * See Koenig and Likhachev, "D* Lite" (AAAI 2002). This is the optimized version of the
+ * algorithm with the lexicographic key [min(g, rhs) + h + km; min(g, rhs)] packed into a
+ * single double so the indexed heap can order it.
+ */
+class DStarLite {
+
+	private static final float INFINITY = Float.POSITIVE_INFINITY;
+
+	final int xExtent;
+	final int yExtent;
+	final int goalX;
+	final int goalY;
+
+	private final float[] g;
+	private final float[] rhs;
+	private final ObstacleGrid blocked;
+	private final IndexedMinHeap openList;
+
+	// Multiplier that keeps the second key component below one unit of the first
+	private final double keyScale;
+
+	private int startX;
+	private int startY;
+	private float km;
+
+	/**
+	 * Creates a planner for a fixed goal. Cells can be blocked before the first search.
+	 *
+	 * @param xExtent Width of the map
+	 * @param yExtent Height of the map
+	 * @param goalX X coordinate of the goal
+	 * @param goalY Y coordinate of the goal
+	 * @param startX X coordinate of the unit
+	 * @param startY Y coordinate of the unit
+	 */
+	public DStarLite(int xExtent, int yExtent, int goalX, int goalY, int startX, int startY) {
+		this.xExtent = xExtent;
+		this.yExtent = yExtent;
+		this.goalX = goalX;
+		this.goalY = goalY;
+		this.startX = startX;
+		this.startY = startY;
+
+		int size = xExtent * yExtent;
+		g = new float[size];
+		rhs = new float[size];
+		blocked = new ObstacleGrid(xExtent, yExtent);
+		openList = new IndexedMinHeap(size);
+		keyScale = Integer.highestOneBit(size) * 2.0;
+
+		Arrays.fill(g, INFINITY);
+		Arrays.fill(rhs, INFINITY);
+
+		int goal = goalY * xExtent + goalX;
+		rhs[goal] = 0;
+		openList.insert(goal, key(goal));
+	}
+
+	/**
+	 * @param x X coordinate of the cell
+	 * @param y Y coordinate of the cell
+	 * @return true if the cell is inside the map and not blocked
+	 */
+	public boolean isPassable(int x, int y) {
+		return blocked.isPassable(x, y);
+	}
+
+	/**
+	 * Marks a cell as blocked or free. Only the cell and its neighbors are queued for repair.
+	 *
+	 * @param x X coordinate of the cell
+	 * @param y Y coordinate of the cell
+	 * @param isBlocked the new state of the cell
+	 */
+	public void setBlocked(int x, int y, boolean isBlocked) {
+		if (!blocked.setBlocked(x, y, isBlocked)) {
+			return;
+		}
+
+		int cell = y * xExtent + x;
+		updateVertex(cell);
+		updateNeighbors(cell);
+	}
+
+	/**
+	 * Moves the unit the plan is made for. Existing g-values stay valid.
+	 *
+	 * @param x X coordinate of the unit
+	 * @param y Y coordinate of the unit
+	 */
+	public void moveStart(int x, int y) {
+		// The heuristic is measured from the unit, so keys queued before it moved are shifted by km
+		km += chebyshev(startX, startY, x, y);
+		startX = x;
+		startY = y;
+	}
+
+	/**
+	 * Repairs the search tree until the start's distance to the goal is known
+	 *
+	 * @return the number of cells that were expanded
+	 */
+	public int computeShortestPath() {
+		int start = startY * xExtent + startX;
+		int expanded = 0;
+
+		while (openList.peekKey() < key(start) || rhs[start] != g[start]) {
+			int u = openList.peek();
+			double oldKey = openList.key(u);
+			double newKey = key(u);
+			expanded++;
+
+			// The vertex is processed in place rather than polled, which is where the open list counts expansions
+			openList.counters.expanded();
+
+			if (oldKey < newKey) {
+				openList.update(u, newKey);
+			}
+			else if (g[u] > rhs[u]) {
+				g[u] = rhs[u];
+				openList.remove(u);
+				updateNeighbors(u);
+			}
+			else {
+				g[u] = INFINITY;
+				updateVertex(u);
+				updateNeighbors(u);
+			}
+		}
+
+		return expanded;
+	}
+
+	/**
+	 * @param cell a cell index
+	 * @return the best next cell on the way from cell to the goal, or -1 if there is none
+	 */
+	public int nextStep(int cell) {
+		int x = cell % xExtent;
+		int y = cell / xExtent;
+
+		int best = -1;
+		float bestCost = INFINITY;
+		for (int free = blocked.neighborMask(x, y); free != 0; free &= free - 1) {
+			int direction = Integer.numberOfTrailingZeros(free);
+			int neighborX = x + GridSearch.DX[direction];
+			int neighborY = y + GridSearch.DY[direction];
+			int neighbor = neighborY * xExtent + neighborX;
+			if (g[neighbor] < bestCost) {
+				bestCost = g[neighbor];
+				best = neighbor;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @param cell a cell index
+	 * @return the distance from the cell to the goal as of the last computeShortestPath()
+	 */
+	public float distance(int cell) {
+		return g[cell];
+	}
+
+	/**
+	 * @return the counters of the open list, which add up over replans until reset
+	 */
+	public SearchCounters counters() {
+		return openList.counters;
+	}
+
+	/**
+	 * Recomputes rhs for a cell and puts it on the open list if it is inconsistent
+	 */
+	private void updateVertex(int cell) {
+		int x = cell % xExtent;
+		int y = cell / xExtent;
+
+		if (x != goalX || y != goalY) {
+			float best = INFINITY;
+			if (isPassable(x, y)) {
+				for (int free = blocked.neighborMask(x, y); free != 0; free &= free - 1) {
+					int direction = Integer.numberOfTrailingZeros(free);
+					int neighborX = x + GridSearch.DX[direction];
+					int neighborY = y + GridSearch.DY[direction];
+					best = Math.min(best, g[neighborY * xExtent + neighborX] + 1);
+				}
+			}
+			rhs[cell] = best;
+		}
+
+		if (g[cell] != rhs[cell]) {
+			if (openList.contains(cell)) {
+				openList.update(cell, key(cell));
+			}
+			else {
+				openList.insert(cell, key(cell));
+			}
+		}
+		else {
+			openList.remove(cell);
+		}
+	}
+
+	private void updateNeighbors(int cell) {
+		int x = cell % xExtent;
+		int y = cell / xExtent;
+
+		for (int direction = 0; direction < 8; direction++) {
+			int neighborX = x + GridSearch.DX[direction];
+			int neighborY = y + GridSearch.DY[direction];
+			if (neighborX >= 0 && neighborY >= 0 && neighborX < xExtent && neighborY < yExtent) {
+				updateVertex(neighborY * xExtent + neighborX);
+			}
+		}
+	}
+
+	/**
+	 * @return the key [min(g, rhs) + h + km; min(g, rhs)] packed into one double
+	 */
+	private double key(int cell) {
+		float best = Math.min(g[cell], rhs[cell]);
+		if (best == INFINITY) {
+			return Double.POSITIVE_INFINITY;
+		}
+		float first = best + chebyshev(startX, startY, cell % xExtent, cell / xExtent) + km;
+		return first * keyScale + best;
+	}
+
+	private static int chebyshev(int x1, int y1, int x2, int y2) {
+		return Math.max(Math.abs(x1 - x2), Math.abs(y1 - y2));
+	}
+}
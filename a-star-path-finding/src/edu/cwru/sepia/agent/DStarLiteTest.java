@@ -0,0 +1,52 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class DStarLiteTest {
+
+	/*
+	 * F - - - -
+	 * x x x - x
+	 * H - - - -
+	 */
+	private static DStarLite examplePlanner() {
+		DStarLite planner = new DStarLite(5, 3, 0, 2, 0, 0);
+		planner.setBlocked(0, 1, true);
+		planner.setBlocked(1, 1, true);
+		planner.setBlocked(2, 1, true);
+		planner.setBlocked(4, 1, true);
+		return planner;
+	}
+
+	@Test
+	public void testExampleDistance() {
+		DStarLite planner = examplePlanner();
+		int expanded = planner.computeShortestPath();
+
+		assertEquals(6, planner.distance(0), 0);
+		assertEquals(1, planner.nextStep(0));
+		assertTrue(expanded > 0);
+		assertEquals(expanded, planner.counters().expanded);
+	}
+
+	@Test
+	public void testRepairAfterBlocking() {
+		DStarLite planner = examplePlanner();
+		planner.computeShortestPath();
+
+		// Walk two steps, then the only gap closes
+		planner.moveStart(2, 0);
+		planner.setBlocked(3, 1, true);
+		planner.computeShortestPath();
+		assertEquals(Float.POSITIVE_INFINITY, planner.distance(2), 0);
+
+		// Opening a gap right below the footman gives a shorter path than before
+		planner.setBlocked(2, 1, false);
+		planner.computeShortestPath();
+		assertEquals(3, planner.distance(2), 0);
+		assertEquals(7, planner.nextStep(2));
+	}
+
+}
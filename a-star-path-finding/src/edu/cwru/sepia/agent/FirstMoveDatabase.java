@@ -0,0 +1,336 @@
+package edu.cwru.sepia.agent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compressed path database: the first move of a shortest path from every cell to every
+ * other cell of one obstacle layout.
+ *
+ * The table has a row per target cell, built with a breadth first search from the target.
+ * Neighboring cells mostly head the same way, so each row is stored as runs of equal moves
+ * over the cell indices. Cells often have several equally short moves, and blocked cells are
+ * never moved from at all, so each run is grown for as long as one move is still right for
+ * every cell in it. A lookup is a binary search within one row, and a whole shortest path
+ * is read off one lookup per step without searching.
+ *
+ * Building takes a breadth first search per cell, which is meant for small and medium maps
+ * and is done offline by main() on the maps in data/. The database is only valid for the
+ * layout it was built on, which is recorded by its fingerprint.
+ *
+ * Usage: FirstMoveDatabase map.xml [database]
+ *
+ * The database is written next to the map with the extension .cpd unless a name is given.
+ */
+class FirstMoveDatabase {
+
+	// Move stored for the target itself and for cells that can't reach it, next to the 8 directions of GridSearch
+	static final int NO_MOVE = 8;
+
+	// Each run is packed as its first source cell followed by the move in the low bits
+	private static final int MOVE_BITS = 4;
+	private static final int MOVE_MASK = (1 << MOVE_BITS) - 1;
+
+	// Set of moves that are right for a cell, one bit per move
+	private static final int ANY_MOVE = (1 << (NO_MOVE + 1)) - 1;
+
+	// Marks the start of the file format, followed by its version
+	private static final int MAGIC = 0x43504442;
+	private static final int FORMAT_VERSION = 1;
+
+	final int xExtent;
+	final int yExtent;
+	final long fingerprint;
+
+	// Runs of target t are runs[rowStart[t]] up to runs[rowStart[t + 1]]
+	private final int[] rowStart;
+	private final int[] runs;
+
+	private FirstMoveDatabase(int xExtent, int yExtent, long fingerprint, int[] rowStart, int[] runs) {
+		this.xExtent = xExtent;
+		this.yExtent = yExtent;
+		this.fingerprint = fingerprint;
+		this.rowStart = rowStart;
+		this.runs = runs;
+	}
+
+	/**
+	 * Computes the first moves from every cell to every cell of a layout
+	 *
+	 * @param obstacles the layout
+	 * @return the database
+	 */
+	public static FirstMoveDatabase build(ObstacleGrid obstacles) {
+		int xExtent = obstacles.xExtent;
+		int size = xExtent * obstacles.yExtent;
+		if ((long) size << MOVE_BITS > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Map is too large for a first move database");
+		}
+
+		int[] distance = new int[size];
+		int[] queue = new int[size];
+		int[] moves = new int[size];
+		int[] rowStart = new int[size + 1];
+		int[] runs = new int[size];
+		int runCount = 0;
+
+		for (int target = 0; target < size; target++) {
+			rowStart[target] = runCount;
+			breadthFirst(obstacles, target, distance, queue);
+			for (int source = 0; source < size; source++) {
+				moves[source] = shortestMoves(obstacles, source, distance);
+			}
+
+			// Each run goes on while some move is right for all of its cells, which gives the fewest runs
+			int source = 0;
+			while (source < size) {
+				int common = moves[source];
+				int end = source + 1;
+				while (end < size && (common & moves[end]) != 0) {
+					common &= moves[end];
+					end++;
+				}
+
+				if (runCount == runs.length) {
+					runs = Arrays.copyOf(runs, runs.length * 2);
+				}
+				runs[runCount++] = (source << MOVE_BITS) | Integer.numberOfTrailingZeros(common);
+				source = end;
+			}
+		}
+		rowStart[size] = runCount;
+
+		return new FirstMoveDatabase(xExtent, obstacles.yExtent, obstacles.fingerprint(), rowStart, Arrays.copyOf(runs, runCount));
+	}
+
+	/**
+	 * @param obstacles the current layout
+	 * @return true if the database was built for this layout
+	 */
+	public boolean fits(ObstacleGrid obstacles) {
+		return obstacles.fits(xExtent, yExtent) && obstacles.fingerprint() == fingerprint;
+	}
+
+	/**
+	 * @param source the cell index to move from
+	 * @param target the cell index to reach
+	 * @return the direction of the first move of a shortest path as an index into GridSearch.DX
+	 * and DY, or NO_MOVE if the source is the target or can't reach it. The move from a
+	 * blocked source is undefined.
+	 */
+	public int firstMove(int source, int target) {
+		// The run holding the source is the last one that starts at or before it
+		int low = rowStart[target];
+		int high = rowStart[target + 1] - 1;
+		int key = (source << MOVE_BITS) | MOVE_MASK;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (runs[middle] <= key) {
+				low = middle;
+			}
+			else {
+				high = middle - 1;
+			}
+		}
+		return runs[low] & MOVE_MASK;
+	}
+
+	/**
+	 * Follows the first moves from the start until the next one would enter the goal
+	 *
+	 * @param start the cell index of the start
+	 * @param goal the cell index of the goal
+	 * @return the cell indices walked, without the start and the goal, or null if the goal
+	 * can't be reached
+	 */
+	public int[] path(int start, int goal) {
+		int[] cells = new int[16];
+		int length = 0;
+
+		int cell = start;
+		while (true) {
+			int move = firstMove(cell, goal);
+			if (move == NO_MOVE) {
+				return null;
+			}
+			cell += GridSearch.DY[move] * xExtent + GridSearch.DX[move];
+			if (cell == goal) {
+				return Arrays.copyOf(cells, length);
+			}
+			if (length == xExtent * yExtent) {
+				// Only a database that does not match its fingerprint can lead in circles
+				return null;
+			}
+			if (length == cells.length) {
+				cells = Arrays.copyOf(cells, length * 2);
+			}
+			cells[length++] = cell;
+		}
+	}
+
+	/**
+	 * @return the number of runs stored over all rows
+	 */
+	public int runCount() {
+		return runs.length;
+	}
+
+	/**
+	 * Writes the database to a file
+	 *
+	 * @param file the file to write
+	 * @throws IOException if the file can't be written
+	 */
+	public void write(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(xExtent);
+			out.writeInt(yExtent);
+			out.writeLong(fingerprint);
+			out.writeInt(runs.length);
+			for (int start : rowStart) {
+				out.writeInt(start);
+			}
+			for (int run : runs) {
+				out.writeInt(run);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads a database written by write()
+	 *
+	 * @param file the file to read
+	 * @return the database
+	 * @throws IOException if the file can't be read or does not hold a database
+	 */
+	public static FirstMoveDatabase read(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+				throw new IOException(file + " is not a first move database or has an unsupported version");
+			}
+
+			int xExtent = in.readInt();
+			int yExtent = in.readInt();
+			long fingerprint = in.readLong();
+			int runCount = in.readInt();
+			if (xExtent <= 0 || yExtent <= 0 || (long) xExtent * yExtent << MOVE_BITS > Integer.MAX_VALUE || runCount < 0) {
+				throw new IOException("Corrupt first move database " + file);
+			}
+
+			int[] rowStart = new int[xExtent * yExtent + 1];
+			for (int i = 0; i < rowStart.length; i++) {
+				rowStart[i] = in.readInt();
+				if (rowStart[i] < (i == 0 ? 0 : rowStart[i - 1]) || rowStart[i] > runCount || (i < rowStart.length - 1 && rowStart[i] == runCount)) {
+					throw new IOException("Corrupt first move database " + file);
+				}
+			}
+			int[] runs = new int[runCount];
+			for (int i = 0; i < runCount; i++) {
+				runs[i] = in.readInt();
+				if ((runs[i] & MOVE_MASK) > NO_MOVE) {
+					throw new IOException("Corrupt first move database " + file);
+				}
+			}
+			return new FirstMoveDatabase(xExtent, yExtent, fingerprint, rowStart, runs);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Builds the database of a map and writes it to a file
+	 *
+	 * @param args the map file and optionally the database file
+	 * @throws IOException if the map can't be read or the database can't be written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: FirstMoveDatabase map.xml [database]");
+			return;
+		}
+
+		File mapFile = new File(args[0]);
+		File databaseFile = args.length > 1 ? new File(args[1]) : new File(mapFile.getPath().replaceFirst("\\.xml$", "") + ".cpd");
+		GridMap map = GridMap.load(mapFile);
+
+		long startTime = System.nanoTime();
+		FirstMoveDatabase database = build(map.obstacles);
+		long buildTime = System.nanoTime() - startTime;
+		database.write(databaseFile);
+
+		int size = database.xExtent * database.yExtent;
+		System.out.println("Built " + databaseFile + " in " + buildTime / 1e9 + "s: " + database.runCount() + " runs for "
+				+ (long) size * size + " cell pairs, " + databaseFile.length() + " bytes");
+	}
+
+	/**
+	 * Fills a table with the number of steps from every cell to a target
+	 */
+	private static void breadthFirst(ObstacleGrid obstacles, int target, int[] distance, int[] queue) {
+		Arrays.fill(distance, -1);
+		int xExtent = obstacles.xExtent;
+		if (!obstacles.isPassable(target % xExtent, target / xExtent)) {
+			return;
+		}
+
+		distance[target] = 0;
+		queue[0] = target;
+		int tail = 1;
+		for (int head = 0; head < tail; head++) {
+			int cell = queue[head];
+			int x = cell % xExtent;
+			int y = cell / xExtent;
+
+			for (int free = obstacles.neighborMask(x, y); free != 0; free &= free - 1) {
+				int direction = Integer.numberOfTrailingZeros(free);
+				int neighborX = x + GridSearch.DX[direction];
+				int neighborY = y + GridSearch.DY[direction];
+				int neighbor = neighborY * xExtent + neighborX;
+				if (distance[neighbor] == -1) {
+					distance[neighbor] = distance[cell] + 1;
+					queue[tail++] = neighbor;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the set of moves from the source to a neighbor one step closer to the target,
+	 * NO_MOVE if there is none, or every move if the source is blocked
+	 */
+	private static int shortestMoves(ObstacleGrid obstacles, int source, int[] distance) {
+		int xExtent = obstacles.xExtent;
+		int x = source % xExtent;
+		int y = source / xExtent;
+		if (!obstacles.isPassable(x, y)) {
+			return ANY_MOVE;
+		}
+		if (distance[source] <= 0) {
+			return 1 << NO_MOVE;
+		}
+
+		int moves = 0;
+		for (int free = obstacles.neighborMask(x, y); free != 0; free &= free - 1) {
+			int direction = Integer.numberOfTrailingZeros(free);
+			int neighborX = x + GridSearch.DX[direction];
+			int neighborY = y + GridSearch.DY[direction];
+			if (distance[neighborY * xExtent + neighborX] == distance[source] - 1) {
+				moves |= 1 << direction;
+			}
+		}
+		return moves;
+	}
+}
@@ -0,0 +1,98 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class FirstMoveDatabaseTest {
+
+	private static final String[] MAZE = {
+		"....x.....",
+		".xx.x.xxx.",
+		".x..x...x.",
+		".x.xxxx.x.",
+		".x......x.",
+		".xxxxxxxx.",
+		"..........",
+	};
+
+	@Test
+	public void testPathsAreShortest() {
+		ObstacleGrid grid = TestGrids.grid(MAZE);
+		FirstMoveDatabase database = FirstMoveDatabase.build(grid);
+		GridSearch search = new GridSearch(grid);
+
+		for (int start = 0; start < 70; start++) {
+			for (int goal = 0; goal < 70; goal++) {
+				if (start == goal || !grid.isPassable(start % 10, start / 10) || !grid.isPassable(goal % 10, goal / 10)) {
+					continue;
+				}
+
+				search.beginSearch();
+				int reached = search.search(start % 10, start / 10, goal % 10, goal / 10);
+				int[] cells = database.path(start, goal);
+				if (reached == -1) {
+					assertNull(cells);
+					continue;
+				}
+
+				int length = 0;
+				for (int cell = reached; search.parent(cell) != -1; cell = search.parent(cell)) {
+					length++;
+				}
+				assertEquals(length - 1, cells.length);
+
+				int previous = start;
+				for (int cell : cells) {
+					assertTrue(grid.isPassable(cell % 10, cell / 10));
+					assertTrue(Math.abs(cell % 10 - previous % 10) <= 1 && Math.abs(cell / 10 - previous / 10) <= 1);
+					previous = cell;
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testRowsAreCompressed() {
+		FirstMoveDatabase database = FirstMoveDatabase.build(new ObstacleGrid(20, 20));
+
+		// Far fewer runs than the 400 * 400 cell pairs
+		assertTrue(database.runCount() < 400 * 400 / 10);
+		assertEquals(FirstMoveDatabase.NO_MOVE, database.firstMove(21, 21));
+		assertEquals(0, database.firstMove(20, 25));
+	}
+
+	@Test
+	public void testNoMoveToBlockedTarget() {
+		ObstacleGrid grid = TestGrids.grid(MAZE);
+		FirstMoveDatabase database = FirstMoveDatabase.build(grid);
+
+		assertEquals(FirstMoveDatabase.NO_MOVE, database.firstMove(0, 4));
+		assertEquals(FirstMoveDatabase.NO_MOVE, database.firstMove(0, 0));
+		assertNull(database.path(0, 4));
+	}
+
+	@Test
+	public void testWriteAndRead() throws IOException {
+		ObstacleGrid grid = TestGrids.grid(MAZE);
+		FirstMoveDatabase database = FirstMoveDatabase.build(grid);
+
+		File file = File.createTempFile("maze", ".cpd");
+		try {
+			database.write(file);
+			FirstMoveDatabase copy = FirstMoveDatabase.read(file);
+
+			assertTrue(copy.fits(grid));
+			assertEquals(database.runCount(), copy.runCount());
+			assertArrayEquals(database.path(0, 69), copy.path(0, 69));
+		} finally {
+			file.delete();
+		}
+
+		grid.setBlocked(0, 0, true);
+		assertFalse(database.fits(grid));
+	}
+}
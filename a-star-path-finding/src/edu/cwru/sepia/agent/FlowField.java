@@ -0,0 +1,301 @@
+package edu.cwru.sepia.agent;
+
+import java.util.Arrays;
+
+/**
+ * Distance field to a single goal on an 8-connected grid where every step costs 1.
+ *
+ * Every free cell stores how many steps it is from a cell next to the goal, computed once
+ * with a breadth first search that starts from all of the goal's free neighbors at once.
+ * The next step from any cell is then the neighbor with the smallest distance, which is a
+ * constant time lookup. When a cell is blocked or freed only the cells whose distance
+ * depended on it are recomputed.
+ */
+class FlowField {
+
+	static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	final int xExtent;
+	final int yExtent;
+	final int goalX;
+	final int goalY;
+
+	private final int[] distance;
+	private final ObstacleGrid blocked;
+
+	// Scratch space for building and repairing, allocated once
+	private final int[] queue;
+	private final boolean[] invalid;
+	private final IndexedMinHeap repairList;
+
+	/**
+	 * Creates a field for an empty map. Block the obstacles and then call build().
+	 *
+	 * @param xExtent Width of the map
+	 * @param yExtent Height of the map
+	 * @param goalX X coordinate of the goal, which is itself never entered
+	 * @param goalY Y coordinate of the goal
+	 */
+	public FlowField(int xExtent, int yExtent, int goalX, int goalY) {
+		this.xExtent = xExtent;
+		this.yExtent = yExtent;
+		this.goalX = goalX;
+		this.goalY = goalY;
+
+		int size = xExtent * yExtent;
+		distance = new int[size];
+		blocked = new ObstacleGrid(xExtent, yExtent);
+		queue = new int[size];
+		invalid = new boolean[size];
+		repairList = new IndexedMinHeap(size);
+
+		blocked.setBlocked(goalX, goalY, true);
+	}
+
+	/**
+	 * Marks a cell as an obstacle without updating the field
+	 *
+	 * @param x X coordinate of the cell
+	 * @param y Y coordinate of the cell
+	 */
+	public void block(int x, int y) {
+		blocked.setBlocked(x, y, true);
+	}
+
+	/**
+	 * Computes the distance of every cell with a multi-source breadth first search
+	 */
+	public void build() {
+		Arrays.fill(distance, UNREACHABLE);
+
+		int tail = 0;
+		for (int free = blocked.neighborMask(goalX, goalY); free != 0; free &= free - 1) {
+			int direction = Integer.numberOfTrailingZeros(free);
+			int x = goalX + GridSearch.DX[direction];
+			int y = goalY + GridSearch.DY[direction];
+			distance[y * xExtent + x] = 0;
+			queue[tail++] = y * xExtent + x;
+		}
+
+		for (int head = 0; head < tail; head++) {
+			int cell = queue[head];
+			int x = cell % xExtent;
+			int y = cell / xExtent;
+
+			for (int free = blocked.neighborMask(x, y); free != 0; free &= free - 1) {
+				int direction = Integer.numberOfTrailingZeros(free);
+				int neighborX = x + GridSearch.DX[direction];
+				int neighborY = y + GridSearch.DY[direction];
+				int neighbor = neighborY * xExtent + neighborX;
+				if (distance[neighbor] == UNREACHABLE) {
+					distance[neighbor] = distance[cell] + 1;
+					queue[tail++] = neighbor;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param x X coordinate of the cell
+	 * @param y Y coordinate of the cell
+	 * @return true if the cell is inside the map and not blocked
+	 */
+	public boolean isPassable(int x, int y) {
+		return blocked.isPassable(x, y);
+	}
+
+	/**
+	 * @param x X coordinate of a cell inside the map
+	 * @param y Y coordinate of a cell inside the map
+	 * @return the mask of neighbors that are not blocked, as ObstacleGrid.neighborMask() gives it
+	 */
+	public int neighborMask(int x, int y) {
+		return blocked.neighborMask(x, y);
+	}
+
+	/**
+	 * @param x X coordinate of the cell
+	 * @param y Y coordinate of the cell
+	 * @return the number of steps from the cell to a cell next to the goal, or UNREACHABLE
+	 */
+	public int distance(int x, int y) {
+		return distance[y * xExtent + x];
+	}
+
+	/**
+	 * @param x X coordinate of the unit
+	 * @param y Y coordinate of the unit
+	 * @return the cell index of the next step toward the goal, or -1 if the unit is already
+	 * next to the goal or cannot reach it
+	 */
+	public int nextStep(int x, int y) {
+		int best = -1;
+		int bestDistance = distance[y * xExtent + x];
+		for (int free = blocked.neighborMask(x, y); free != 0; free &= free - 1) {
+			int direction = Integer.numberOfTrailingZeros(free);
+			int neighborX = x + GridSearch.DX[direction];
+			int neighborY = y + GridSearch.DY[direction];
+			int neighbor = neighborY * xExtent + neighborX;
+			if (distance[neighbor] < bestDistance) {
+				bestDistance = distance[neighbor];
+				best = neighbor;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Marks a cell as blocked or free and repairs the distances that depended on it
+	 *
+	 * @param x X coordinate of the cell
+	 * @param y Y coordinate of the cell
+	 * @param isBlocked the new state of the cell
+	 */
+	public void setBlocked(int x, int y, boolean isBlocked) {
+		if (x < 0 || y < 0 || x >= xExtent || y >= yExtent || (x == goalX && y == goalY) || isPassable(x, y) != isBlocked) {
+			return;
+		}
+
+		int cell = y * xExtent + x;
+		if (isBlocked) {
+			blocked.setBlocked(x, y, true);
+			raise(cell);
+		}
+		else {
+			blocked.setBlocked(x, y, false);
+			distance[cell] = UNREACHABLE;
+			invalid[cell] = true;
+			queue[0] = cell;
+			lower(1);
+		}
+	}
+
+	/**
+	 * @return the counters of the repair list, which add up over repairs until reset
+	 */
+	public SearchCounters counters() {
+		return repairList.counters;
+	}
+
+	/**
+	 * Invalidates the cell and every cell whose shortest route ran only through invalidated
+	 * cells, then recomputes them from the still valid cells around them
+	 */
+	private void raise(int cell) {
+		if (distance[cell] == UNREACHABLE) {
+			return;
+		}
+
+		int tail = 0;
+		queue[tail++] = cell;
+		invalid[cell] = true;
+
+		// Cells are popped level by level, so every cell one step closer has already been decided
+		for (int head = 0; head < tail; head++) {
+			int current = queue[head];
+			if (current != cell && hasSupport(current)) {
+				invalid[current] = false;
+				continue;
+			}
+
+			int level = distance[current];
+			distance[current] = UNREACHABLE;
+			int x = current % xExtent;
+			int y = current / xExtent;
+			for (int free = blocked.neighborMask(x, y); free != 0; free &= free - 1) {
+				int direction = Integer.numberOfTrailingZeros(free);
+				int neighborX = x + GridSearch.DX[direction];
+				int neighborY = y + GridSearch.DY[direction];
+				int neighbor = neighborY * xExtent + neighborX;
+				if (!invalid[neighbor] && distance[neighbor] == level + 1) {
+					invalid[neighbor] = true;
+					queue[tail++] = neighbor;
+				}
+			}
+		}
+
+		// The blocked cell itself stays unreachable
+		invalid[cell] = false;
+		int count = 0;
+		for (int i = 1; i < tail; i++) {
+			if (invalid[queue[i]]) {
+				queue[count++] = queue[i];
+			}
+		}
+		lower(count);
+	}
+
+	/**
+	 * @return true if a valid neighbor is exactly one step closer to the goal
+	 */
+	private boolean hasSupport(int cell) {
+		int x = cell % xExtent;
+		int y = cell / xExtent;
+		for (int free = blocked.neighborMask(x, y); free != 0; free &= free - 1) {
+			int direction = Integer.numberOfTrailingZeros(free);
+			int neighborX = x + GridSearch.DX[direction];
+			int neighborY = y + GridSearch.DY[direction];
+			int neighbor = neighborY * xExtent + neighborX;
+			if (!invalid[neighbor] && distance[neighbor] == distance[cell] - 1) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Seeds the first count cells of the queue, which are all marked invalid, from their valid
+	 * neighbors and then lowers distances outward with Dijkstra's algorithm
+	 */
+	private void lower(int count) {
+		repairList.clear();
+		for (int i = 0; i < count; i++) {
+			int cell = queue[i];
+			invalid[cell] = false;
+
+			int best = isGoalNeighbor(cell) ? 0 : UNREACHABLE;
+			int x = cell % xExtent;
+			int y = cell / xExtent;
+			for (int free = blocked.neighborMask(x, y); free != 0; free &= free - 1) {
+				int direction = Integer.numberOfTrailingZeros(free);
+				int neighborX = x + GridSearch.DX[direction];
+				int neighborY = y + GridSearch.DY[direction];
+				int neighborDistance = distance[neighborY * xExtent + neighborX];
+				if (neighborDistance != UNREACHABLE && neighborDistance + 1 < best) {
+					best = neighborDistance + 1;
+				}
+			}
+
+			distance[cell] = best;
+			if (best != UNREACHABLE) {
+				repairList.insert(cell, best);
+			}
+		}
+
+		while (!repairList.isEmpty()) {
+			int cell = repairList.poll();
+			int x = cell % xExtent;
+			int y = cell / xExtent;
+
+			for (int free = blocked.neighborMask(x, y); free != 0; free &= free - 1) {
+				int direction = Integer.numberOfTrailingZeros(free);
+				int neighborX = x + GridSearch.DX[direction];
+				int neighborY = y + GridSearch.DY[direction];
+				int neighbor = neighborY * xExtent + neighborX;
+				if (distance[cell] + 1 < distance[neighbor]) {
+					distance[neighbor] = distance[cell] + 1;
+					if (repairList.contains(neighbor)) {
+						repairList.decreaseKey(neighbor, distance[neighbor]);
+					}
+					else {
+						repairList.insert(neighbor, distance[neighbor]);
+					}
+				}
+			}
+		}
+	}
+
+	private boolean isGoalNeighbor(int cell) {
+		return Math.max(Math.abs(cell % xExtent - goalX), Math.abs(cell / xExtent - goalY)) == 1;
+	}
+}
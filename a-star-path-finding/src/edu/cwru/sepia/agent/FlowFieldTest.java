@@ -0,0 +1,49 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class FlowFieldTest {
+
+	/*
+	 * F - - - -
+	 * x x x - x
+	 * H - - - -
+	 */
+	private static FlowField exampleField() {
+		FlowField field = new FlowField(5, 3, 0, 2);
+		field.block(0, 1);
+		field.block(1, 1);
+		field.block(2, 1);
+		field.block(4, 1);
+		field.build();
+		return field;
+	}
+
+	@Test
+	public void testExampleDistances() {
+		FlowField field = exampleField();
+
+		// (1, 2) is next to the townhall, the footman is five steps from it
+		assertEquals(0, field.distance(1, 2));
+		assertEquals(5, field.distance(0, 0));
+		assertEquals(1, field.nextStep(0, 0));
+		assertEquals(-1, field.nextStep(1, 2));
+	}
+
+	@Test
+	public void testRepair() {
+		FlowField field = exampleField();
+
+		field.setBlocked(3, 1, true);
+		assertEquals(FlowField.UNREACHABLE, field.distance(0, 0));
+		assertEquals(-1, field.nextStep(0, 0));
+
+		field.setBlocked(2, 1, false);
+		assertEquals(3, field.distance(0, 0));
+		assertEquals(1, field.nextStep(0, 0));
+		assertEquals(3, field.distance(4, 0));
+	}
+
+}
@@ -0,0 +1,374 @@
+package edu.cwru.sepia.agent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * The parts of a map that path search needs, without the SEPIA engine: the obstacle grid,
+ * where the footman starts, where the townhall stands and where the enemy footman is.
+ *
+ * Maps are either read from a SEPIA state file such as data/maze_8x8.xml or generated at
+ * random, which gives benchmarks and offline tools the same inputs the agent sees in game.
+ *
+ * A state file is read with a streaming parser that only keeps the positions of the units
+ * and resource nodes, and the result is cached next to it in a binary file with the
+ * extension .grid. The cache holds the positions and the padded rows of the obstacle grid as
+ * they are laid out in memory, so later loads map it and copy the rows in one go, however
+ * verbose the XML is. A cache is only used while the state file has the length and
+ * modification time it was made from.
+ */
+class GridMap {
+
+	// "SGRD" and the layout of the cache files
+	private static final int MAGIC = 0x53475244;
+	private static final int FORMAT_VERSION = 1;
+	private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 8 * 4;
+
+	final String name;
+	final ObstacleGrid obstacles;
+	final int footmanX;
+	final int footmanY;
+	final int townhallX;
+	final int townhallY;
+
+	// -1 when the map has no enemy footman
+	final int enemyX;
+	final int enemyY;
+
+	GridMap(String name, ObstacleGrid obstacles, int footmanX, int footmanY, int townhallX, int townhallY, int enemyX, int enemyY) {
+		this.name = name;
+		this.obstacles = obstacles;
+		this.footmanX = footmanX;
+		this.footmanY = footmanY;
+		this.townhallX = townhallX;
+		this.townhallY = townhallY;
+		this.enemyX = enemyX;
+		this.enemyY = enemyY;
+	}
+
+	/**
+	 * @return true if the map has an enemy footman
+	 */
+	public boolean hasEnemy() {
+		return enemyX != -1;
+	}
+
+	/**
+	 * Reads a SEPIA state file from its cache, or parses it and writes the cache when there is
+	 * no cache made from the file as it is now. A cache that can't be written is skipped.
+	 *
+	 * @param file a map such as data/maze_16x16h.xml
+	 * @return the map
+	 * @throws IOException if the file can't be read or is missing the footman or townhall
+	 */
+	public static GridMap load(File file) throws IOException {
+		File cache = cacheFile(file);
+		if (cache.isFile()) {
+			GridMap map = readCache(cache, file);
+			if (map != null) {
+				return map;
+			}
+		}
+
+		GridMap map = parse(file);
+		try {
+			writeCache(map, cache, file);
+		} catch (IOException e) {
+			System.err.println("Could not write the map cache " + cache + ": " + e.getMessage());
+		}
+		return map;
+	}
+
+	/**
+	 * Reads a SEPIA state file. Resource nodes become obstacles, the first footman of player 0
+	 * is the start and the townhall and footman of the other player are the goal and the enemy.
+	 *
+	 * @param file a map such as data/maze_16x16h.xml
+	 * @return the map
+	 * @throws IOException if the file can't be read or is missing the footman or townhall
+	 */
+	public static GridMap parse(File file) throws IOException {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			XMLStreamReader reader = factory.createXMLStreamReader(in);
+
+			ObstacleGrid obstacles = null;
+			int[] footman = null;
+			int[] townhall = null;
+			int[] enemy = null;
+
+			// The player, unit, template or resource node being read, and the fields read of it so far
+			int depth = 0;
+			String element = null;
+			int elementDepth = -1;
+			boolean isAgent = false;
+			int id = -1;
+			int x = -1;
+			int y = -1;
+			int templateId = -1;
+			String templateName = null;
+
+			// Units only name their template, and template IDs are per player
+			Map<Integer, String> templateNames = new HashMap<Integer, String>();
+			List<int[]> units = new ArrayList<int[]>();
+
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					depth++;
+					String tag = reader.getLocalName();
+					if (depth == 1) {
+						obstacles = new ObstacleGrid(intAttribute(reader, "xExtent", file), intAttribute(reader, "yExtent", file));
+					}
+					else if (depth == 2 && (tag.equals("player") || tag.equals("resourceNode"))
+							|| depth == 3 && (tag.equals("unit") || tag.equals("template")) && "player".equals(element)) {
+						if (tag.equals("player")) {
+							templateNames.clear();
+							units.clear();
+							isAgent = false;
+						}
+						element = tag;
+						elementDepth = depth;
+						x = -1;
+						y = -1;
+						templateId = -1;
+						templateName = null;
+					}
+					else if (depth == elementDepth + 1 && (tag.equals("ID") || tag.equals("xPosition") || tag.equals("yPosition")
+							|| tag.equals("templateID") || tag.equals("name"))) {
+						// Reading the text moves past the end of the element
+						String text = reader.getElementText().trim();
+						depth--;
+						if (tag.equals("name")) {
+							templateName = text.toLowerCase();
+							continue;
+						}
+
+						int value = intValue(text, tag, file);
+						if (tag.equals("ID")) {
+							id = value;
+							isAgent = element.equals("player") ? value == 0 : isAgent;
+						}
+						else if (tag.equals("xPosition")) {
+							x = value;
+						}
+						else if (tag.equals("yPosition")) {
+							y = value;
+						}
+						else {
+							templateId = value;
+						}
+					}
+				}
+				else if (event == XMLStreamConstants.END_ELEMENT) {
+					if (depth == elementDepth) {
+						if ((element.equals("resourceNode") || element.equals("unit")) && (x < 0 || y < 0)) {
+							throw new IOException("Missing <xPosition> or <yPosition> in <" + element + "> of " + file);
+						}
+						if (element.equals("resourceNode")) {
+							obstacles.setBlocked(x, y, true);
+						}
+						else if (element.equals("unit")) {
+							units.add(new int[] {templateId, x, y});
+						}
+						else if (element.equals("template")) {
+							templateNames.put(id, templateName);
+						}
+						else {
+							for (int[] unit : units) {
+								String type = templateNames.get(unit[0]);
+								int[] position = {unit[1], unit[2]};
+								if (isAgent && footman == null && "footman".equals(type)) {
+									footman = position;
+								}
+								else if (!isAgent && townhall == null && "townhall".equals(type)) {
+									townhall = position;
+								}
+								else if (!isAgent && enemy == null && "footman".equals(type)) {
+									enemy = position;
+								}
+							}
+						}
+
+						// Units and templates go back to reading their player
+						element = elementDepth == 3 ? "player" : null;
+						elementDepth = elementDepth == 3 ? 2 : -1;
+					}
+					depth--;
+				}
+			}
+
+			if (footman == null || townhall == null) {
+				throw new IOException("Map " + file + " needs a footman for player 0 and a townhall for another player");
+			}
+			return new GridMap(file.getName(), obstacles, footman[0], footman[1], townhall[0], townhall[1],
+					enemy == null ? -1 : enemy[0], enemy == null ? -1 : enemy[1]);
+		} catch (XMLStreamException e) {
+			throw new IOException("Malformed map " + file, e);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @param file a SEPIA state file
+	 * @return the file its cache is kept in, next to it
+	 */
+	static File cacheFile(File file) {
+		return new File(file.getPath().replaceFirst("\\.xml$", "") + ".grid");
+	}
+
+	/**
+	 * Writes the cache of a map
+	 *
+	 * @param map the map parsed from the source
+	 * @param cache the file to write
+	 * @param source the state file the map was parsed from
+	 * @throws IOException if the cache can't be written
+	 */
+	static void writeCache(GridMap map, File cache, File source) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cache)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeLong(source.length());
+			out.writeLong(source.lastModified());
+			out.writeInt(map.obstacles.xExtent);
+			out.writeInt(map.obstacles.yExtent);
+			out.writeInt(map.footmanX);
+			out.writeInt(map.footmanY);
+			out.writeInt(map.townhallX);
+			out.writeInt(map.townhallY);
+			out.writeInt(map.enemyX);
+			out.writeInt(map.enemyY);
+			for (long word : map.obstacles.rows) {
+				out.writeLong(word);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Maps a cache into memory and reads the map out of it
+	 *
+	 * @param cache the file to read
+	 * @param source the state file the cache should have been made from
+	 * @return the map, or null if the cache is of another version, was made from an earlier
+	 * state of the source or is cut short
+	 * @throws IOException if the cache can't be read
+	 */
+	static GridMap readCache(File cache, File source) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(cache, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			if (channel.size() < HEADER_BYTES) {
+				return null;
+			}
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION || buffer.getLong() != source.length()
+					|| buffer.getLong() != source.lastModified()) {
+				return null;
+			}
+
+			int xExtent = buffer.getInt();
+			int yExtent = buffer.getInt();
+			if (xExtent <= 0 || yExtent <= 0) {
+				return null;
+			}
+			ObstacleGrid obstacles = new ObstacleGrid(xExtent, yExtent);
+			int[] positions = new int[6];
+			for (int i = 0; i < positions.length; i++) {
+				positions[i] = buffer.getInt();
+			}
+			if (buffer.remaining() != 8L * obstacles.rows.length) {
+				return null;
+			}
+			obstacles.readRows(buffer.asLongBuffer());
+
+			return new GridMap(source.getName(), obstacles, positions[0], positions[1], positions[2], positions[3], positions[4], positions[5]);
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Generates a map with randomly placed obstacles, the footman near the top left corner and
+	 * the townhall near the bottom right corner. Layouts are drawn until the townhall can be
+	 * reached, so the result is always solvable.
+	 *
+	 * @param xExtent Width of the map
+	 * @param yExtent Height of the map
+	 * @param density the fraction of cells that hold an obstacle, below about 0.4
+	 * @param seed the seed of the layout
+	 * @return the map
+	 */
+	public static GridMap generate(int xExtent, int yExtent, double density, long seed) {
+		Random random = new Random(seed);
+		int footmanX = xExtent / 8;
+		int footmanY = yExtent / 8;
+		int townhallX = xExtent - 1 - xExtent / 8;
+		int townhallY = yExtent - 1 - yExtent / 8;
+
+		while (true) {
+			ObstacleGrid obstacles = new ObstacleGrid(xExtent, yExtent);
+			for (int y = 0; y < yExtent; y++) {
+				for (int x = 0; x < xExtent; x++) {
+					if (random.nextDouble() < density) {
+						obstacles.setBlocked(x, y, true);
+					}
+				}
+			}
+			obstacles.setBlocked(footmanX, footmanY, false);
+			obstacles.setBlocked(townhallX, townhallY, false);
+
+			FlowField field = new FlowField(xExtent, yExtent, townhallX, townhallY);
+			for (int cell : obstacles.blockedCells()) {
+				field.block(cell % xExtent, cell / xExtent);
+			}
+			field.build();
+			if (field.distance(footmanX, footmanY) != FlowField.UNREACHABLE) {
+				String name = "random_" + xExtent + "x" + yExtent + "_" + Math.round(density * 100);
+				return new GridMap(name, obstacles, footmanX, footmanY, townhallX, townhallY, -1, -1);
+			}
+		}
+	}
+
+	private static int intAttribute(XMLStreamReader reader, String name, File file) throws IOException {
+		String value = reader.getAttributeValue(null, name);
+		if (value == null) {
+			throw new IOException("Missing " + name + " attribute in <" + reader.getLocalName() + "> of " + file);
+		}
+		return intValue(value, name, file);
+	}
+
+	private static int intValue(String text, String tag, File file) throws IOException {
+		try {
+			return Integer.parseInt(text.trim());
+		} catch (NumberFormatException e) {
+			throw new IOException("Expected a number in <" + tag + "> of " + file, e);
+		}
+	}
+}
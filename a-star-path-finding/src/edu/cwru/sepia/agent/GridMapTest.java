@@ -0,0 +1,91 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class GridMapTest {
+
+	// A 4x3 map with two trees, the footman at (0, 1), the townhall at (3, 2) and the enemy at (2, 0)
+	private static final String[] STATE = {
+		"<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>",
+		"<state xExtent=\"4\" yExtent=\"3\">",
+		"  <player>",
+		"    <ID>0</ID>",
+		"    <unit><ID>0</ID><xPosition>0</xPosition><yPosition>1</yPosition><templateID>7</templateID></unit>",
+		"    <template><ID>3</ID><name>Barracks</name></template>",
+		"    <template><ID>7</ID><name>Footman</name></template>",
+		"  </player>",
+		"  <player>",
+		"    <ID>1</ID>",
+		"    <template><ID>7</ID><name>TownHall</name></template>",
+		"    <template><ID>3</ID><name>Footman</name></template>",
+		"    <unit><ID>1</ID><xPosition>2</xPosition><yPosition>0</yPosition><templateID>3</templateID></unit>",
+		"    <unit><ID>2</ID><xPosition>3</xPosition><yPosition>2</yPosition><templateID>7</templateID></unit>",
+		"  </player>",
+		"  <resourceNode><ID>4</ID><xPosition>1</xPosition><yPosition>1</yPosition><type>TREE</type></resourceNode>",
+		"  <resourceNode><ID>5</ID><xPosition>2</xPosition><yPosition>2</yPosition><type>TREE</type></resourceNode>",
+		"</state>"
+	};
+
+	@Test
+	public void testParse() throws IOException {
+		File file = File.createTempFile("state", ".xml");
+		try {
+			Files.write(file.toPath(), Arrays.asList(STATE), StandardCharsets.UTF_8);
+			GridMap map = GridMap.parse(file);
+
+			assertTrue(map.obstacles.fits(4, 3));
+			assertArrayEquals(new int[] {5, 10}, map.obstacles.blockedCells());
+			assertEquals(Arrays.asList(0, 1, 3, 2, 2, 0),
+					Arrays.asList(map.footmanX, map.footmanY, map.townhallX, map.townhallY, map.enemyX, map.enemyY));
+
+			Files.write(file.toPath(), Arrays.asList(STATE).subList(0, 4), StandardCharsets.UTF_8);
+			try {
+				GridMap.parse(file);
+				fail("Parsed a map that is cut short");
+			} catch (IOException e) {
+				assertTrue(e.getMessage().contains(file.getName()));
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testCache() throws IOException {
+		File file = File.createTempFile("state", ".xml");
+		File cache = GridMap.cacheFile(file);
+		try {
+			Files.write(file.toPath(), Arrays.asList(STATE), StandardCharsets.UTF_8);
+			GridMap parsed = GridMap.load(file);
+			assertTrue(cache.isFile());
+
+			GridMap cached = GridMap.readCache(cache, file);
+			assertNotNull(cached);
+			assertEquals(parsed.obstacles.fingerprint(), cached.obstacles.fingerprint());
+			assertArrayEquals(parsed.obstacles.blockedCells(), cached.obstacles.blockedCells());
+			assertEquals(Arrays.asList(0, 1, 3, 2, 2, 0),
+					Arrays.asList(cached.footmanX, cached.footmanY, cached.townhallX, cached.townhallY, cached.enemyX, cached.enemyY));
+			assertFalse(cached.obstacles.isPassable(-1, 0));
+			assertTrue(cached.obstacles.isPassable(0, 0));
+
+			// Moving the townhall changes the length of the file, which makes the cache stale
+			Files.write(file.toPath(), Arrays.asList(String.join("\n", STATE).replace("<xPosition>3</xPosition>", "<xPosition> 1 </xPosition>")),
+					StandardCharsets.UTF_8);
+			assertNull(GridMap.readCache(cache, file));
+			GridMap reparsed = GridMap.load(file);
+			assertEquals(1, reparsed.townhallX);
+			assertEquals(1, GridMap.readCache(cache, file).townhallX);
+		} finally {
+			file.delete();
+			cache.delete();
+		}
+	}
+}
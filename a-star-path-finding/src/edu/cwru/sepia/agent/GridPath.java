@@ -0,0 +1,111 @@
+package edu.cwru.sepia.agent;
+
+import java.util.Arrays;
+
+/**
+ * A planned path as cell indices, walked from the front with a cursor.
+ *
+ * Next to the cells the path keeps a bitmap of the cells it has not walked yet, so asking
+ * whether a cell is still ahead takes one bit test instead of a scan. The bitmap only spans
+ * the cell indices between the smallest and the largest cell of the path. A path may stand
+ * on the same cell more than once, e.g. to wait, and the cell stays ahead until its last visit.
+ */
+class GridPath {
+
+	private final int[] cells;
+	private int cursor;
+
+	// Cells not walked yet, one bit per cell index from offset on
+	private final int offset;
+	private final long[] remaining;
+
+	// Positions in cells whose cell is not visited again later in the path
+	private final long[] lastVisit;
+
+	/**
+	 * @param cells the cell indices of the path in the order they are walked
+	 */
+	public GridPath(int[] cells) {
+		this(cells, 0, cells.length);
+	}
+
+	/**
+	 * @param cells cell indices in the order they are walked
+	 * @param from the position of the first cell of the path
+	 * @param to the position after the last cell of the path
+	 */
+	public GridPath(int[] cells, int from, int to) {
+		this.cells = Arrays.copyOfRange(cells, from, to);
+
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		for (int cell : this.cells) {
+			min = Math.min(min, cell);
+			max = Math.max(max, cell);
+		}
+		offset = this.cells.length == 0 ? 0 : min;
+		remaining = new long[this.cells.length == 0 ? 0 : ((max - min) >>> 6) + 1];
+		lastVisit = new long[(this.cells.length + 63) >>> 6];
+
+		// Walking backwards, the first time a cell is seen is its last visit
+		for (int i = this.cells.length - 1; i >= 0; i--) {
+			int bit = this.cells[i] - offset;
+			if ((remaining[bit >>> 6] & (1L << bit)) == 0) {
+				remaining[bit >>> 6] |= 1L << bit;
+				lastVisit[i >>> 6] |= 1L << i;
+			}
+		}
+	}
+
+	/**
+	 * @return true if every cell of the path has been walked
+	 */
+	public boolean isEmpty() {
+		return cursor == cells.length;
+	}
+
+	/**
+	 * @return the number of cells not walked yet
+	 */
+	public int size() {
+		return cells.length - cursor;
+	}
+
+	/**
+	 * @return the next cell of the path, without walking it
+	 */
+	public int peek() {
+		return cells[cursor];
+	}
+
+	/**
+	 * Walks the next cell of the path
+	 *
+	 * @return the cell index
+	 */
+	public int next() {
+		int cell = cells[cursor];
+		if ((lastVisit[cursor >>> 6] & (1L << cursor)) != 0) {
+			int bit = cell - offset;
+			remaining[bit >>> 6] &= ~(1L << bit);
+		}
+		cursor++;
+		return cell;
+	}
+
+	/**
+	 * @param cell a cell index
+	 * @return true if the path still has to walk the cell
+	 */
+	public boolean contains(int cell) {
+		int bit = cell - offset;
+		return bit >= 0 && (bit >>> 6) < remaining.length && (remaining[bit >>> 6] & (1L << bit)) != 0;
+	}
+
+	/**
+	 * @return the cell indices not walked yet, in the order they are walked
+	 */
+	public int[] cells() {
+		return Arrays.copyOfRange(cells, cursor, cells.length);
+	}
+}
@@ -0,0 +1,59 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class GridPathTest {
+
+	@Test
+	public void testWalksInOrder() {
+		GridPath path = new GridPath(new int[] {11, 12, 23});
+
+		assertEquals(3, path.size());
+		assertEquals(11, path.peek());
+		assertEquals(11, path.next());
+		assertEquals(12, path.next());
+		assertArrayEquals(new int[] {23}, path.cells());
+		assertEquals(23, path.next());
+		assertTrue(path.isEmpty());
+	}
+
+	@Test
+	public void testContainsOnlyCellsAhead() {
+		GridPath path = new GridPath(new int[] {200, 5, 70, 130});
+
+		assertTrue(path.contains(5));
+		assertTrue(path.contains(200));
+		assertFalse(path.contains(6));
+		assertFalse(path.contains(4));
+		assertFalse(path.contains(201));
+
+		path.next();
+		assertFalse(path.contains(200));
+		assertTrue(path.contains(130));
+	}
+
+	@Test
+	public void testWaitKeepsCellAhead() {
+		GridPath path = new GridPath(new int[] {3, 4, 4, 5});
+
+		path.next();
+		path.next();
+		assertTrue(path.contains(4));
+		path.next();
+		assertFalse(path.contains(4));
+		assertTrue(path.contains(5));
+	}
+
+	@Test
+	public void testRange() {
+		GridPath path = new GridPath(new int[] {1, 2, 3, 4}, 1, 3);
+
+		assertArrayEquals(new int[] {2, 3}, path.cells());
+		assertFalse(path.contains(1));
+		assertFalse(path.contains(4));
+		assertTrue(new GridPath(new int[0]).isEmpty());
+		assertFalse(new GridPath(new int[0]).contains(0));
+	}
+}
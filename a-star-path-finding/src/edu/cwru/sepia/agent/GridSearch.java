@@ -0,0 +1,288 @@
+package edu.cwru.sepia.agent;
+
+import java.util.Arrays;
+
+/**
+ * Allocation free A* core for an 8-connected grid where every step costs 1.
+ *
+ * Every per-cell value (g-cost, f-cost, parent and state) lives in a primitive array
+ * indexed by the cell index y * xExtent + x. The arrays are sized once for the map and
+ * reused by every search: instead of clearing them, each search bumps a generation
+ * counter and a cell's values are only trusted when its state was written during the
+ * current generation.
+ *
+ * The static obstacles come from an ObstacleGrid that is shared between searches. Usage is
+ * beginSearch(), block() for every other impassable cell such as a unit in the way, then
+ * search(). The path can then be read back through parent() starting from the goal.
+ */
+class GridSearch {
+
+	// Cell states, stored in the low bits of state[] next to the generation
+	static final int UNSEEN = 0;
+	static final int OPEN = 1;
+	static final int CLOSED = 2;
+	static final int BLOCKED = 3;
+
+	private static final int STATE_BITS = 2;
+	private static final int STATE_MASK = (1 << STATE_BITS) - 1;
+	private static final int MAX_GENERATION = Integer.MAX_VALUE >>> STATE_BITS;
+
+	// Neighbor offsets of the 8-connected grid
+	static final int[] DX = {1, 1, 0, -1, -1, -1, 0, 1};
+	static final int[] DY = {0, 1, 1, 1, 0, -1, -1, -1};
+
+	final int xExtent;
+	final int yExtent;
+	final ObstacleGrid obstacles;
+
+	final float[] gCost;
+	final float[] fCost;
+	final int[] parent;
+	final int[] state;
+	final IndexedMinHeap openSet;
+
+	int generation;
+	int goalX;
+	int goalY;
+
+	// Landmark tables that tighten the Chebyshev heuristic, or null to use Chebyshev alone
+	LandmarkHeuristic landmarks;
+
+	/**
+	 * Allocates the search arrays for a map without static obstacles
+	 *
+	 * @param xExtent Width of the map
+	 * @param yExtent Height of the map
+	 */
+	public GridSearch(int xExtent, int yExtent) {
+		this(new ObstacleGrid(xExtent, yExtent));
+	}
+
+	/**
+	 * Allocates the search arrays for the map of an obstacle grid
+	 *
+	 * @param obstacles the static obstacles, read by every search
+	 */
+	public GridSearch(ObstacleGrid obstacles) {
+		this.obstacles = obstacles;
+		this.xExtent = obstacles.xExtent;
+		this.yExtent = obstacles.yExtent;
+
+		int size = xExtent * yExtent;
+		gCost = new float[size];
+		fCost = new float[size];
+		parent = new int[size];
+		state = new int[size];
+		openSet = new IndexedMinHeap(size);
+	}
+
+	/**
+	 * Starts a new search. Every cell becomes unseen and the cells blocked for the last search
+	 * are freed, without touching the arrays.
+	 */
+	public void beginSearch() {
+		openSet.clear();
+		generation++;
+
+		// Only once the generation wraps around are the stale states actually wiped
+		if (generation > MAX_GENERATION) {
+			Arrays.fill(state, 0);
+			generation = 1;
+		}
+	}
+
+	/**
+	 * Marks a cell as impassable for the current search. Out of bounds cells are ignored.
+	 *
+	 * @param x X coordinate of the cell
+	 * @param y Y coordinate of the cell
+	 */
+	public void block(int x, int y) {
+		if (x >= 0 && y >= 0 && x < xExtent && y < yExtent) {
+			setState(y * xExtent + x, BLOCKED);
+		}
+	}
+
+	/**
+	 * Sets the landmark tables used by later searches. They must be admissible on the
+	 * obstacle grid, see LandmarkHeuristic.isAdmissible().
+	 *
+	 * @param landmarks the tables, or null to go back to the Chebyshev distance alone
+	 */
+	public void setLandmarks(LandmarkHeuristic landmarks) {
+		this.landmarks = landmarks;
+	}
+
+	/**
+	 * Runs A* from start to goal using the Chebyshev distance as the heuristic, or the
+	 * landmark bound where that is larger
+	 *
+	 * @param startX X coordinate of the start
+	 * @param startY Y coordinate of the start
+	 * @param goalX X coordinate of the goal
+	 * @param goalY Y coordinate of the goal
+	 * @return the cell index of the goal if it was reached, -1 otherwise
+	 */
+	public int search(int startX, int startY, int goalX, int goalY) {
+		this.goalX = goalX;
+		this.goalY = goalY;
+
+		int start = startY * xExtent + startX;
+		int goal = goalY * xExtent + goalX;
+		gCost[start] = 0;
+		parent[start] = -1;
+		open(start, 0);
+
+		while (!openSet.isEmpty()) {
+			int current = openSet.poll();
+			if (current == goal) {
+				return goal;
+			}
+
+			setState(current, CLOSED);
+			expand(current);
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Generates the successors of a cell and relaxes each of them
+	 *
+	 * @param cell the cell being expanded
+	 */
+	void expand(int cell) {
+		int x = cell % xExtent;
+		int y = cell / xExtent;
+
+		for (int free = obstacles.neighborMask(x, y); free != 0; free &= free - 1) {
+			int direction = Integer.numberOfTrailingZeros(free);
+			int neighborX = x + DX[direction];
+			int neighborY = y + DY[direction];
+			relax(cell, neighborY * xExtent + neighborX, gCost[cell] + 1);
+		}
+	}
+
+	/**
+	 * Records a path to a cell if it is better than the best one known this generation
+	 *
+	 * @param from the cell the path comes from
+	 * @param cell the cell being reached
+	 * @param cost the cost of the path to the cell through from
+	 */
+	final void relax(int from, int cell, float cost) {
+		int cellState = state(cell);
+		if (cellState == UNSEEN) {
+			gCost[cell] = cost;
+			parent[cell] = from;
+			open(cell, cost);
+		}
+		else if (cellState == OPEN && cost < gCost[cell]) {
+			gCost[cell] = cost;
+			parent[cell] = from;
+			fCost[cell] = cost + heuristic(cell);
+			openSet.decreaseKey(cell, fCost[cell]);
+		}
+	}
+
+	/**
+	 * @param cell a cell index
+	 * @return the Chebyshev distance from the cell to the goal of the current search, or the
+	 * landmark bound if there are landmarks and it is larger
+	 */
+	final float heuristic(int cell) {
+		int xDistance = Math.abs(cell % xExtent - goalX);
+		int yDistance = Math.abs(cell / xExtent - goalY);
+		int distance = xDistance > yDistance ? xDistance : yDistance;
+
+		if (landmarks != null) {
+			int bound = landmarks.lowerBound(cell, goalY * xExtent + goalX);
+			if (bound > distance) {
+				return bound;
+			}
+		}
+		return distance;
+	}
+
+	/**
+	 * @param cell a cell reached by the last search
+	 * @return the cell it was reached from, or -1 for the start
+	 */
+	public int parent(int cell) {
+		return parent[cell];
+	}
+
+	/**
+	 * Walks back from the goal of the last search to its start. A JPS parent can be several
+	 * steps away, but always along a straight or diagonal run of free cells.
+	 *
+	 * @param goal the cell index the last search returned
+	 * @return the cell indices in the order they are walked, without the start and the goal,
+	 * or null if the goal is the start
+	 */
+	public int[] path(int goal) {
+		if (parent[goal] == -1) {
+			return null;
+		}
+
+		int length = 0;
+		for (int cell = goal; parent[cell] != -1; cell = parent[cell]) {
+			int from = parent[cell];
+			length += Math.max(Math.abs(cell % xExtent - from % xExtent), Math.abs(cell / xExtent - from / xExtent));
+		}
+
+		// Filled from the back, the step into the goal is left out
+		int[] cells = new int[length - 1];
+		int index = length - 1;
+		for (int cell = goal; parent[cell] != -1; cell = parent[cell]) {
+			int x = cell % xExtent;
+			int y = cell / xExtent;
+			int parentX = parent[cell] % xExtent;
+			int parentY = parent[cell] / xExtent;
+			while (x != parentX || y != parentY) {
+				if (index < length - 1) {
+					cells[index] = y * xExtent + x;
+				}
+				index--;
+				x += Integer.signum(parentX - x);
+				y += Integer.signum(parentY - y);
+			}
+		}
+		return cells;
+	}
+
+	/**
+	 * @param cell a cell index
+	 * @return the state of the cell in the current generation
+	 */
+	final int state(int cell) {
+		int value = state[cell];
+		return (value >>> STATE_BITS) == generation ? value & STATE_MASK : UNSEEN;
+	}
+
+	/**
+	 * @param x X coordinate of the cell
+	 * @param y Y coordinate of the cell
+	 * @return true if the cell is inside the map, holds no obstacle and was not blocked in this generation
+	 */
+	final boolean isPassable(int x, int y) {
+		return obstacles.isPassable(x, y) && state(y * xExtent + x) != BLOCKED;
+	}
+
+	/**
+	 * @return the counters of the open set, which add up over searches until reset
+	 */
+	public SearchCounters counters() {
+		return openSet.counters;
+	}
+
+	final void open(int cell, float cost) {
+		fCost[cell] = cost + heuristic(cell);
+		setState(cell, OPEN);
+		openSet.insert(cell, fCost[cell]);
+	}
+
+	final void setState(int cell, int cellState) {
+		state[cell] = (generation << STATE_BITS) | cellState;
+	}
+}
@@ -0,0 +1,74 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class GridSearchTest {
+
+	/*
+	 * F - - - -
+	 * x x x - x
+	 * H - - - -
+	 */
+	private static final String[] EXAMPLE = {
+		"F....",
+		"xxx.x",
+		"H....",
+	};
+
+	private static GridSearch blockedSearch(String[] rows) {
+		GridSearch search = new GridSearch(rows[0].length(), rows.length);
+		search.beginSearch();
+		for (int cell : TestGrids.grid(rows).blockedCells()) {
+			search.block(cell % rows[0].length(), cell / rows[0].length());
+		}
+		return search;
+	}
+
+	private static int pathLength(GridSearch search, int goal) {
+		int length = 0;
+		for (int cell = goal; search.parent(cell) != -1; cell = search.parent(cell)) {
+			length++;
+		}
+		return length;
+	}
+
+	@Test
+	public void testExamplePath() {
+		GridSearch search = blockedSearch(EXAMPLE);
+		int goal = search.search(0, 0, 0, 2);
+
+		assertEquals(10, goal);
+		assertEquals(6, pathLength(search, goal));
+		assertEquals(8, search.parent(search.parent(search.parent(goal))));
+	}
+
+	@Test
+	public void testUnreachableGoal() {
+		GridSearch search = blockedSearch(new String[] {
+			"F.x..",
+			"..x..",
+			"xxx.H",
+		});
+
+		assertEquals(-1, search.search(0, 0, 4, 2));
+	}
+
+	@Test
+	public void testReuseAcrossSearches() {
+		GridSearch search = blockedSearch(new String[] {
+			"F.x..",
+			"..x..",
+			"xxx.H",
+		});
+		assertEquals(-1, search.search(0, 0, 4, 2));
+
+		// The walls from the previous generation must not leak into this one
+		search.beginSearch();
+		int goal = search.search(0, 0, 4, 2);
+		assertEquals(14, goal);
+		assertEquals(4, pathLength(search, goal));
+	}
+
+}
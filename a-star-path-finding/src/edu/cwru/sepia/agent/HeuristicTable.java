@@ -0,0 +1,146 @@
+package edu.cwru.sepia.agent;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Heuristic values learned by real-time search, one per cell, for one goal on one obstacle
+ * layout.
+ *
+ * A learned value only ever raises the Chebyshev distance, and it is only valid for the goal
+ * and the layout it was learned on: freeing an obstacle can make the true distance shorter
+ * than what was learned. The table remembers both and is wiped when either changes. It can
+ * be written to and read from a stream, so what one run learned speeds up the next run on
+ * the same map.
+ */
+class HeuristicTable {
+
+	// Marks the start of the stream format, followed by its version
+	private static final int MAGIC = 0x48544142;
+	private static final int FORMAT_VERSION = 1;
+
+	private int xExtent;
+	private int yExtent;
+	private int goal = -1;
+	private long fingerprint;
+	private float[] values = new float[0];
+
+	/**
+	 * @param obstacles the current layout
+	 * @param goal the cell index of the current goal
+	 * @return true if the values were learned for this goal on this layout
+	 */
+	public boolean matches(ObstacleGrid obstacles, int goal) {
+		return this.goal == goal && obstacles.fits(xExtent, yExtent) && fingerprint == obstacles.fingerprint();
+	}
+
+	/**
+	 * Forgets every value and starts learning for a new goal or layout
+	 *
+	 * @param obstacles the current layout
+	 * @param goal the cell index of the current goal
+	 */
+	public void reset(ObstacleGrid obstacles, int goal) {
+		int size = obstacles.xExtent * obstacles.yExtent;
+		if (values.length == size) {
+			Arrays.fill(values, 0);
+		}
+		else {
+			values = new float[size];
+		}
+		xExtent = obstacles.xExtent;
+		yExtent = obstacles.yExtent;
+		fingerprint = obstacles.fingerprint();
+		this.goal = goal;
+	}
+
+	/**
+	 * @param cell a cell index
+	 * @return the learned value of the cell, or 0 if nothing was learned for it
+	 */
+	public float get(int cell) {
+		return values[cell];
+	}
+
+	/**
+	 * @param cell a cell index
+	 * @param value the new learned value of the cell
+	 */
+	public void set(int cell, float value) {
+		values[cell] = value;
+	}
+
+	/**
+	 * @return the number of cells with a learned value
+	 */
+	public int learnedCount() {
+		int count = 0;
+		for (float value : values) {
+			if (value != 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Writes the goal, the layout and every learned value. Cells without one are skipped.
+	 *
+	 * @param out the stream to write to
+	 * @throws IOException if the stream fails
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		out.writeInt(xExtent);
+		out.writeInt(yExtent);
+		out.writeInt(goal);
+		out.writeLong(fingerprint);
+
+		out.writeInt(learnedCount());
+		for (int cell = 0; cell < values.length; cell++) {
+			if (values[cell] != 0) {
+				out.writeInt(cell);
+				out.writeFloat(values[cell]);
+			}
+		}
+	}
+
+	/**
+	 * Replaces the contents of the table with the ones written by write()
+	 *
+	 * @param in the stream to read from
+	 * @throws IOException if the stream fails or does not hold a heuristic table
+	 */
+	public void read(DataInput in) throws IOException {
+		if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+			throw new IOException("Not a heuristic table or an unsupported version");
+		}
+
+		int xExtent = in.readInt();
+		int yExtent = in.readInt();
+		int goal = in.readInt();
+		long fingerprint = in.readLong();
+		int count = in.readInt();
+		if (xExtent < 0 || yExtent < 0 || count < 0 || (long) xExtent * yExtent > Integer.MAX_VALUE) {
+			throw new IOException("Corrupt heuristic table");
+		}
+
+		float[] values = new float[xExtent * yExtent];
+		for (int i = 0; i < count; i++) {
+			int cell = in.readInt();
+			if (cell < 0 || cell >= values.length) {
+				throw new IOException("Corrupt heuristic table");
+			}
+			values[cell] = in.readFloat();
+		}
+
+		this.xExtent = xExtent;
+		this.yExtent = yExtent;
+		this.goal = goal;
+		this.fingerprint = fingerprint;
+		this.values = values;
+	}
+}
@@ -0,0 +1,601 @@
+package edu.cwru.sepia.agent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * HPA* style abstraction of an 8-connected grid where every step costs 1.
+ *
+ * The map is cut into square clusters. Wherever free cells face each other across the
+ * border of two clusters an entrance is placed, and the cells on either side of it become
+ * abstract nodes. Within a cluster the distances between its nodes are precomputed, so a
+ * path query first searches the small graph of entrances and then refines each abstract
+ * edge into cells with a search that never leaves a single cluster.
+ *
+ * Paths are near optimal rather than optimal: they are forced through the chosen entrance
+ * cells. When a cell changes only the clusters that contain or border it are rebuilt.
+ *
+ * Every cluster has room for as many abstract nodes as it has border cells, and node i of
+ * cluster c has the id c * maxNodes + i, so the abstract search keeps its costs and parents
+ * in arrays indexed by id that are reused by every query, the same way GridSearch does.
+ *
+ * See Botea, Muller and Schaeffer, "Near Optimal Hierarchical Path-Finding" (2004).
+ */
+class HierarchicalGrid {
+
+	// Entrances at least this long get a transition at both ends instead of one in the middle
+	private static final int LONG_ENTRANCE = 6;
+
+	// Bounds of the cluster size picked for a map by defaultClusterSize
+	private static final int MIN_CLUSTER_SIZE = 8;
+	private static final int MAX_CLUSTER_SIZE = 32;
+
+	final int xExtent;
+	final int yExtent;
+	final int clusterSize;
+	final int clustersX;
+	final int clustersY;
+
+	// Room for abstract nodes per cluster, and the ids of the start and goal of a query after all of them
+	private final int maxNodes;
+	private final int startId;
+	private final int goalId;
+
+	private final ObstacleGrid blocked;
+
+	// Per cluster: abstract node cells, the cells they connect to in other clusters, and
+	// the nodes x nodes table of distances inside the cluster (-1 when unreachable)
+	private final int[][] clusterNodes;
+	private final int[][][] clusterPartners;
+	private final int[][] clusterDistances;
+
+	// Per cell: its index among the nodes of its cluster, or -1 when it is not a node
+	private final int[] nodeIndex;
+
+	// Abstract search state by node id, valid where seen[] holds the current generation
+	private final int[] cost;
+	private final int[] parent;
+	private final int[] seen;
+	private final IndexedMinHeap openList;
+	private int generation;
+
+	// Distances from the start to the nodes of its cluster and from the goal's cluster's nodes to the goal
+	private final int[] startDistances;
+	private final int[] goalDistances;
+
+	// Scratch space for searches that stay inside one cluster
+	private final int[] localDistance;
+	private final int[] localParent;
+	private final int[] localQueue;
+
+	// Work of the searches over the abstract nodes and of the searches inside clusters that answer a
+	// query, shared with the open list which counts the abstract nodes
+	private final SearchCounters counters;
+
+	/**
+	 * Creates an abstraction of an empty map. Block the obstacles and then call build().
+	 *
+	 * @param xExtent Width of the map
+	 * @param yExtent Height of the map
+	 * @param clusterSize Width and height of a cluster in cells
+	 */
+	public HierarchicalGrid(int xExtent, int yExtent, int clusterSize) {
+		this.xExtent = xExtent;
+		this.yExtent = yExtent;
+		this.clusterSize = clusterSize;
+		this.clustersX = (xExtent + clusterSize - 1) / clusterSize;
+		this.clustersY = (yExtent + clusterSize - 1) / clusterSize;
+
+		blocked = new ObstacleGrid(xExtent, yExtent);
+		clusterNodes = new int[clustersX * clustersY][];
+		clusterPartners = new int[clustersX * clustersY][][];
+		clusterDistances = new int[clustersX * clustersY][];
+		nodeIndex = new int[xExtent * yExtent];
+		Arrays.fill(nodeIndex, -1);
+
+		// A node is a cell on the border of its cluster
+		maxNodes = clusterSize <= 2 ? clusterSize * clusterSize : 4 * clusterSize - 4;
+		startId = clustersX * clustersY * maxNodes;
+		goalId = startId + 1;
+		cost = new int[goalId + 1];
+		parent = new int[goalId + 1];
+		seen = new int[goalId + 1];
+		openList = new IndexedMinHeap(goalId + 1);
+		counters = openList.counters;
+		startDistances = new int[maxNodes];
+		goalDistances = new int[maxNodes];
+
+		localDistance = new int[clusterSize * clusterSize];
+		localParent = new int[clusterSize * clusterSize];
+		localQueue = new int[clusterSize * clusterSize];
+	}
+
+	/**
+	 * Picks a cluster size for a map, close to the square root of its larger side, so the
+	 * abstract graph and the searches inside one cluster both stay small as the map grows
+	 *
+	 * @param xExtent Width of the map
+	 * @param yExtent Height of the map
+	 * @return the width and height of a cluster in cells
+	 */
+	public static int defaultClusterSize(int xExtent, int yExtent) {
+		int size = (int) Math.round(Math.sqrt(Math.max(xExtent, yExtent)));
+		return Math.max(MIN_CLUSTER_SIZE, Math.min(MAX_CLUSTER_SIZE, size));
+	}
+
+	/**
+	 * Marks a cell as an obstacle without updating the abstraction
+	 *
+	 * @param x X coordinate of the cell
+	 * @param y Y coordinate of the cell
+	 */
+	public void block(int x, int y) {
+		blocked.setBlocked(x, y, true);
+	}
+
+	/**
+	 * Builds the entrances and distance tables of every cluster
+	 */
+	public void build() {
+		for (int cluster = 0; cluster < clusterNodes.length; cluster++) {
+			buildCluster(cluster);
+		}
+	}
+
+	/**
+	 * Marks a cell as blocked or free and rebuilds the clusters it can affect
+	 *
+	 * @param x X coordinate of the cell
+	 * @param y Y coordinate of the cell
+	 * @param isBlocked the new state of the cell
+	 */
+	public void setBlocked(int x, int y, boolean isBlocked) {
+		if (!blocked.setBlocked(x, y, isBlocked)) {
+			return;
+		}
+
+		// The cell's own cluster, plus any neighbor whose shared border the cell lies on
+		int clusterX = x / clusterSize;
+		int clusterY = y / clusterSize;
+		for (int dy = -1; dy <= 1; dy++) {
+			for (int dx = -1; dx <= 1; dx++) {
+				int neighborX = clusterX + dx;
+				int neighborY = clusterY + dy;
+				if (neighborX < 0 || neighborY < 0 || neighborX >= clustersX || neighborY >= clustersY) {
+					continue;
+				}
+				boolean onBorderX = dx == 0 || (dx < 0 ? x % clusterSize == 0 : x % clusterSize == clusterSize - 1);
+				boolean onBorderY = dy == 0 || (dy < 0 ? y % clusterSize == 0 : y % clusterSize == clusterSize - 1);
+				if (onBorderX && onBorderY) {
+					buildCluster(neighborY * clustersX + neighborX);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param x X coordinate of the cell
+	 * @param y Y coordinate of the cell
+	 * @return true if the cell is inside the map and not blocked
+	 */
+	public boolean isPassable(int x, int y) {
+		return blocked.isPassable(x, y);
+	}
+
+	/**
+	 * @return the number of abstract nodes over all clusters
+	 */
+	public int nodeCount() {
+		int count = 0;
+		for (int[] nodes : clusterNodes) {
+			count += nodes == null ? 0 : nodes.length;
+		}
+		return count;
+	}
+
+	/**
+	 * Finds a path by searching the abstract graph and refining it into cells
+	 *
+	 * @param startX X coordinate of the start
+	 * @param startY Y coordinate of the start
+	 * @param goalX X coordinate of the goal
+	 * @param goalY Y coordinate of the goal
+	 * @return the cells of the path from the first step up to and including the goal,
+	 * or null if the abstract graph has no path
+	 */
+	public int[] findPath(int startX, int startY, int goalX, int goalY) {
+		int start = startY * xExtent + startX;
+		int goal = goalY * xExtent + goalX;
+		if (start == goal) {
+			return new int[0];
+		}
+
+		int startCluster = clusterOf(start);
+		int goalCluster = clusterOf(goal);
+
+		// Temporary edges from the start to its cluster's nodes and from the goal's cluster's nodes to the goal
+		int[] startNodes = clusterNodes[startCluster];
+		bfs(startCluster, start, counters);
+		for (int i = 0; i < startNodes.length; i++) {
+			startDistances[i] = localDistance[local(startCluster, startNodes[i])];
+		}
+		int direct = startCluster == goalCluster ? localDistance[local(goalCluster, goal)] : -1;
+
+		int[] goalNodes = clusterNodes[goalCluster];
+		bfs(goalCluster, goal, counters);
+		for (int i = 0; i < goalNodes.length; i++) {
+			goalDistances[i] = localDistance[local(goalCluster, goalNodes[i])];
+		}
+
+		if (!searchAbstract(start, goal, direct)) {
+			return null;
+		}
+
+		return refine(start, goal);
+	}
+
+	/**
+	 * @return the counters of the searches of queries, which add up over queries until reset.
+	 * They count the abstract nodes as well as the cells of the searches inside a cluster that
+	 * attach the start and goal and refine the path, but not the ones that build the clusters.
+	 */
+	public SearchCounters counters() {
+		return counters;
+	}
+
+	/**
+	 * A* over the abstract nodes, with the start and goal attached by temporary edges. On
+	 * success parent[] leads back from goalId to startId.
+	 *
+	 * @return true if the goal was reached
+	 */
+	private boolean searchAbstract(int start, int goal, int direct) {
+		int goalX = goal % xExtent;
+		int goalY = goal / xExtent;
+		int goalCluster = clusterOf(goal);
+
+		// Stale costs are only wiped once the generation wraps around
+		if (++generation == Integer.MAX_VALUE) {
+			Arrays.fill(seen, 0);
+			generation = 1;
+		}
+		openList.clear();
+		seen[startId] = generation;
+		cost[startId] = 0;
+		parent[startId] = -1;
+		openList.insert(startId, heuristic(start, goalX, goalY));
+
+		while (!openList.isEmpty()) {
+			int id = openList.poll();
+			if (id == goalId) {
+				return true;
+			}
+
+			int cell = cellOf(id, start, goal);
+			int nodeCost = cost[id];
+			int cluster = clusterOf(cell);
+			int[] nodes = clusterNodes[cluster];
+
+			if (id == startId) {
+				for (int i = 0; i < nodes.length; i++) {
+					if (startDistances[i] != -1) {
+						relax(id, cluster * maxNodes + i, nodes[i], startDistances[i], goalX, goalY);
+					}
+				}
+				if (direct != -1) {
+					relax(id, goalId, goal, direct, goalX, goalY);
+				}
+			}
+
+			// The start only has abstract edges of its own if it happens to be an entrance cell
+			int index = nodeIndex[cell];
+			if (index == -1) {
+				continue;
+			}
+			int[] distances = clusterDistances[cluster];
+			for (int i = 0; i < nodes.length; i++) {
+				int distance = distances[index * nodes.length + i];
+				if (i != index && distance != -1) {
+					relax(id, cluster * maxNodes + i, nodes[i], nodeCost + distance, goalX, goalY);
+				}
+			}
+			for (int partner : clusterPartners[cluster][index]) {
+				int partnerIndex = nodeIndex[partner];
+				if (partnerIndex != -1) {
+					relax(id, clusterOf(partner) * maxNodes + partnerIndex, partner, nodeCost + 1, goalX, goalY);
+				}
+			}
+			if (cluster == goalCluster && goalDistances[index] != -1) {
+				relax(id, goalId, goal, nodeCost + goalDistances[index], goalX, goalY);
+			}
+		}
+
+		return false;
+	}
+
+	private void relax(int from, int id, int cell, int nodeCost, int goalX, int goalY) {
+		if (seen[id] == generation && cost[id] <= nodeCost) {
+			return;
+		}
+		seen[id] = generation;
+		cost[id] = nodeCost;
+		parent[id] = from;
+
+		int key = nodeCost + heuristic(cell, goalX, goalY);
+		if (openList.contains(id)) {
+			openList.decreaseKey(id, key);
+		}
+		else {
+			openList.insert(id, key);
+		}
+	}
+
+	/**
+	 * @return the cell of an abstract node, the start or the goal
+	 */
+	private int cellOf(int id, int start, int goal) {
+		if (id == startId) {
+			return start;
+		}
+		if (id == goalId) {
+			return goal;
+		}
+		return clusterNodes[id / maxNodes][id % maxNodes];
+	}
+
+	/**
+	 * Turns the abstract path found by searchAbstract into the cells between its nodes
+	 */
+	private int[] refine(int start, int goal) {
+		int count = 0;
+		for (int id = goalId; id != -1; id = parent[id]) {
+			count++;
+		}
+		int[] ids = new int[count];
+		for (int id = goalId, i = count - 1; id != -1; id = parent[id], i--) {
+			ids[i] = id;
+		}
+
+		int[] steps = new int[cost[goalId]];
+		int length = 0;
+		for (int i = 1; i < count; i++) {
+			int from = cellOf(ids[i - 1], start, goal);
+			int to = cellOf(ids[i], start, goal);
+
+			// Every abstract edge either crosses a border in one step or stays inside one cluster
+			if (Math.max(Math.abs(from % xExtent - to % xExtent), Math.abs(from / xExtent - to / xExtent)) == 1) {
+				steps[length++] = to;
+			}
+			else {
+				length = clusterPath(clusterOf(to), from, to, steps, length);
+			}
+		}
+
+		return length == steps.length ? steps : Arrays.copyOf(steps, length);
+	}
+
+	/**
+	 * Writes the cells after from up to and including to, found without leaving the cluster,
+	 * into steps at the given length
+	 *
+	 * @return the length of steps after the cells
+	 */
+	private int clusterPath(int cluster, int from, int to, int[] steps, int length) {
+		bfs(cluster, from, counters);
+
+		int local = local(cluster, to);
+		int end = length + localDistance[local];
+		for (int i = end - 1; i >= length; i--) {
+			steps[i] = global(cluster, local);
+			local = localParent[local];
+		}
+		return end;
+	}
+
+	/**
+	 * Places the entrances on every border of a cluster and fills in its distance table
+	 */
+	private void buildCluster(int cluster) {
+		int clusterX = cluster % clustersX;
+		int clusterY = cluster / clustersX;
+
+		// Gather (own cell, other cell) pairs along the borders with all 8 neighbors
+		List<int[]> transitions = new ArrayList<int[]>();
+		for (int dy = -1; dy <= 1; dy++) {
+			for (int dx = -1; dx <= 1; dx++) {
+				int neighborX = clusterX + dx;
+				int neighborY = clusterY + dy;
+				if ((dx == 0 && dy == 0) || neighborX < 0 || neighborY < 0 || neighborX >= clustersX || neighborY >= clustersY) {
+					continue;
+				}
+				addTransitions(clusterX, clusterY, dx, dy, transitions);
+			}
+		}
+
+		// Merge transitions that share a cell into one node
+		if (clusterNodes[cluster] != null) {
+			for (int cell : clusterNodes[cluster]) {
+				nodeIndex[cell] = -1;
+			}
+		}
+		List<Integer> nodes = new ArrayList<Integer>();
+		List<List<Integer>> partners = new ArrayList<List<Integer>>();
+		for (int[] transition : transitions) {
+			int index = nodeIndex[transition[0]];
+			if (index == -1) {
+				index = nodes.size();
+				nodeIndex[transition[0]] = index;
+				nodes.add(transition[0]);
+				partners.add(new ArrayList<Integer>());
+			}
+			partners.get(index).add(transition[1]);
+		}
+
+		int count = nodes.size();
+		int[] nodeCells = new int[count];
+		int[][] nodePartners = new int[count][];
+		for (int i = 0; i < count; i++) {
+			nodeCells[i] = nodes.get(i);
+			nodePartners[i] = new int[partners.get(i).size()];
+			for (int j = 0; j < nodePartners[i].length; j++) {
+				nodePartners[i][j] = partners.get(i).get(j);
+			}
+		}
+
+		int[] distances = new int[count * count];
+		for (int i = 0; i < count; i++) {
+			bfs(cluster, nodeCells[i], null);
+			for (int j = 0; j < count; j++) {
+				distances[i * count + j] = localDistance[local(cluster, nodeCells[j])];
+			}
+		}
+
+		clusterNodes[cluster] = nodeCells;
+		clusterPartners[cluster] = nodePartners;
+		clusterDistances[cluster] = distances;
+	}
+
+	/**
+	 * Adds the transitions from the cluster at (clusterX, clusterY) into its neighbor in direction (dx, dy)
+	 */
+	private void addTransitions(int clusterX, int clusterY, int dx, int dy, List<int[]> transitions) {
+		int minX = clusterX * clusterSize;
+		int minY = clusterY * clusterSize;
+		int maxX = Math.min(minX + clusterSize, xExtent) - 1;
+		int maxY = Math.min(minY + clusterSize, yExtent) - 1;
+
+		// Corners only connect diagonally, through the two corner cells
+		if (dx != 0 && dy != 0) {
+			int x = dx < 0 ? minX : maxX;
+			int y = dy < 0 ? minY : maxY;
+			if (isPassable(x, y) && isPassable(x + dx, y + dy)) {
+				transitions.add(new int[] {y * xExtent + x, (y + dy) * xExtent + x + dx});
+			}
+			return;
+		}
+
+		// Walk along the border; (x, y) is on this side and (x + dx, y + dy) is across it
+		int length = dx != 0 ? maxY - minY + 1 : maxX - minX + 1;
+		int stepX = dx != 0 ? 0 : 1;
+		int stepY = dx != 0 ? 1 : 0;
+		int baseX = dx < 0 ? minX : dx > 0 ? maxX : minX;
+		int baseY = dy < 0 ? minY : dy > 0 ? maxY : minY;
+
+		int runStart = -1;
+		for (int i = 0; i <= length; i++) {
+			int x = baseX + i * stepX;
+			int y = baseY + i * stepY;
+			boolean open = i < length && isPassable(x, y) && isPassable(x + dx, y + dy);
+
+			if (open && runStart == -1) {
+				runStart = i;
+			}
+			else if (!open && runStart != -1) {
+				int runEnd = i - 1;
+				if (runEnd - runStart + 1 >= LONG_ENTRANCE) {
+					addStraight(baseX, baseY, stepX, stepY, dx, dy, runStart, transitions);
+					addStraight(baseX, baseY, stepX, stepY, dx, dy, runEnd, transitions);
+				}
+				else {
+					addStraight(baseX, baseY, stepX, stepY, dx, dy, (runStart + runEnd) / 2, transitions);
+				}
+				runStart = -1;
+			}
+
+			// A crossing that only exists diagonally, between two closed straight crossings
+			if (i + 1 < length && !open && !straightOpen(x + stepX, y + stepY, dx, dy)) {
+				int nextX = x + stepX;
+				int nextY = y + stepY;
+				if (isPassable(x, y) && isPassable(nextX + dx, nextY + dy)) {
+					transitions.add(new int[] {y * xExtent + x, (nextY + dy) * xExtent + nextX + dx});
+				}
+				if (isPassable(nextX, nextY) && isPassable(x + dx, y + dy)) {
+					transitions.add(new int[] {nextY * xExtent + nextX, (y + dy) * xExtent + x + dx});
+				}
+			}
+		}
+	}
+
+	private boolean straightOpen(int x, int y, int dx, int dy) {
+		return isPassable(x, y) && isPassable(x + dx, y + dy);
+	}
+
+	private void addStraight(int baseX, int baseY, int stepX, int stepY, int dx, int dy, int i, List<int[]> transitions) {
+		int x = baseX + i * stepX;
+		int y = baseY + i * stepY;
+		transitions.add(new int[] {y * xExtent + x, (y + dy) * xExtent + x + dx});
+	}
+
+	/**
+	 * Breadth first search from a cell that never leaves the given cluster. Fills
+	 * localDistance (-1 when unreachable) and localParent, both indexed by local cell.
+	 *
+	 * @param counters where the cells taken off and put on the queue are counted, or null
+	 */
+	private void bfs(int cluster, int source, SearchCounters counters) {
+		int minX = (cluster % clustersX) * clusterSize;
+		int minY = (cluster / clustersX) * clusterSize;
+		int maxX = Math.min(minX + clusterSize, xExtent);
+		int maxY = Math.min(minY + clusterSize, yExtent);
+
+		Arrays.fill(localDistance, -1);
+		int head = 0;
+		int tail = 0;
+		int sourceLocal = local(cluster, source);
+		localDistance[sourceLocal] = 0;
+		localParent[sourceLocal] = -1;
+		localQueue[tail++] = sourceLocal;
+		if (counters != null) {
+			counters.generated(tail - head);
+		}
+
+		while (head < tail) {
+			int current = localQueue[head++];
+			if (counters != null) {
+				counters.expanded();
+			}
+			int x = minX + current % clusterSize;
+			int y = minY + current / clusterSize;
+
+			for (int free = blocked.neighborMask(x, y); free != 0; free &= free - 1) {
+				int direction = Integer.numberOfTrailingZeros(free);
+				int neighborX = x + GridSearch.DX[direction];
+				int neighborY = y + GridSearch.DY[direction];
+				if (neighborX < minX || neighborY < minY || neighborX >= maxX || neighborY >= maxY) {
+					continue;
+				}
+
+				int neighbor = (neighborY - minY) * clusterSize + (neighborX - minX);
+				if (localDistance[neighbor] == -1) {
+					localDistance[neighbor] = localDistance[current] + 1;
+					localParent[neighbor] = current;
+					localQueue[tail++] = neighbor;
+					if (counters != null) {
+						counters.generated(tail - head);
+					}
+				}
+			}
+		}
+	}
+
+	private int clusterOf(int cell) {
+		return (cell / xExtent / clusterSize) * clustersX + (cell % xExtent) / clusterSize;
+	}
+
+	private int local(int cluster, int cell) {
+		int minX = (cluster % clustersX) * clusterSize;
+		int minY = (cluster / clustersX) * clusterSize;
+		return (cell / xExtent - minY) * clusterSize + (cell % xExtent - minX);
+	}
+
+	private int global(int cluster, int local) {
+		int x = (cluster % clustersX) * clusterSize + local % clusterSize;
+		int y = (cluster / clustersX) * clusterSize + local / clusterSize;
+		return y * xExtent + x;
+	}
+
+	private int heuristic(int cell, int goalX, int goalY) {
+		return Math.max(Math.abs(cell % xExtent - goalX), Math.abs(cell / xExtent - goalY));
+	}
+}
@@ -0,0 +1,81 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class HierarchicalGridTest {
+
+	// A wall down column 5 with a single gap at (5, 8)
+	private static HierarchicalGrid walledGrid() {
+		HierarchicalGrid grid = new HierarchicalGrid(10, 10, 4);
+		for (int y = 0; y < 10; y++) {
+			if (y != 8) {
+				grid.block(5, y);
+			}
+		}
+		grid.build();
+		return grid;
+	}
+
+	private static void assertValidPath(HierarchicalGrid grid, int startX, int startY, int goalX, int goalY, int[] path) {
+		int x = startX;
+		int y = startY;
+		for (int cell : path) {
+			int nextX = cell % grid.xExtent;
+			int nextY = cell / grid.xExtent;
+			assertEquals(1, Math.max(Math.abs(nextX - x), Math.abs(nextY - y)));
+			assertTrue(grid.isPassable(nextX, nextY));
+			x = nextX;
+			y = nextY;
+		}
+		assertEquals(goalX, x);
+		assertEquals(goalY, y);
+	}
+
+	@Test
+	public void testPathThroughGap() {
+		HierarchicalGrid grid = walledGrid();
+		int[] path = grid.findPath(0, 0, 9, 0);
+
+		assertNotNull(path);
+		assertValidPath(grid, 0, 0, 9, 0, path);
+		assertTrue(path.length >= 16);
+
+		// Every cell of the path was expanded by a search inside its cluster
+		assertTrue(grid.counters().expanded >= path.length);
+	}
+
+	@Test
+	public void testLocalUpdate() {
+		HierarchicalGrid grid = walledGrid();
+
+		grid.setBlocked(5, 8, true);
+		assertNull(grid.findPath(0, 0, 9, 0));
+
+		grid.setBlocked(5, 1, false);
+		int[] path = grid.findPath(0, 0, 9, 0);
+		assertNotNull(path);
+		assertValidPath(grid, 0, 0, 9, 0, path);
+	}
+
+	@Test
+	public void testRepeatedQueries() {
+		HierarchicalGrid grid = walledGrid();
+		int[] first = grid.findPath(0, 0, 9, 0);
+
+		// A query from an entrance cell in between must not see the costs of the one before
+		int[] entrance = grid.findPath(4, 8, 6, 8);
+		assertArrayEquals(new int[] {85, 86}, entrance);
+		assertArrayEquals(first, grid.findPath(0, 0, 9, 0));
+	}
+
+	@Test
+	public void testDefaultClusterSize() {
+		assertEquals(8, HierarchicalGrid.defaultClusterSize(16, 16));
+		assertEquals(16, HierarchicalGrid.defaultClusterSize(256, 100));
+		assertEquals(32, HierarchicalGrid.defaultClusterSize(1024, 1024));
+		assertEquals(32, HierarchicalGrid.defaultClusterSize(4096, 4096));
+	}
+
+}
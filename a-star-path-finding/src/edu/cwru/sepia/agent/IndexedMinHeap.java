@@ -0,0 +1,228 @@
+package edu.cwru.sepia.agent;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap over the integer ids [0, capacity) with a double priority per id.
+ *
+ * The heap keeps the position of every id in the backing array so that membership tests
+ * and decrease-key are O(1) and O(log n) respectively. The search code uses the cell index
+ * (y * xExtent + x) of a map location as its id and f = cost + heuristic as its key.
+ */
+class IndexedMinHeap {
+
+	private final int[] heap;
+	private final int[] position;
+	private final double[] keys;
+	private int size;
+
+	// Ids inserted and polled since the owner of the heap last reset them
+	final SearchCounters counters = new SearchCounters();
+
+	/**
+	 * Creates an empty heap able to hold every id in [0, capacity)
+	 *
+	 * @param capacity the number of distinct ids
+	 */
+	public IndexedMinHeap(int capacity) {
+		heap = new int[capacity];
+		position = new int[capacity];
+		keys = new double[capacity];
+		Arrays.fill(position, -1);
+	}
+
+	/**
+	 * @return the number of ids that can be stored in this heap
+	 */
+	public int capacity() {
+		return heap.length;
+	}
+
+	/**
+	 * @return the number of ids currently in the heap
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return true if there are no ids in the heap
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @param id the id to test
+	 * @return true if the id is currently in the heap
+	 */
+	public boolean contains(int id) {
+		return position[id] != -1;
+	}
+
+	/**
+	 * @param id an id that is currently in the heap
+	 * @return the key the id is stored with
+	 */
+	public double key(int id) {
+		return keys[id];
+	}
+
+	/**
+	 * Adds an id to the heap. The id must not already be in the heap.
+	 *
+	 * @param id the id to add
+	 * @param key the priority of the id
+	 */
+	public void insert(int id, double key) {
+		keys[id] = key;
+		heap[size] = id;
+		position[id] = size;
+		size++;
+		siftUp(size - 1);
+		counters.generated(size);
+	}
+
+	/**
+	 * Lowers the key of an id that is already in the heap
+	 *
+	 * @param id the id to update
+	 * @param key the new key, which must not be larger than the current one
+	 */
+	public void decreaseKey(int id, double key) {
+		keys[id] = key;
+		siftUp(position[id]);
+	}
+
+	/**
+	 * Changes the key of an id that is already in the heap, in either direction
+	 *
+	 * @param id the id to update
+	 * @param key the new key
+	 */
+	public void update(int id, double key) {
+		double old = keys[id];
+		keys[id] = key;
+		if (key < old) {
+			siftUp(position[id]);
+		}
+		else {
+			siftDown(position[id]);
+		}
+	}
+
+	/**
+	 * Removes an id from the heap if it is in it
+	 *
+	 * @param id the id to remove
+	 */
+	public void remove(int id) {
+		int index = position[id];
+		if (index == -1) {
+			return;
+		}
+
+		size--;
+		position[id] = -1;
+		if (index < size) {
+			int last = heap[size];
+			move(last, index);
+			siftDown(index);
+			siftUp(position[last]);
+		}
+	}
+
+	/**
+	 * @return the smallest key in the heap, or positive infinity when it is empty
+	 */
+	public double peekKey() {
+		return size == 0 ? Double.POSITIVE_INFINITY : keys[heap[0]];
+	}
+
+	/**
+	 * @return the id with the smallest key without removing it
+	 */
+	public int peek() {
+		return heap[0];
+	}
+
+	/**
+	 * Gives access to the ids in heap order, for example to re-key all of them
+	 *
+	 * @param index a position in [0, size())
+	 * @return the id stored at that position of the backing array
+	 */
+	public int idAt(int index) {
+		return heap[index];
+	}
+
+	/**
+	 * Removes and returns the id with the smallest key
+	 *
+	 * @return the id with the smallest key
+	 */
+	public int poll() {
+		int top = heap[0];
+		size--;
+		if (size > 0) {
+			move(heap[size], 0);
+			siftDown(0);
+		}
+		position[top] = -1;
+		counters.expanded();
+		return top;
+	}
+
+	/**
+	 * Removes every id from the heap. Runs in O(size), not O(capacity).
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			position[heap[i]] = -1;
+		}
+		size = 0;
+	}
+
+	private void siftUp(int index) {
+		int id = heap[index];
+		double key = keys[id];
+
+		// Shift parents down until the id's slot is found
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			int parentId = heap[parent];
+			if (keys[parentId] <= key) {
+				break;
+			}
+			move(parentId, index);
+			index = parent;
+		}
+		move(id, index);
+	}
+
+	private void siftDown(int index) {
+		int id = heap[index];
+		double key = keys[id];
+		int half = size >>> 1;
+
+		// Shift the smaller child up until the id's slot is found
+		while (index < half) {
+			int child = 2 * index + 1;
+			int right = child + 1;
+			if (right < size && keys[heap[right]] < keys[heap[child]]) {
+				child = right;
+			}
+			if (key <= keys[heap[child]]) {
+				break;
+			}
+			move(heap[child], index);
+			index = child;
+		}
+		move(id, index);
+	}
+
+	private void move(int id, int index) {
+		heap[index] = id;
+		position[id] = index;
+	}
+}
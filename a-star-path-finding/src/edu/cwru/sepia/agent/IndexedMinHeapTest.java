@@ -0,0 +1,73 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class IndexedMinHeapTest {
+
+	@Test
+	public void testPollOrder() {
+		IndexedMinHeap heap = new IndexedMinHeap(10);
+		float[] keys = {5, 3, 8, 1, 9, 2, 7, 4, 6, 0};
+		for (int id = 0; id < keys.length; id++) {
+			heap.insert(id, keys[id]);
+		}
+
+		assertEquals(10, heap.size());
+		float last = -1;
+		while (!heap.isEmpty()) {
+			int id = heap.poll();
+			assertFalse(heap.contains(id));
+			assertTrue(keys[id] >= last);
+			last = keys[id];
+		}
+	}
+
+	@Test
+	public void testDecreaseKey() {
+		IndexedMinHeap heap = new IndexedMinHeap(4);
+		heap.insert(0, 10);
+		heap.insert(1, 20);
+		heap.insert(2, 30);
+
+		heap.decreaseKey(2, 5);
+		assertTrue(heap.contains(2));
+		assertEquals(5, heap.key(2), 0);
+		assertEquals(2, heap.poll());
+		assertEquals(0, heap.poll());
+		assertFalse(heap.contains(3));
+	}
+
+	@Test
+	public void testClear() {
+		IndexedMinHeap heap = new IndexedMinHeap(4);
+		heap.insert(3, 1);
+		heap.insert(1, 2);
+		heap.clear();
+
+		assertTrue(heap.isEmpty());
+		assertFalse(heap.contains(3));
+		heap.insert(3, 4);
+		assertEquals(3, heap.peek());
+	}
+
+	@Test
+	public void testCountersFollowOpenList() {
+		IndexedMinHeap heap = new IndexedMinHeap(8);
+		heap.insert(0, 3);
+		heap.insert(1, 1);
+		heap.poll();
+		heap.insert(2, 2);
+		heap.insert(3, 5);
+
+		assertEquals(4, heap.counters.generated);
+		assertEquals(1, heap.counters.expanded);
+		assertEquals(3, heap.counters.peakOpen);
+
+		heap.counters.reset();
+		heap.poll();
+		assertEquals(1, heap.counters.expanded);
+		assertEquals(0, heap.counters.generated);
+	}
+}
@@ -0,0 +1,277 @@
+package edu.cwru.sepia.agent;
+
+import java.util.Arrays;
+
+/**
+ * Jump Point Search on top of the flat-array A* core.
+ *
+ * On an 8-connected grid where every step costs 1 most of the nodes A* expands are
+ * symmetric detours of each other. JPS prunes those by only generating the "jump points",
+ * cells where a straight or diagonal run has to stop because an obstacle forces a turn or
+ * because the goal was reached. Paths are as short as the ones plain A* finds, but a parent
+ * is no longer adjacent to its child: consecutive jump points are joined by a straight or
+ * diagonal run of free cells, which the caller has to step through when rebuilding the path.
+ *
+ * The runs read a copy of the obstacle bits that also holds the cells blocked for the current
+ * search. An east or west run tests 63 cells with a few word operations on the three rows it
+ * touches, and the other runs read each cell's neighbors with one neighborMask call.
+ */
+class JumpPointSearch extends GridSearch {
+
+	// Bit of the neighborMask direction with offset (dx + 1, dy + 1)
+	private static final int[][] DIRECTION_BIT = {
+		{1 << 5, 1 << 4, 1 << 3},
+		{1 << 6, 0, 1 << 2},
+		{1 << 7, 1, 1 << 1},
+	};
+
+	// Cells tested per word by an east or west run, one bit of the 64 is needed to find forced neighbors
+	private static final int RUN_BITS = 63;
+	private static final long RUN_MASK = -1L >>> 1;
+
+	// The static obstacles plus the cells blocked for the current search, the version of the
+	// static obstacles it was copied at, and the cells blocked on top of them
+	private final ObstacleGrid scanGrid;
+	private int scanVersion;
+	private int[] searchBlocked = new int[4];
+	private int searchBlockedCount;
+
+	/**
+	 * Allocates the search arrays for a map
+	 *
+	 * @param xExtent Width of the map
+	 * @param yExtent Height of the map
+	 */
+	public JumpPointSearch(int xExtent, int yExtent) {
+		this(new ObstacleGrid(xExtent, yExtent));
+	}
+
+	/**
+	 * Allocates the search arrays for the map of an obstacle grid
+	 *
+	 * @param obstacles the static obstacles, read by every search
+	 */
+	public JumpPointSearch(ObstacleGrid obstacles) {
+		super(obstacles);
+		scanGrid = obstacles.copy();
+		scanVersion = obstacles.version();
+	}
+
+	@Override
+	public void beginSearch() {
+		super.beginSearch();
+
+		if (scanVersion != obstacles.version()) {
+			System.arraycopy(obstacles.rows, 0, scanGrid.rows, 0, obstacles.rows.length);
+			scanVersion = obstacles.version();
+		}
+		else {
+			for (int i = 0; i < searchBlockedCount; i++) {
+				scanGrid.setBlocked(searchBlocked[i] % xExtent, searchBlocked[i] / xExtent, false);
+			}
+		}
+		searchBlockedCount = 0;
+	}
+
+	@Override
+	public void block(int x, int y) {
+		super.block(x, y);
+
+		// Only cells that are free in the static obstacles have to be freed again by the next search
+		if (scanGrid.setBlocked(x, y, true)) {
+			if (searchBlockedCount == searchBlocked.length) {
+				searchBlocked = Arrays.copyOf(searchBlocked, 2 * searchBlockedCount);
+			}
+			searchBlocked[searchBlockedCount++] = y * xExtent + x;
+		}
+	}
+
+	@Override
+	void expand(int cell) {
+		int x = cell % xExtent;
+		int y = cell / xExtent;
+		int free = scanGrid.neighborMask(x, y);
+
+		// The start has no direction of travel, so every neighbor is a candidate
+		int from = parent[cell];
+		if (from == -1) {
+			for (; free != 0; free &= free - 1) {
+				int direction = Integer.numberOfTrailingZeros(free);
+				jumpFrom(cell, x, y, DX[direction], DY[direction]);
+			}
+			return;
+		}
+
+		int dx = Integer.signum(x - from % xExtent);
+		int dy = Integer.signum(y - from / xExtent);
+
+		if (dx != 0 && dy != 0) {
+			// Natural neighbors of a diagonal move
+			jumpFrom(cell, x, y, dx, dy);
+			jumpFrom(cell, x, y, dx, 0);
+			jumpFrom(cell, x, y, 0, dy);
+
+			// Forced neighbors
+			if (!isFree(free, -dx, 0)) {
+				jumpFrom(cell, x, y, -dx, dy);
+			}
+			if (!isFree(free, 0, -dy)) {
+				jumpFrom(cell, x, y, dx, -dy);
+			}
+		}
+		else if (dx != 0) {
+			jumpFrom(cell, x, y, dx, 0);
+			if (!isFree(free, 0, 1)) {
+				jumpFrom(cell, x, y, dx, 1);
+			}
+			if (!isFree(free, 0, -1)) {
+				jumpFrom(cell, x, y, dx, -1);
+			}
+		}
+		else {
+			jumpFrom(cell, x, y, 0, dy);
+			if (!isFree(free, 1, 0)) {
+				jumpFrom(cell, x, y, 1, dy);
+			}
+			if (!isFree(free, -1, 0)) {
+				jumpFrom(cell, x, y, -1, dy);
+			}
+		}
+	}
+
+	/**
+	 * Jumps from a cell in one direction and relaxes the jump point that was found, if any
+	 */
+	private void jumpFrom(int cell, int x, int y, int dx, int dy) {
+		int jumpPoint = jump(x, y, dx, dy);
+		if (jumpPoint != -1) {
+			int xDistance = Math.abs(jumpPoint % xExtent - x);
+			int yDistance = Math.abs(jumpPoint / xExtent - y);
+			relax(cell, jumpPoint, gCost[cell] + Math.max(xDistance, yDistance));
+		}
+	}
+
+	/**
+	 * Walks from (x, y) in direction (dx, dy) until a jump point is found
+	 *
+	 * @return the cell index of the jump point, or -1 if the run hit an obstacle or the map edge
+	 */
+	private int jump(int x, int y, int dx, int dy) {
+		if (dy == 0) {
+			return dx > 0 ? jumpEast(x, y) : jumpWest(x, y);
+		}
+
+		int free = scanGrid.neighborMask(x, y);
+		while (true) {
+			if (!isFree(free, dx, dy)) {
+				return -1;
+			}
+			x += dx;
+			y += dy;
+			if (x == goalX && y == goalY) {
+				return y * xExtent + x;
+			}
+			free = scanGrid.neighborMask(x, y);
+
+			if (dx != 0) {
+				if ((!isFree(free, -dx, 0) && isFree(free, -dx, dy)) || (!isFree(free, 0, -dy) && isFree(free, dx, -dy))) {
+					return y * xExtent + x;
+				}
+
+				// A diagonal run stops wherever one of its straight components would stop
+				if (jump(x, y, dx, 0) != -1 || jump(x, y, 0, dy) != -1) {
+					return y * xExtent + x;
+				}
+			}
+			else {
+				if ((!isFree(free, 1, 0) && isFree(free, 1, dy)) || (!isFree(free, -1, 0) && isFree(free, -1, dy))) {
+					return y * xExtent + x;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs east from (x, y) 63 cells at a time. Bit i of a window is the cell i columns after
+	 * the first one tested, and the run stops at the first cell that is blocked, is the goal,
+	 * or has a blocked cell above or below it with a free cell east of that one.
+	 */
+	private int jumpEast(int x, int y) {
+		int middle = (y + 1) * scanGrid.wordsPerRow;
+		int above = middle - scanGrid.wordsPerRow;
+		int below = middle + scanGrid.wordsPerRow;
+		int goalBit = y == goalY && goalX > x ? goalX + 1 : -1;
+
+		// Padded columns are one more than map columns, and the padding column ends every run
+		for (int column = x + 2; ; column += RUN_BITS) {
+			long blocked = window(middle, column);
+			long aboveBits = window(above, column);
+			long belowBits = window(below, column);
+			long stop = (blocked | aboveBits & ~(aboveBits >>> 1) | belowBits & ~(belowBits >>> 1)) & RUN_MASK;
+			if (goalBit >= column && goalBit < column + RUN_BITS) {
+				stop |= 1L << (goalBit - column);
+			}
+
+			if (stop != 0) {
+				int offset = Long.numberOfTrailingZeros(stop);
+				return (blocked >>> offset & 1) != 0 ? -1 : y * xExtent + column + offset - 1;
+			}
+		}
+	}
+
+	/**
+	 * Runs west from (x, y) the same way as jumpEast, with bit 63 - i of a window the cell i
+	 * columns before the first one tested
+	 */
+	private int jumpWest(int x, int y) {
+		int middle = (y + 1) * scanGrid.wordsPerRow;
+		int above = middle - scanGrid.wordsPerRow;
+		int below = middle + scanGrid.wordsPerRow;
+		int goalBit = y == goalY && goalX < x ? goalX + 1 : -1;
+
+		for (int column = x; ; column -= RUN_BITS) {
+			long blocked = windowBefore(middle, column);
+			long aboveBits = windowBefore(above, column);
+			long belowBits = windowBefore(below, column);
+			long stop = (blocked | aboveBits & ~(aboveBits << 1) | belowBits & ~(belowBits << 1)) & ~1L;
+			if (goalBit <= column && goalBit > column - RUN_BITS) {
+				stop |= Long.MIN_VALUE >>> (column - goalBit);
+			}
+
+			if (stop != 0) {
+				int offset = Long.numberOfLeadingZeros(stop);
+				return (blocked << offset) < 0 ? -1 : y * xExtent + column - offset - 1;
+			}
+		}
+	}
+
+	/**
+	 * @return the 64 bits of a padded row from a column on, the lowest column first
+	 */
+	private long window(int row, int column) {
+		int word = row + (column >>> 6);
+		long bits = scanGrid.rows[word] >>> column;
+		if ((column & 63) != 0 && word + 1 < scanGrid.rows.length) {
+			bits |= scanGrid.rows[word + 1] << -column;
+		}
+		return bits;
+	}
+
+	/**
+	 * @return the 64 bits of a padded row up to a column, with that column in the highest bit
+	 * and zeros for the columns before the row starts
+	 */
+	private long windowBefore(int row, int column) {
+		if (column < 63) {
+			return scanGrid.rows[row] << (63 - column);
+		}
+		return window(row, column - 63);
+	}
+
+	/**
+	 * @return true if the neighbor at offset (dx, dy) is free in a mask from neighborMask
+	 */
+	private static boolean isFree(int mask, int dx, int dy) {
+		return (mask & DIRECTION_BIT[dx + 1][dy + 1]) != 0;
+	}
+}
@@ -0,0 +1,95 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class JumpPointSearchTest {
+
+	private static int pathCost(GridSearch search, int goal) {
+		int cost = 0;
+		for (int cell = goal; search.parent(cell) != -1; cell = search.parent(cell)) {
+			int from = search.parent(cell);
+			int xDistance = Math.abs(from % search.xExtent - cell % search.xExtent);
+			int yDistance = Math.abs(from / search.xExtent - cell / search.xExtent);
+			cost += Math.max(xDistance, yDistance);
+		}
+		return cost;
+	}
+
+	@Test
+	public void testSameLengthAsAstar() {
+		Random random = new Random(391);
+
+		for (int trial = 0; trial < 200; trial++) {
+			int xExtent = 5 + random.nextInt(30);
+			int yExtent = 5 + random.nextInt(30);
+			int startX = random.nextInt(xExtent), startY = random.nextInt(yExtent);
+			int goalX = random.nextInt(xExtent), goalY = random.nextInt(yExtent);
+
+			GridSearch astar = new GridSearch(xExtent, yExtent);
+			JumpPointSearch jps = new JumpPointSearch(xExtent, yExtent);
+			astar.beginSearch();
+			jps.beginSearch();
+			for (int x = 0; x < xExtent; x++) {
+				for (int y = 0; y < yExtent; y++) {
+					boolean endpoint = (x == startX && y == startY) || (x == goalX && y == goalY);
+					if (!endpoint && random.nextInt(10) < 3) {
+						astar.block(x, y);
+						jps.block(x, y);
+					}
+				}
+			}
+
+			int astarGoal = astar.search(startX, startY, goalX, goalY);
+			int jpsGoal = jps.search(startX, startY, goalX, goalY);
+			assertEquals(astarGoal, jpsGoal);
+			if (astarGoal != -1) {
+				assertEquals(pathCost(astar, astarGoal), pathCost(jps, jpsGoal));
+			}
+		}
+	}
+
+	@Test
+	public void testRunsAcrossWordsAndSearches() {
+		Random random = new Random(17);
+
+		// East and west runs read 63 cells per word, so the maps are several words wide
+		for (int trial = 0; trial < 20; trial++) {
+			int xExtent = 60 + random.nextInt(150);
+			int yExtent = 3 + random.nextInt(10);
+			ObstacleGrid obstacles = new ObstacleGrid(xExtent, yExtent);
+			for (int cell = 0; cell < xExtent * yExtent; cell++) {
+				if (random.nextInt(20) == 0) {
+					obstacles.setBlocked(cell % xExtent, cell / xExtent, true);
+				}
+			}
+			GridSearch astar = new GridSearch(obstacles);
+			JumpPointSearch jps = new JumpPointSearch(obstacles);
+
+			// The same searches are reused, with other cells blocked for each query
+			for (int query = 0; query < 10; query++) {
+				astar.beginSearch();
+				jps.beginSearch();
+				for (int i = 0; i < 3; i++) {
+					int x = random.nextInt(xExtent);
+					int y = random.nextInt(yExtent);
+					astar.block(x, y);
+					jps.block(x, y);
+				}
+
+				int startX = random.nextInt(xExtent), startY = random.nextInt(yExtent);
+				int goalX = random.nextInt(xExtent), goalY = random.nextInt(yExtent);
+				int astarGoal = astar.search(startX, startY, goalX, goalY);
+				int jpsGoal = jps.search(startX, startY, goalX, goalY);
+				assertEquals(astarGoal, jpsGoal);
+				if (astarGoal != -1) {
+					assertEquals(pathCost(astar, astarGoal), pathCost(jps, jpsGoal));
+				}
+			}
+		}
+	}
+
+}
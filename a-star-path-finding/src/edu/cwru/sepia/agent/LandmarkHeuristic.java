@@ -0,0 +1,275 @@
+package edu.cwru.sepia.agent;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ALT lower bounds on the distance between two cells, from the precomputed distances of a
+ * few landmark cells to every cell.
+ *
+ * By the triangle inequality a path from a cell to the goal is at least as long as the
+ * difference of their distances to any landmark. The bound is exact for cells that lie
+ * behind one another as seen from a landmark, so in mazes it is far tighter than the
+ * Chebyshev distance, which ignores the walls. Landmarks are spread out by repeatedly
+ * picking the cell farthest from the ones chosen so far.
+ *
+ * The tables stay admissible as long as obstacles are only added to the layout they were
+ * built for, since that can only make paths longer. Building them takes one breadth first
+ * search per landmark, so finished tables are kept by the fingerprint of their layout and
+ * shared by every later search on the same map.
+ */
+class LandmarkHeuristic {
+
+	static final int UNREACHABLE = -1;
+
+	// Tables kept by layout fingerprint, at most this many, least recently used evicted first
+	private static final int CACHED_LAYOUTS = 8;
+	private static final Map<Long, LandmarkHeuristic> byFingerprint = new LinkedHashMap<Long, LandmarkHeuristic>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, LandmarkHeuristic> eldest) {
+			return size() > CACHED_LAYOUTS;
+		}
+	};
+	private static int builds = 0;
+
+	final int xExtent;
+	final int yExtent;
+
+	// The number of landmarks asked for, and the cell index of every landmark that was placed
+	final int count;
+	final int[] landmarks;
+
+	// Distance from landmark l to cell c at c * landmarks.length + l, so one lookup reads one run
+	private final int[] distance;
+
+	// The obstacle rows the tables were built on
+	private final long[] rows;
+
+	/**
+	 * Picks the landmarks and computes their distance tables
+	 *
+	 * @param obstacles the layout to build the tables for
+	 * @param count the number of landmarks wanted. Fewer are used if the map runs out of
+	 * cells that are not already covered.
+	 */
+	public LandmarkHeuristic(ObstacleGrid obstacles, int count) {
+		this.count = count;
+		xExtent = obstacles.xExtent;
+		yExtent = obstacles.yExtent;
+		rows = obstacles.rows.clone();
+
+		int size = xExtent * yExtent;
+		int[] table = new int[size];
+		int[] nearest = new int[size];
+		int[] queue = new int[size];
+		int[] chosen = new int[count];
+
+		// Landmarks in a walled off pocket bound nothing, so they go into the largest region.
+		// The first one is the cell of that region farthest from an arbitrary cell in it.
+		int seed = largestRegion(obstacles, table, queue);
+
+		int found = 0;
+		int[][] tables = new int[count][];
+		if (seed != -1) {
+			breadthFirst(obstacles, seed, table, queue);
+			Arrays.fill(nearest, Integer.MAX_VALUE);
+
+			int next = farthest(table);
+			while (found < count && next != -1) {
+				chosen[found] = next;
+				tables[found] = new int[size];
+				breadthFirst(obstacles, next, tables[found], queue);
+
+				for (int cell = 0; cell < size; cell++) {
+					if (tables[found][cell] != UNREACHABLE && tables[found][cell] < nearest[cell]) {
+						nearest[cell] = tables[found][cell];
+					}
+				}
+				found++;
+
+				// The next landmark is the cell farthest from all the ones chosen so far
+				next = -1;
+				int best = 0;
+				for (int cell = 0; cell < size; cell++) {
+					if (nearest[cell] != Integer.MAX_VALUE && nearest[cell] > best) {
+						best = nearest[cell];
+						next = cell;
+					}
+				}
+			}
+		}
+
+		landmarks = Arrays.copyOf(chosen, found);
+		distance = new int[size * found];
+		for (int l = 0; l < found; l++) {
+			for (int cell = 0; cell < size; cell++) {
+				distance[cell * found + l] = tables[l][cell];
+			}
+		}
+	}
+
+	/**
+	 * Returns the tables for the layout of a grid, building them if no earlier search on the
+	 * same layout did
+	 *
+	 * @param obstacles the current layout
+	 * @param count the number of landmarks
+	 * @return tables that are admissible on the grid
+	 */
+	public static synchronized LandmarkHeuristic forGrid(ObstacleGrid obstacles, int count) {
+		Long key = obstacles.fingerprint();
+		LandmarkHeuristic heuristic = byFingerprint.get(key);
+		if (heuristic == null || heuristic.count != count || !heuristic.isAdmissible(obstacles)) {
+			heuristic = new LandmarkHeuristic(obstacles, count);
+			byFingerprint.put(key, heuristic);
+			builds++;
+		}
+		return heuristic;
+	}
+
+	/**
+	 * @return the number of tables built by forGrid() so far
+	 */
+	public static synchronized int builds() {
+		return builds;
+	}
+
+	/**
+	 * @param obstacles a grid
+	 * @return true if the grid has the dimensions of the tables and every obstacle they were
+	 * built with, so their bounds still hold
+	 */
+	public boolean isAdmissible(ObstacleGrid obstacles) {
+		if (!obstacles.fits(xExtent, yExtent)) {
+			return false;
+		}
+		for (int i = 0; i < rows.length; i++) {
+			if ((rows[i] & ~obstacles.rows[i]) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param cell a cell index
+	 * @param goal the cell index of the goal
+	 * @return the largest triangle inequality bound over the landmarks, or 0 if none applies
+	 */
+	public int lowerBound(int cell, int goal) {
+		int found = landmarks.length;
+		int cellBase = cell * found;
+		int goalBase = goal * found;
+
+		int bound = 0;
+		for (int l = 0; l < found; l++) {
+			int toCell = distance[cellBase + l];
+			int toGoal = distance[goalBase + l];
+			if (toCell == UNREACHABLE || toGoal == UNREACHABLE) {
+				continue;
+			}
+			int difference = toCell > toGoal ? toCell - toGoal : toGoal - toCell;
+			if (difference > bound) {
+				bound = difference;
+			}
+		}
+		return bound;
+	}
+
+	/**
+	 * @param landmark the position of a landmark in landmarks
+	 * @param cell a cell index
+	 * @return the number of steps between the landmark and the cell, or UNREACHABLE
+	 */
+	public int distance(int landmark, int cell) {
+		return distance[cell * landmarks.length + landmark];
+	}
+
+	/**
+	 * Fills a table with the number of steps from a cell to every other cell
+	 */
+	private static void breadthFirst(ObstacleGrid obstacles, int source, int[] table, int[] queue) {
+		int xExtent = obstacles.xExtent;
+		Arrays.fill(table, UNREACHABLE);
+		table[source] = 0;
+		queue[0] = source;
+
+		int tail = 1;
+		for (int head = 0; head < tail; head++) {
+			int cell = queue[head];
+			int x = cell % xExtent;
+			int y = cell / xExtent;
+
+			for (int free = obstacles.neighborMask(x, y); free != 0; free &= free - 1) {
+				int direction = Integer.numberOfTrailingZeros(free);
+				int neighborX = x + GridSearch.DX[direction];
+				int neighborY = y + GridSearch.DY[direction];
+				int neighbor = neighborY * xExtent + neighborX;
+				if (table[neighbor] == UNREACHABLE) {
+					table[neighbor] = table[cell] + 1;
+					queue[tail++] = neighbor;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Floods every region of free cells that connect to each other
+	 *
+	 * @return a cell of the region with the most cells, or -1 if there are no free cells
+	 */
+	private static int largestRegion(ObstacleGrid obstacles, int[] seen, int[] queue) {
+		int xExtent = obstacles.xExtent;
+		Arrays.fill(seen, UNREACHABLE);
+
+		int largest = -1;
+		int largestSize = 0;
+		for (int first = 0; first < seen.length; first++) {
+			if (seen[first] != UNREACHABLE || !obstacles.isPassable(first % xExtent, first / xExtent)) {
+				continue;
+			}
+
+			seen[first] = first;
+			queue[0] = first;
+			int tail = 1;
+			for (int head = 0; head < tail; head++) {
+				int x = queue[head] % xExtent;
+				int y = queue[head] / xExtent;
+				for (int free = obstacles.neighborMask(x, y); free != 0; free &= free - 1) {
+					int direction = Integer.numberOfTrailingZeros(free);
+					int neighborX = x + GridSearch.DX[direction];
+					int neighborY = y + GridSearch.DY[direction];
+					int neighbor = neighborY * xExtent + neighborX;
+					if (seen[neighbor] == UNREACHABLE) {
+						seen[neighbor] = first;
+						queue[tail++] = neighbor;
+					}
+				}
+			}
+
+			if (tail > largestSize) {
+				largestSize = tail;
+				largest = first;
+			}
+		}
+		return largest;
+	}
+
+	/**
+	 * @return the reachable cell with the largest distance in a table, or -1 if there is only the source
+	 */
+	private static int farthest(int[] table) {
+		int farthest = -1;
+		int best = 0;
+		for (int cell = 0; cell < table.length; cell++) {
+			if (table[cell] > best) {
+				best = table[cell];
+				farthest = cell;
+			}
+		}
+		return farthest;
+	}
+}
@@ -0,0 +1,116 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LandmarkHeuristicTest {
+
+	/*
+	 * A wall with a single gap at the bottom, so the two sides are far apart by path but
+	 * close by Chebyshev distance
+	 */
+	private static final String[] WALL = {
+		"...x...",
+		"...x...",
+		"...x...",
+		"...x...",
+		".......",
+	};
+
+	@Test
+	public void testBoundsAreAdmissible() {
+		ObstacleGrid grid = TestGrids.grid(WALL);
+		LandmarkHeuristic heuristic = new LandmarkHeuristic(grid, 3);
+		assertEquals(3, heuristic.landmarks.length);
+
+		// Every bound is at most the true distance
+		for (int goal = 0; goal < 35; goal++) {
+			if (!grid.isPassable(goal % 7, goal / 7)) {
+				continue;
+			}
+			for (int cell = 0; cell < 35; cell++) {
+				if (grid.isPassable(cell % 7, cell / 7)) {
+					assertTrue(heuristic.lowerBound(cell, goal) <= trueDistance(grid, cell, goal));
+				}
+			}
+			assertEquals(0, heuristic.lowerBound(goal, goal));
+		}
+	}
+
+	@Test
+	public void testBoundSeesTheWall() {
+		ObstacleGrid grid = TestGrids.grid(WALL);
+		LandmarkHeuristic heuristic = new LandmarkHeuristic(grid, 2);
+
+		// From the top left to the top right is 2 by Chebyshev distance but 8 steps around the wall
+		assertEquals(8, trueDistance(grid, 2, 4));
+		assertEquals(8, heuristic.lowerBound(2, 4));
+	}
+
+	@Test
+	public void testLandmarksAvoidWalledOffPocket() {
+		ObstacleGrid grid = TestGrids.grid(new String[] {
+			".x.....",
+			"xx.....",
+			".......",
+		});
+		LandmarkHeuristic heuristic = new LandmarkHeuristic(grid, 2);
+
+		for (int landmark : heuristic.landmarks) {
+			assertNotEquals(0, landmark);
+		}
+		assertNotEquals(LandmarkHeuristic.UNREACHABLE, heuristic.distance(0, 20));
+	}
+
+	@Test
+	public void testAdmissibleOnlyWhileObstaclesAreKept() {
+		ObstacleGrid grid = TestGrids.grid(WALL);
+		LandmarkHeuristic heuristic = new LandmarkHeuristic(grid, 2);
+		assertTrue(heuristic.isAdmissible(grid));
+
+		grid.setBlocked(0, 0, true);
+		assertTrue(heuristic.isAdmissible(grid));
+
+		grid.setBlocked(3, 0, false);
+		assertFalse(heuristic.isAdmissible(grid));
+		assertFalse(heuristic.isAdmissible(new ObstacleGrid(8, 5)));
+	}
+
+	@Test
+	public void testTablesAreSharedByLayout() {
+		int builds = LandmarkHeuristic.builds();
+		LandmarkHeuristic first = LandmarkHeuristic.forGrid(TestGrids.grid(WALL), 2);
+		LandmarkHeuristic second = LandmarkHeuristic.forGrid(TestGrids.grid(WALL), 2);
+
+		assertSame(first, second);
+		assertEquals(builds + 1, LandmarkHeuristic.builds());
+		assertNotSame(first, LandmarkHeuristic.forGrid(TestGrids.grid(WALL), 3));
+	}
+
+	@Test
+	public void testSearchKeepsPathLength() {
+		ObstacleGrid grid = TestGrids.grid(WALL);
+		GridSearch search = new GridSearch(grid);
+		search.setLandmarks(new LandmarkHeuristic(grid, 2));
+		search.beginSearch();
+		int goal = search.search(0, 0, 6, 0);
+
+		int length = 0;
+		for (int cell = goal; search.parent(cell) != -1; cell = search.parent(cell)) {
+			length++;
+		}
+		assertEquals(trueDistance(grid, 0, 6), length);
+	}
+
+	private static int trueDistance(ObstacleGrid grid, int from, int to) {
+		FlowField field = new FlowField(grid.xExtent, grid.yExtent, to % grid.xExtent, to / grid.xExtent);
+		for (int cell : grid.blockedCells()) {
+			field.block(cell % grid.xExtent, cell / grid.xExtent);
+		}
+		field.build();
+
+		// The field counts the steps to a cell next to the goal
+		return from == to ? 0 : field.distance(from % grid.xExtent, from / grid.xExtent) + 1;
+	}
+}
@@ -0,0 +1,343 @@
+package edu.cwru.sepia.agent;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates benchmark maps with their scenarios in the formats of MovingAiFormat: random
+ * obstacles, mazes with corridors one cell wide, and square rooms joined by doors.
+ *
+ * The queries of a scenario join two cells of the same region, and their optimal length is
+ * the number of steps of a breadth first search on the 8-connected grid, so it is what the
+ * searches of the agent should find.
+ *
+ * Usage: MapGenerator directory [name=value ...]
+ *
+ * Options are types (default random,maze,rooms), sizes of the square maps (default
+ * 64,256,1024,4096), queries per map (default 100), density of the random obstacles (default
+ * 0.25), room width in cells including one wall (default 16) and seed (default 1). Each map
+ * is written as type_size.map with its queries in type_size.map.scen, as the published
+ * benchmarks name them.
+ */
+class MapGenerator {
+
+	/**
+	 * @param xExtent Width of the map
+	 * @param yExtent Height of the map
+	 * @param density the fraction of cells that hold an obstacle
+	 * @param random the source of the layout
+	 * @return a map whose cells are each blocked with the given chance
+	 */
+	public static ObstacleGrid random(int xExtent, int yExtent, double density, Random random) {
+		ObstacleGrid obstacles = new ObstacleGrid(xExtent, yExtent);
+		for (int y = 0; y < yExtent; y++) {
+			for (int x = 0; x < xExtent; x++) {
+				if (random.nextDouble() < density) {
+					obstacles.setBlocked(x, y, true);
+				}
+			}
+		}
+		return obstacles;
+	}
+
+	/**
+	 * Carves a maze with a randomized depth first search. The cells at odd coordinates are
+	 * the junctions and the search opens the wall between each junction and the one it
+	 * comes from, so the corridors form a tree.
+	 *
+	 * @param xExtent Width of the map
+	 * @param yExtent Height of the map
+	 * @param random the source of the layout
+	 * @return the maze
+	 */
+	public static ObstacleGrid maze(int xExtent, int yExtent, Random random) {
+		ObstacleGrid obstacles = new ObstacleGrid(xExtent, yExtent);
+		for (int y = 0; y < yExtent; y++) {
+			for (int x = 0; x < xExtent; x++) {
+				obstacles.setBlocked(x, y, true);
+			}
+		}
+
+		int junctionsX = (xExtent - 1) / 2;
+		int junctionsY = (yExtent - 1) / 2;
+		if (junctionsX == 0 || junctionsY == 0) {
+			return obstacles;
+		}
+
+		int[] stack = new int[junctionsX * junctionsY];
+		int[] candidates = new int[4];
+		int top = 0;
+		stack[top++] = 0;
+		obstacles.setBlocked(1, 1, false);
+		while (top > 0) {
+			int junction = stack[top - 1];
+			int x = 2 * (junction % junctionsX) + 1;
+			int y = 2 * (junction / junctionsX) + 1;
+
+			// The straight neighbors two cells away that are still walled in
+			int count = 0;
+			for (int direction = 0; direction < 8; direction += 2) {
+				int nextX = x + 2 * GridSearch.DX[direction];
+				int nextY = y + 2 * GridSearch.DY[direction];
+				if (nextX > 0 && nextY > 0 && nextX < 2 * junctionsX && nextY < 2 * junctionsY && !obstacles.isPassable(nextX, nextY)) {
+					candidates[count++] = direction;
+				}
+			}
+			if (count == 0) {
+				top--;
+				continue;
+			}
+
+			int direction = candidates[random.nextInt(count)];
+			int nextX = x + 2 * GridSearch.DX[direction];
+			int nextY = y + 2 * GridSearch.DY[direction];
+			obstacles.setBlocked(x + GridSearch.DX[direction], y + GridSearch.DY[direction], false);
+			obstacles.setBlocked(nextX, nextY, false);
+			stack[top++] = (nextY / 2) * junctionsX + nextX / 2;
+		}
+		return obstacles;
+	}
+
+	/**
+	 * Divides the map into square rooms with walls one cell thick. Doors one cell wide join
+	 * the rooms along a random spanning tree, so every room can be reached, and each other
+	 * wall between two rooms gets a door with even chance.
+	 *
+	 * @param xExtent Width of the map
+	 * @param yExtent Height of the map
+	 * @param roomSize distance between the walls, at least 2
+	 * @param random the source of the layout
+	 * @return the rooms
+	 */
+	public static ObstacleGrid rooms(int xExtent, int yExtent, int roomSize, Random random) {
+		if (roomSize < 2) {
+			throw new IllegalArgumentException("Rooms of size " + roomSize + " leave no space inside the walls");
+		}
+		ObstacleGrid obstacles = new ObstacleGrid(xExtent, yExtent);
+
+		// Walls stand at multiples of the room size that leave the last room at least one cell
+		int roomsX = Math.max(1, (xExtent - 2) / roomSize + 1);
+		int roomsY = Math.max(1, (yExtent - 2) / roomSize + 1);
+		for (int room = 1; room < roomsX; room++) {
+			for (int y = 0; y < yExtent; y++) {
+				obstacles.setBlocked(room * roomSize, y, true);
+			}
+		}
+		for (int room = 1; room < roomsY; room++) {
+			for (int x = 0; x < xExtent; x++) {
+				obstacles.setBlocked(x, room * roomSize, true);
+			}
+		}
+
+		// A randomized depth first search over the rooms opens the doors of the spanning tree
+		boolean[] visited = new boolean[roomsX * roomsY];
+		int[] stack = new int[roomsX * roomsY];
+		int[] candidates = new int[4];
+		int top = 0;
+		stack[top++] = 0;
+		visited[0] = true;
+		while (top > 0) {
+			int room = stack[top - 1];
+			int count = 0;
+			for (int direction = 0; direction < 8; direction += 2) {
+				int next = neighborRoom(room, direction, roomsX, roomsY);
+				if (next != -1 && !visited[next]) {
+					candidates[count++] = direction;
+				}
+			}
+			if (count == 0) {
+				top--;
+				continue;
+			}
+
+			int direction = candidates[random.nextInt(count)];
+			int next = neighborRoom(room, direction, roomsX, roomsY);
+			openDoor(obstacles, room, direction, roomsX, roomsY, roomSize, random);
+			visited[next] = true;
+			stack[top++] = next;
+		}
+
+		// Extra doors east and south of each room, some of which were already opened above
+		for (int room = 0; room < roomsX * roomsY; room++) {
+			for (int direction = 0; direction <= 2; direction += 2) {
+				if (neighborRoom(room, direction, roomsX, roomsY) != -1 && random.nextBoolean()) {
+					openDoor(obstacles, room, direction, roomsX, roomsY, roomSize, random);
+				}
+			}
+		}
+		return obstacles;
+	}
+
+	/**
+	 * Draws queries between random cells of the same region. A start that can't reach any
+	 * other cell is drawn again.
+	 *
+	 * @param obstacles the map
+	 * @param mapName the map file the queries name
+	 * @param count the number of queries
+	 * @param random the source of the queries
+	 * @return the queries, fewer than count only if few free cells can reach another one
+	 */
+	public static List<MovingAiFormat.Query> queries(ObstacleGrid obstacles, String mapName, int count, Random random) {
+		int xExtent = obstacles.xExtent;
+		int size = xExtent * obstacles.yExtent;
+		int[] distance = new int[size];
+		int[] queue = new int[size];
+
+		List<MovingAiFormat.Query> queries = new ArrayList<MovingAiFormat.Query>();
+		for (int attempt = 0; queries.size() < count && attempt < 20 * count; attempt++) {
+			int start = random.nextInt(size);
+			if (!obstacles.isPassable(start % xExtent, start / xExtent)) {
+				continue;
+			}
+
+			// The cells after the start in the queue are exactly the ones it can reach
+			int reached = breadthFirst(obstacles, start, distance, queue);
+			if (reached < 2) {
+				continue;
+			}
+			int goal = queue[1 + random.nextInt(reached - 1)];
+			queries.add(new MovingAiFormat.Query(distance[goal] / 4, mapName, xExtent, obstacles.yExtent, start % xExtent, start / xExtent,
+					goal % xExtent, goal / xExtent, distance[goal]));
+		}
+		return queries;
+	}
+
+	/**
+	 * @param obstacles the map
+	 * @param source a cell index
+	 * @return the number of steps from the source to every cell, -1 where it can't be reached
+	 */
+	public static int[] distances(ObstacleGrid obstacles, int source) {
+		int size = obstacles.xExtent * obstacles.yExtent;
+		int[] distance = new int[size];
+		breadthFirst(obstacles, source, distance, new int[size]);
+		return distance;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: MapGenerator directory [name=value ...]");
+			return;
+		}
+
+		Map<String, String> options = new HashMap<String, String>();
+		for (int i = 1; i < args.length; i++) {
+			int split = args[i].indexOf('=');
+			if (split == -1) {
+				System.err.println("Ignoring argument without a value: " + args[i]);
+				continue;
+			}
+			options.put(args[i].substring(0, split), args[i].substring(split + 1));
+		}
+
+		File directory = new File(args[0]);
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Can't create " + directory);
+		}
+		int queryCount = Integer.parseInt(option(options, "queries", "100"));
+		double density = Double.parseDouble(option(options, "density", "0.25"));
+		int roomSize = Integer.parseInt(option(options, "room", "16"));
+		Random random = new Random(Long.parseLong(option(options, "seed", "1")));
+
+		for (String type : option(options, "types", "random,maze,rooms").split(",")) {
+			for (String sizeOption : option(options, "sizes", "64,256,1024,4096").split(",")) {
+				type = type.trim();
+				int size = Integer.parseInt(sizeOption.trim());
+				long startTime = System.nanoTime();
+
+				ObstacleGrid obstacles;
+				if (type.equals("random")) {
+					obstacles = random(size, size, density, random);
+				}
+				else if (type.equals("maze")) {
+					obstacles = maze(size, size, random);
+				}
+				else if (type.equals("rooms")) {
+					obstacles = rooms(size, size, roomSize, random);
+				}
+				else {
+					throw new IllegalArgumentException("Unknown map type " + type + ", expected random, maze or rooms");
+				}
+
+				File mapFile = new File(directory, type + "_" + size + ".map");
+				MovingAiFormat.writeMap(obstacles, mapFile);
+				List<MovingAiFormat.Query> queries = queries(obstacles, mapFile.getName(), queryCount, random);
+				MovingAiFormat.writeScenario(queries, new File(directory, mapFile.getName() + ".scen"));
+				System.out.println("Wrote " + mapFile + " with " + queries.size() + " queries in " + (System.nanoTime() - startTime) / 1e9 + "s");
+			}
+		}
+	}
+
+	/**
+	 * @return the room next to a room in one of the straight directions of GridSearch, or -1
+	 * at the edge of the map
+	 */
+	private static int neighborRoom(int room, int direction, int roomsX, int roomsY) {
+		int x = room % roomsX + GridSearch.DX[direction];
+		int y = room / roomsX + GridSearch.DY[direction];
+		return x < 0 || y < 0 || x >= roomsX || y >= roomsY ? -1 : y * roomsX + x;
+	}
+
+	/**
+	 * Frees one cell of the wall between a room and the next one in a straight direction
+	 */
+	private static void openDoor(ObstacleGrid obstacles, int room, int direction, int roomsX, int roomsY, int roomSize, Random random) {
+		int roomX = room % roomsX;
+		int roomY = room / roomsX;
+		if (GridSearch.DX[direction] != 0) {
+			int wallX = (GridSearch.DX[direction] > 0 ? roomX + 1 : roomX) * roomSize;
+			int first = roomY == 0 ? 0 : roomY * roomSize + 1;
+			int last = roomY == roomsY - 1 ? obstacles.yExtent - 1 : (roomY + 1) * roomSize - 1;
+			obstacles.setBlocked(wallX, first + random.nextInt(last - first + 1), false);
+		}
+		else {
+			int wallY = (GridSearch.DY[direction] > 0 ? roomY + 1 : roomY) * roomSize;
+			int first = roomX == 0 ? 0 : roomX * roomSize + 1;
+			int last = roomX == roomsX - 1 ? obstacles.xExtent - 1 : (roomX + 1) * roomSize - 1;
+			obstacles.setBlocked(first + random.nextInt(last - first + 1), wallY, false);
+		}
+	}
+
+	/**
+	 * Fills a table with the number of steps from a source to every cell
+	 *
+	 * @return the number of cells reached, which are the first ones in the queue
+	 */
+	private static int breadthFirst(ObstacleGrid obstacles, int source, int[] distance, int[] queue) {
+		Arrays.fill(distance, -1);
+		int xExtent = obstacles.xExtent;
+		if (!obstacles.isPassable(source % xExtent, source / xExtent)) {
+			return 0;
+		}
+
+		distance[source] = 0;
+		queue[0] = source;
+		int tail = 1;
+		for (int head = 0; head < tail; head++) {
+			int cell = queue[head];
+			int x = cell % xExtent;
+			int y = cell / xExtent;
+
+			for (int free = obstacles.neighborMask(x, y); free != 0; free &= free - 1) {
+				int direction = Integer.numberOfTrailingZeros(free);
+				int neighbor = (y + GridSearch.DY[direction]) * xExtent + x + GridSearch.DX[direction];
+				if (distance[neighbor] == -1) {
+					distance[neighbor] = distance[cell] + 1;
+					queue[tail++] = neighbor;
+				}
+			}
+		}
+		return tail;
+	}
+
+	private static String option(Map<String, String> options, String name, String defaultValue) {
+		return options.containsKey(name) ? options.get(name) : defaultValue;
+	}
+}
@@ -0,0 +1,67 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MapGeneratorTest {
+
+	/**
+	 * @return true if every free cell can be reached from every other
+	 */
+	private static boolean isConnected(ObstacleGrid obstacles) {
+		int xExtent = obstacles.xExtent;
+		int[] distance = null;
+		for (int cell = 0; cell < xExtent * obstacles.yExtent; cell++) {
+			if (!obstacles.isPassable(cell % xExtent, cell / xExtent)) {
+				continue;
+			}
+			if (distance == null) {
+				distance = MapGenerator.distances(obstacles, cell);
+			}
+			else if (distance[cell] == -1) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Test
+	public void testMazeIsConnected() {
+		ObstacleGrid maze = MapGenerator.maze(41, 30, new Random(1));
+		assertTrue(isConnected(maze));
+
+		// Junctions are free and the pillars between them are not
+		assertTrue(maze.isPassable(39, 27));
+		assertFalse(maze.isPassable(2, 2));
+		assertFalse(maze.isPassable(40, 29));
+	}
+
+	@Test
+	public void testRoomsAreConnected() {
+		ObstacleGrid rooms = MapGenerator.rooms(50, 35, 8, new Random(2));
+		assertTrue(isConnected(rooms));
+		assertFalse(rooms.isPassable(8, 8));
+		assertTrue(rooms.isPassable(49, 34));
+	}
+
+	@Test
+	public void testQueriesHaveOptimalLengths() {
+		Random random = new Random(3);
+		ObstacleGrid obstacles = MapGenerator.random(40, 30, 0.3, random);
+		List<MovingAiFormat.Query> queries = MapGenerator.queries(obstacles, "random.map", 50, random);
+		assertEquals(50, queries.size());
+
+		GridSearch search = new GridSearch(obstacles);
+		for (MovingAiFormat.Query query : queries) {
+			search.beginSearch();
+			int goal = search.search(query.startX, query.startY, query.goalX, query.goalY);
+			assertNotEquals(-1, goal);
+			assertEquals(search.path(goal).length + 1, query.optimalLength, 0);
+			assertEquals((int) query.optimalLength / 4, query.bucket);
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package edu.cwru.sepia.agent;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads and writes the text formats of the grid benchmarks of the Moving AI lab, so the
+ * searches can be run on many more maps than the SEPIA mazes.
+ *
+ * A .map file has a header of type, height and width lines and the line "map", then one
+ * line per row with one character per cell. '.' and 'G' are free ground and 'S' is swamp,
+ * which is walked like ground here. '@', 'O', 'T' and 'W' are out of bounds, trees and
+ * water, which all become obstacles.
+ *
+ * A .scen file starts with "version 1" followed by one query per line: bucket, map file,
+ * map width and height, start x and y, goal x and y and the optimal path length, separated
+ * by tabs. Coordinates count from the top left like the ones of SEPIA. The published
+ * scenarios measure lengths in octile distance and forbid cutting corners, while every step
+ * of this grid costs 1, so their optimal lengths only hold for scenarios written by
+ * MapGenerator.
+ */
+class MovingAiFormat {
+
+	/**
+	 * One query of a scenario file
+	 */
+	static class Query {
+
+		final int bucket;
+		final String map;
+		final int xExtent;
+		final int yExtent;
+		final int startX;
+		final int startY;
+		final int goalX;
+		final int goalY;
+		final double optimalLength;
+
+		Query(int bucket, String map, int xExtent, int yExtent, int startX, int startY, int goalX, int goalY, double optimalLength) {
+			this.bucket = bucket;
+			this.map = map;
+			this.xExtent = xExtent;
+			this.yExtent = yExtent;
+			this.startX = startX;
+			this.startY = startY;
+			this.goalX = goalX;
+			this.goalY = goalY;
+			this.optimalLength = optimalLength;
+		}
+	}
+
+	/**
+	 * Reads a .map file
+	 *
+	 * @param file the file to read
+	 * @return the obstacles of the map
+	 * @throws IOException if the file can't be read or is not a map
+	 */
+	public static ObstacleGrid readMap(File file) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.US_ASCII));
+		try {
+			int xExtent = -1;
+			int yExtent = -1;
+			String line;
+			while ((line = in.readLine()) != null && !line.trim().equals("map")) {
+				String[] fields = line.trim().split("\\s+");
+				if (fields[0].equals("height")) {
+					yExtent = headerValue(fields, file);
+				}
+				else if (fields[0].equals("width")) {
+					xExtent = headerValue(fields, file);
+				}
+			}
+			if (line == null || xExtent <= 0 || yExtent <= 0) {
+				throw new IOException(file + " has no height, width and map lines");
+			}
+
+			ObstacleGrid obstacles = new ObstacleGrid(xExtent, yExtent);
+			for (int y = 0; y < yExtent; y++) {
+				String row = in.readLine();
+				if (row == null || row.length() < xExtent) {
+					throw new IOException("Row " + y + " of " + file + " is missing or shorter than " + xExtent + " cells");
+				}
+				for (int x = 0; x < xExtent; x++) {
+					char cell = row.charAt(x);
+					if (cell == '@' || cell == 'O' || cell == 'T' || cell == 'W') {
+						obstacles.setBlocked(x, y, true);
+					}
+					else if (cell != '.' && cell != 'G' && cell != 'S') {
+						throw new IOException("Unexpected '" + cell + "' at (" + x + ", " + y + ") of " + file);
+					}
+				}
+			}
+			return obstacles;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes a .map file with '.' for free cells and '@' for obstacles
+	 *
+	 * @param obstacles the obstacles of the map
+	 * @param file the file to write
+	 * @throws IOException if the file can't be written
+	 */
+	public static void writeMap(ObstacleGrid obstacles, File file) throws IOException {
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.US_ASCII));
+		try {
+			out.write("type octile\nheight " + obstacles.yExtent + "\nwidth " + obstacles.xExtent + "\nmap\n");
+			char[] row = new char[obstacles.xExtent + 1];
+			row[obstacles.xExtent] = '\n';
+			for (int y = 0; y < obstacles.yExtent; y++) {
+				for (int x = 0; x < obstacles.xExtent; x++) {
+					row[x] = obstacles.isPassable(x, y) ? '.' : '@';
+				}
+				out.write(row);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads a .scen file
+	 *
+	 * @param file the file to read
+	 * @return the queries in the order of the file
+	 * @throws IOException if the file can't be read or a line is not a query
+	 */
+	public static List<Query> readScenario(File file) throws IOException {
+		List<Query> queries = new ArrayList<Query>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.US_ASCII));
+		try {
+			String line = in.readLine();
+			if (line == null || !line.trim().startsWith("version")) {
+				throw new IOException(file + " does not start with a version line");
+			}
+
+			int lineNumber = 1;
+			while ((line = in.readLine()) != null) {
+				lineNumber++;
+				if (line.trim().isEmpty()) {
+					continue;
+				}
+				String[] fields = line.trim().split("\t");
+				if (fields.length != 9) {
+					throw new IOException("Line " + lineNumber + " of " + file + " has " + fields.length + " fields, expected 9");
+				}
+				try {
+					queries.add(new Query(Integer.parseInt(fields[0]), fields[1], Integer.parseInt(fields[2]), Integer.parseInt(fields[3]),
+							Integer.parseInt(fields[4]), Integer.parseInt(fields[5]), Integer.parseInt(fields[6]), Integer.parseInt(fields[7]),
+							Double.parseDouble(fields[8])));
+				} catch (NumberFormatException e) {
+					throw new IOException("Expected numbers on line " + lineNumber + " of " + file, e);
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return queries;
+	}
+
+	/**
+	 * Writes a .scen file
+	 *
+	 * @param queries the queries to write
+	 * @param file the file to write
+	 * @throws IOException if the file can't be written
+	 */
+	public static void writeScenario(List<Query> queries, File file) throws IOException {
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.US_ASCII));
+		try {
+			out.write("version 1\n");
+			for (Query query : queries) {
+				out.write(String.format(Locale.ROOT, "%d\t%s\t%d\t%d\t%d\t%d\t%d\t%d\t%.8f\n", query.bucket, query.map, query.xExtent,
+						query.yExtent, query.startX, query.startY, query.goalX, query.goalY, query.optimalLength));
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static int headerValue(String[] fields, File file) throws IOException {
+		try {
+			return Integer.parseInt(fields[1]);
+		} catch (RuntimeException e) {
+			throw new IOException("Malformed " + fields[0] + " line in " + file, e);
+		}
+	}
+}
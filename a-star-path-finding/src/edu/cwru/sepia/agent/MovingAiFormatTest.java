@@ -0,0 +1,85 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MovingAiFormatTest {
+
+	@Test
+	public void testReadMap() throws IOException {
+		File file = File.createTempFile("grid", ".map");
+		try {
+			Files.write(file.toPath(), Arrays.asList("type octile", "height 3", "width 4", "map", ".@G.", "TS..", "..WO"), StandardCharsets.US_ASCII);
+			ObstacleGrid obstacles = MovingAiFormat.readMap(file);
+
+			assertTrue(obstacles.fits(4, 3));
+			assertArrayEquals(new int[] {1, 4, 10, 11}, obstacles.blockedCells());
+
+			Files.write(file.toPath(), Arrays.asList("type octile", "height 1", "width 2", "map", ".x"), StandardCharsets.US_ASCII);
+			try {
+				MovingAiFormat.readMap(file);
+				fail("Read a map with an unknown cell");
+			} catch (IOException e) {
+				assertTrue(e.getMessage().contains("(1, 0)"));
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testMapRoundTrip() throws IOException {
+		ObstacleGrid obstacles = new ObstacleGrid(70, 5);
+		obstacles.setBlocked(0, 0, true);
+		obstacles.setBlocked(64, 3, true);
+		obstacles.setBlocked(69, 4, true);
+
+		File file = File.createTempFile("grid", ".map");
+		try {
+			MovingAiFormat.writeMap(obstacles, file);
+			assertEquals(obstacles.fingerprint(), MovingAiFormat.readMap(file).fingerprint());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testScenarioRoundTrip() throws IOException {
+		List<MovingAiFormat.Query> queries = Arrays.asList(new MovingAiFormat.Query(0, "a.map", 8, 6, 1, 2, 3, 4, 2),
+				new MovingAiFormat.Query(3, "a.map", 8, 6, 0, 0, 7, 5, 12.24264069));
+
+		File file = File.createTempFile("grid", ".scen");
+		try {
+			MovingAiFormat.writeScenario(queries, file);
+			List<MovingAiFormat.Query> read = MovingAiFormat.readScenario(file);
+
+			assertEquals(2, read.size());
+			MovingAiFormat.Query query = read.get(1);
+			assertEquals(3, query.bucket);
+			assertEquals("a.map", query.map);
+			assertEquals(8, query.xExtent);
+			assertEquals(6, query.yExtent);
+			assertEquals(7, query.goalX);
+			assertEquals(5, query.goalY);
+			assertEquals(12.24264069, query.optimalLength, 1e-8);
+
+			Files.write(file.toPath(), Arrays.asList("version 1", "0\ta.map\t8\t6\t1\t2"), StandardCharsets.US_ASCII);
+			try {
+				MovingAiFormat.readScenario(file);
+				fail("Read a query with missing fields");
+			} catch (IOException e) {
+				assertTrue(e.getMessage().contains("Line 2"));
+			}
+		} finally {
+			file.delete();
+		}
+	}
+}
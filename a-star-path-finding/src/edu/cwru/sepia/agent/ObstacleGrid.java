@@ -0,0 +1,218 @@
+package edu.cwru.sepia.agent;
+
+import java.nio.LongBuffer;
+
+/**
+ * One bit per map cell that says whether the cell holds a static obstacle.
+ *
+ * The grid is built once per map and then kept up to date as obstacles appear or
+ * disappear, so the searches can test passability with a shift and a mask instead of
+ * rebuilding and probing a set of locations on every replan. Each row is stored in its own
+ * run of words with one blocked cell of padding on every side of the map, so the cells
+ * just outside the map read as obstacles like the ones inside it.
+ */
+class ObstacleGrid {
+
+	final int xExtent;
+	final int yExtent;
+
+	// Words per padded row, and the rows themselves with row y + 1 holding map row y
+	final int wordsPerRow;
+	final long[] rows;
+
+	private int blockedCount;
+	private int version;
+
+	// Fingerprint of the layout, recomputed on demand once the version has moved on
+	private long fingerprint;
+	private int fingerprintVersion = -1;
+
+	/**
+	 * Creates a grid with no obstacles inside the map
+	 *
+	 * @param xExtent Width of the map
+	 * @param yExtent Height of the map
+	 */
+	public ObstacleGrid(int xExtent, int yExtent) {
+		this.xExtent = xExtent;
+		this.yExtent = yExtent;
+
+		wordsPerRow = (xExtent + 2 + 63) >>> 6;
+		rows = new long[(yExtent + 2) * wordsPerRow];
+
+		// The padding ring: the rows above and below the map and the column at either side
+		for (int x = -1; x <= xExtent; x++) {
+			setBit(x, -1);
+			setBit(x, yExtent);
+		}
+		for (int y = 0; y < yExtent; y++) {
+			setBit(-1, y);
+			setBit(xExtent, y);
+		}
+	}
+
+	/**
+	 * @return a grid with the same obstacles that later changes to this one do not affect
+	 */
+	public ObstacleGrid copy() {
+		ObstacleGrid copy = new ObstacleGrid(xExtent, yExtent);
+		System.arraycopy(rows, 0, copy.rows, 0, rows.length);
+		copy.blockedCount = blockedCount;
+		return copy;
+	}
+
+	/**
+	 * @param xExtent Width of the map
+	 * @param yExtent Height of the map
+	 * @return true if this grid was made for a map with the given dimensions
+	 */
+	public boolean fits(int xExtent, int yExtent) {
+		return this.xExtent == xExtent && this.yExtent == yExtent;
+	}
+
+	/**
+	 * @param x X coordinate of the cell
+	 * @param y Y coordinate of the cell
+	 * @return true if the cell is inside the map and holds no obstacle
+	 */
+	public boolean isPassable(int x, int y) {
+		if (x < 0 || y < 0 || x >= xExtent || y >= yExtent) {
+			return false;
+		}
+		int column = x + 1;
+		return (rows[(y + 1) * wordsPerRow + (column >>> 6)] & (1L << column)) == 0;
+	}
+
+	/**
+	 * Reads which neighbors of a cell are free out of the three padded rows around it, one
+	 * word read and shift per row. Bit d of the mask is set when the neighbor in direction d of
+	 * GridSearch.DX and DY is inside the map and holds no obstacle, so a search can walk the
+	 * set bits instead of testing the eight neighbors one at a time.
+	 *
+	 * @param x X coordinate of a cell inside the map
+	 * @param y Y coordinate of a cell inside the map
+	 * @return the mask of free neighbors, in the low 8 bits
+	 */
+	public int neighborMask(int x, int y) {
+		// Padded columns x to x + 2 hold map columns x - 1 to x + 1, padded row y holds map row y - 1
+		int word = y * wordsPerRow + (x >>> 6);
+		int above = window(word, x);
+		int middle = window(word + wordsPerRow, x);
+		int below = window(word + 2 * wordsPerRow, x);
+
+		// Directions 5, 6, 7 run west to east above the cell, 3, 2, 1 below it, and 4 and 0 beside it
+		int blocked = above << 5
+				| (middle & 1) << 4 | middle >>> 2
+				| (below & 1) << 3 | (below & 2) << 1 | (below & 4) >>> 1;
+		return ~blocked & 0xFF;
+	}
+
+	/**
+	 * Adds or removes the obstacle on a cell. Out of bounds cells are ignored.
+	 *
+	 * @param x X coordinate of the cell
+	 * @param y Y coordinate of the cell
+	 * @param isBlocked the new state of the cell
+	 * @return true if the state of the cell changed
+	 */
+	public boolean setBlocked(int x, int y, boolean isBlocked) {
+		if (x < 0 || y < 0 || x >= xExtent || y >= yExtent || isPassable(x, y) != isBlocked) {
+			return false;
+		}
+
+		int column = x + 1;
+		int word = (y + 1) * wordsPerRow + (column >>> 6);
+		if (isBlocked) {
+			rows[word] |= 1L << column;
+			blockedCount++;
+		}
+		else {
+			rows[word] &= ~(1L << column);
+			blockedCount--;
+		}
+		version++;
+		return true;
+	}
+
+	/**
+	 * @return the number of blocked cells inside the map
+	 */
+	public int blockedCount() {
+		return blockedCount;
+	}
+
+	/**
+	 * @return a counter that changes every time a cell is blocked or freed
+	 */
+	public int version() {
+		return version;
+	}
+
+	/**
+	 * Hashes the dimensions and every obstacle into 64 bits. Two grids with the same layout
+	 * always have the same fingerprint, so it can identify a layout across runs.
+	 *
+	 * @return the fingerprint of the current layout
+	 */
+	public long fingerprint() {
+		if (fingerprintVersion != version) {
+			long hash = ((long) xExtent << 32) | yExtent;
+			for (long word : rows) {
+				hash = Long.rotateLeft((hash ^ word) * 0x9E3779B97F4A7C15L, 29);
+			}
+			fingerprint = hash;
+			fingerprintVersion = version;
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * @return the cell index y * xExtent + x of every blocked cell inside the map
+	 */
+	public int[] blockedCells() {
+		int[] cells = new int[blockedCount];
+		int count = 0;
+		for (int y = 0; y < yExtent; y++) {
+			for (int x = 0; x < xExtent; x++) {
+				if (!isPassable(x, y)) {
+					cells[count++] = y * xExtent + x;
+				}
+			}
+		}
+		return cells;
+	}
+
+	/**
+	 * Replaces every cell with the rows of another grid of the same size, padding included,
+	 * as they are laid out in rows
+	 *
+	 * @param source the words of the rows, as many as rows holds are read
+	 */
+	void readRows(LongBuffer source) {
+		source.get(rows);
+
+		// The padding ring is counted in the bits but not in the blocked cells
+		int bits = 0;
+		for (long word : rows) {
+			bits += Long.bitCount(word);
+		}
+		blockedCount = bits - 2 * (xExtent + 2) - 2 * yExtent;
+		version++;
+	}
+
+	/**
+	 * @return the three bits of a padded row from a column on, the lowest column first
+	 */
+	private int window(int word, int column) {
+		long bits = rows[word] >>> column;
+		if ((column & 63) > 61) {
+			bits |= rows[word + 1] << -column;
+		}
+		return (int) bits & 7;
+	}
+
+	private void setBit(int x, int y) {
+		int column = x + 1;
+		rows[(y + 1) * wordsPerRow + (column >>> 6)] |= 1L << column;
+	}
+}
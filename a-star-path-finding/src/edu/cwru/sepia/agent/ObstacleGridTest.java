@@ -0,0 +1,118 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ObstacleGridTest {
+
+	@Test
+	public void testSetBlocked() {
+		ObstacleGrid grid = new ObstacleGrid(5, 3);
+		assertTrue(grid.isPassable(2, 1));
+		assertEquals(0, grid.blockedCount());
+
+		assertTrue(grid.setBlocked(2, 1, true));
+		assertFalse(grid.setBlocked(2, 1, true));
+		assertFalse(grid.isPassable(2, 1));
+		assertEquals(1, grid.blockedCount());
+		assertArrayEquals(new int[] {7}, grid.blockedCells());
+
+		int version = grid.version();
+		assertTrue(grid.setBlocked(2, 1, false));
+		assertTrue(grid.isPassable(2, 1));
+		assertNotEquals(version, grid.version());
+		assertEquals(0, grid.blockedCount());
+	}
+
+	@Test
+	public void testOutsideMapIsBlocked() {
+		ObstacleGrid grid = new ObstacleGrid(5, 3);
+
+		assertFalse(grid.isPassable(-1, 0));
+		assertFalse(grid.isPassable(5, 0));
+		assertFalse(grid.isPassable(0, -1));
+		assertFalse(grid.isPassable(0, 3));
+		assertFalse(grid.setBlocked(5, 0, true));
+		assertEquals(0, grid.blockedCount());
+	}
+
+	@Test
+	public void testRowsWiderThanOneWord() {
+		ObstacleGrid grid = new ObstacleGrid(130, 2);
+		grid.setBlocked(63, 1, true);
+		grid.setBlocked(64, 1, true);
+		grid.setBlocked(129, 0, true);
+
+		assertFalse(grid.isPassable(63, 1));
+		assertFalse(grid.isPassable(64, 1));
+		assertTrue(grid.isPassable(62, 1));
+		assertTrue(grid.isPassable(63, 0));
+		assertFalse(grid.isPassable(129, 0));
+		assertArrayEquals(new int[] {129, 193, 194}, grid.blockedCells());
+	}
+
+	@Test
+	public void testFingerprint() {
+		ObstacleGrid grid = new ObstacleGrid(8, 8);
+		ObstacleGrid other = new ObstacleGrid(8, 8);
+		assertEquals(grid.fingerprint(), other.fingerprint());
+		assertNotEquals(grid.fingerprint(), new ObstacleGrid(8, 9).fingerprint());
+
+		long empty = grid.fingerprint();
+		grid.setBlocked(3, 4, true);
+		assertNotEquals(empty, grid.fingerprint());
+
+		other.setBlocked(3, 4, true);
+		assertEquals(grid.fingerprint(), other.fingerprint());
+
+		grid.setBlocked(3, 4, false);
+		assertEquals(empty, grid.fingerprint());
+	}
+
+	@Test
+	public void testNeighborMask() {
+		/*
+		 * . x .
+		 * . c x
+		 * x . .
+		 */
+		ObstacleGrid grid = new ObstacleGrid(3, 3);
+		grid.setBlocked(1, 0, true);
+		grid.setBlocked(2, 1, true);
+		grid.setBlocked(0, 2, true);
+
+		// Free are south east (1), south (2), west (4), north west (5) and north east (7)
+		assertEquals(0xB6, grid.neighborMask(1, 1));
+
+		// Cells outside the map count as blocked
+		assertEquals(0x01, new ObstacleGrid(2, 1).neighborMask(0, 0));
+	}
+
+	@Test
+	public void testNeighborMaskMatchesIsPassable() {
+		// 130 columns put the windows of some cells across two words of a row
+		Random random = new Random(3);
+		ObstacleGrid grid = new ObstacleGrid(130, 6);
+		for (int cell = 0; cell < 130 * 6; cell++) {
+			if (random.nextInt(3) == 0) {
+				grid.setBlocked(cell % 130, cell / 130, true);
+			}
+		}
+
+		for (int y = 0; y < 6; y++) {
+			for (int x = 0; x < 130; x++) {
+				int expected = 0;
+				for (int direction = 0; direction < 8; direction++) {
+					if (grid.isPassable(x + GridSearch.DX[direction], y + GridSearch.DY[direction])) {
+						expected |= 1 << direction;
+					}
+				}
+				assertEquals("(" + x + ", " + y + ")", expected, grid.neighborMask(x, y));
+			}
+		}
+	}
+
+}
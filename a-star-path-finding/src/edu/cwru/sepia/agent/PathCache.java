@@ -0,0 +1,203 @@
+package edu.cwru.sepia.agent;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of search results with least recently used eviction.
+ *
+ * A result is stored under everything that decides it: the search mode, the start and goal
+ * cells, the fingerprint of the obstacle layout and the cell of the unit in the way. The
+ * same query on the same layout gets the same path back without a search, whether it comes
+ * from a later episode or from replanning back to a position that was planned from before.
+ * The cache can be written to and read from a stream so it survives between runs. The mode
+ * is stored by name, so adding or reordering search modes does not give saved paths to
+ * another mode.
+ */
+class PathCache {
+
+	/**
+	 * Stored for queries that have no path, so they are not searched again either
+	 */
+	static final int[] NO_PATH = new int[0];
+
+	// Marks the start of the stream format, followed by its version
+	private static final int MAGIC = 0x50434143;
+	private static final int FORMAT_VERSION = 2;
+
+	/**
+	 * The inputs of one search
+	 */
+	static final class Key {
+		final String mode;
+		final int start;
+		final int goal;
+		final int blocker;
+		final long fingerprint;
+
+		/**
+		 * @param mode the name of the search that made the path
+		 * @param start the cell index of the start
+		 * @param goal the cell index of the goal
+		 * @param blocker the cell index of the unit in the way, or -1 if there is none
+		 * @param fingerprint the fingerprint of the obstacle layout
+		 */
+		Key(String mode, int start, int goal, int blocker, long fingerprint) {
+			this.mode = mode;
+			this.start = start;
+			this.goal = goal;
+			this.blocker = blocker;
+			this.fingerprint = fingerprint;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return mode.equals(other.mode) && start == other.start && goal == other.goal && blocker == other.blocker
+					&& fingerprint == other.fingerprint;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = mode.hashCode();
+			hash = 31 * hash + start;
+			hash = 31 * hash + goal;
+			hash = 31 * hash + blocker;
+			return 31 * hash + (int) (fingerprint ^ (fingerprint >>> 32));
+		}
+	}
+
+	private final int capacity;
+	private final LinkedHashMap<Key, int[]> entries;
+	private long hits;
+	private long misses;
+
+	/**
+	 * @param capacity the most paths kept, at least 1
+	 */
+	public PathCache(final int capacity) {
+		this.capacity = capacity;
+
+		// Access order makes the first entry the least recently used one
+		entries = new LinkedHashMap<Key, int[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, int[]> eldest) {
+				return size() > PathCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * Looks up a query and counts it as a hit or a miss
+	 *
+	 * @param key the query
+	 * @return the cells of the path in the order they are walked, NO_PATH if the query is known
+	 * to have no path, or null if the query is not cached
+	 */
+	public int[] get(Key key) {
+		int[] cells = entries.get(key);
+		if (cells == null) {
+			misses++;
+		}
+		else {
+			hits++;
+		}
+		return cells;
+	}
+
+	/**
+	 * Stores the result of a query, evicting the least recently used one if the cache is full
+	 *
+	 * @param key the query
+	 * @param cells the cells of the path in the order they are walked, or NO_PATH. The array
+	 * must not be changed afterwards.
+	 */
+	public void put(Key key, int[] cells) {
+		entries.put(key, cells);
+	}
+
+	/**
+	 * @return the number of paths in the cache
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the most paths kept
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the number of lookups that found a path
+	 */
+	public long hits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of lookups that found nothing
+	 */
+	public long misses() {
+		return misses;
+	}
+
+	/**
+	 * Writes every entry, least recently used first so reading them back keeps the order
+	 *
+	 * @param out the stream to write to
+	 * @throws IOException if the stream fails
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		out.writeInt(entries.size());
+		for (Map.Entry<Key, int[]> entry : entries.entrySet()) {
+			Key key = entry.getKey();
+			out.writeUTF(key.mode);
+			out.writeInt(key.start);
+			out.writeInt(key.goal);
+			out.writeInt(key.blocker);
+			out.writeLong(key.fingerprint);
+
+			int[] cells = entry.getValue();
+			out.writeInt(cells == NO_PATH ? -1 : cells.length);
+			for (int cell : cells) {
+				out.writeInt(cell);
+			}
+		}
+	}
+
+	/**
+	 * Adds the entries written by write(). Entries beyond the capacity evict the oldest ones.
+	 *
+	 * @param in the stream to read from
+	 * @throws IOException if the stream fails or does not hold a path cache
+	 */
+	public void read(DataInput in) throws IOException {
+		if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+			throw new IOException("Not a path cache or an unsupported version");
+		}
+
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			Key key = new Key(in.readUTF(), in.readInt(), in.readInt(), in.readInt(), in.readLong());
+			int length = in.readInt();
+			int[] cells = length == -1 ? NO_PATH : new int[length];
+			for (int j = 0; j < cells.length; j++) {
+				cells[j] = in.readInt();
+			}
+			entries.put(key, cells);
+		}
+	}
+}
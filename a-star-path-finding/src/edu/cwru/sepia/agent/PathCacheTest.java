@@ -0,0 +1,72 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class PathCacheTest {
+
+	private static PathCache.Key key(int start) {
+		return new PathCache.Key("ASTAR", start, 99, -1, 12345L);
+	}
+
+	@Test
+	public void testHitsAndMisses() {
+		PathCache cache = new PathCache(4);
+		assertNull(cache.get(key(1)));
+
+		cache.put(key(1), new int[] {2, 3});
+		assertArrayEquals(new int[] {2, 3}, cache.get(key(1)));
+		assertNull(cache.get(new PathCache.Key("ASTAR", 1, 99, 7, 12345L)));
+		assertNull(cache.get(new PathCache.Key("ASTAR", 1, 99, -1, 54321L)));
+
+		assertEquals(1, cache.hits());
+		assertEquals(3, cache.misses());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsEvicted() {
+		PathCache cache = new PathCache(2);
+		cache.put(key(1), new int[] {1});
+		cache.put(key(2), new int[] {2});
+
+		// Using the first entry makes the second one the oldest
+		cache.get(key(1));
+		cache.put(key(3), new int[] {3});
+
+		assertEquals(2, cache.size());
+		assertNotNull(cache.get(key(1)));
+		assertNull(cache.get(key(2)));
+		assertNotNull(cache.get(key(3)));
+	}
+
+	@Test
+	public void testWriteAndRead() throws IOException {
+		PathCache cache = new PathCache(4);
+		cache.put(key(1), new int[] {5, 6, 7});
+		cache.put(key(2), PathCache.NO_PATH);
+		cache.put(key(3), new int[0]);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		cache.write(new DataOutputStream(bytes));
+
+		PathCache copy = new PathCache(4);
+		copy.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+		assertEquals(3, copy.size());
+		assertArrayEquals(new int[] {5, 6, 7}, copy.get(key(1)));
+		assertSame(PathCache.NO_PATH, copy.get(key(2)));
+		assertNotSame(PathCache.NO_PATH, copy.get(key(3)));
+		assertEquals(0, copy.get(key(3)).length);
+
+		// Paths are kept by the name of their mode, not its position among the modes
+		assertNull(copy.get(new PathCache.Key("JPS", 1, 99, -1, 12345L)));
+	}
+
+}
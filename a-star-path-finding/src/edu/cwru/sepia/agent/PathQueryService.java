@@ -0,0 +1,123 @@
+package edu.cwru.sepia.agent;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Answers many path queries on one obstacle layout at once.
+ *
+ * The service keeps its own copy of the layout, which is only ever read, so any number of
+ * threads can search it together. Each thread of the pool gets its own search arrays the
+ * first time it runs a query and keeps them for every later one, so a batch allocates
+ * nothing per query but the paths it returns. A batch is split in halves until the pieces
+ * are small enough to run on one thread, and the pool's work stealing spreads the pieces
+ * over its threads.
+ */
+class PathQueryService {
+
+	// Number of queries below which a piece of a batch is not split further
+	static final int SEQUENTIAL_THRESHOLD = 8;
+
+	final ObstacleGrid obstacles;
+
+	private final ForkJoinPool pool;
+	private final ThreadLocal<GridSearch> searches;
+
+	/**
+	 * Answers the queries on the common pool with A*
+	 *
+	 * @param layout the obstacles, copied so later changes to them do not reach the service
+	 */
+	public PathQueryService(ObstacleGrid layout) {
+		this(layout, ForkJoinPool.commonPool(), false);
+	}
+
+	/**
+	 * @param layout the obstacles, copied so later changes to them do not reach the service
+	 * @param pool the threads that run the batches
+	 * @param useJumpPoints true to search with JPS instead of A*
+	 */
+	public PathQueryService(ObstacleGrid layout, ForkJoinPool pool, boolean useJumpPoints) {
+		this.obstacles = layout.copy();
+		this.pool = pool;
+		this.searches = ThreadLocal.withInitial(() -> useJumpPoints ? new JumpPointSearch(obstacles) : new GridSearch(obstacles));
+	}
+
+	/**
+	 * Finds the paths of a batch of queries in parallel
+	 *
+	 * @param starts the cell index of the start of each query
+	 * @param goals the cell index of the goal of each query
+	 * @param blockedCells cell indices that no query may enter, on top of the obstacles
+	 * @return the path of each query in the same order, as for findPath()
+	 */
+	public int[][] findPaths(int[] starts, int[] goals, int... blockedCells) {
+		if (starts.length != goals.length) {
+			throw new IllegalArgumentException("Got " + starts.length + " starts for " + goals.length + " goals");
+		}
+
+		int[][] paths = new int[starts.length][];
+		pool.invoke(new Batch(starts, goals, blockedCells, paths, 0, starts.length));
+		return paths;
+	}
+
+	/**
+	 * Finds one path on the calling thread
+	 *
+	 * @param start the cell index of the start
+	 * @param goal the cell index of the goal
+	 * @param blockedCells cell indices the path may not enter, on top of the obstacles
+	 * @return the cell indices in the order they are walked, without the start and the goal,
+	 * or null if the goal can't be reached or is the start
+	 */
+	public int[] findPath(int start, int goal, int... blockedCells) {
+		GridSearch search = searches.get();
+		int xExtent = obstacles.xExtent;
+
+		search.beginSearch();
+		for (int cell : blockedCells) {
+			search.block(cell % xExtent, cell / xExtent);
+		}
+
+		int goalIndex = search.search(start % xExtent, start / xExtent, goal % xExtent, goal / xExtent);
+		return goalIndex == -1 ? null : search.path(goalIndex);
+	}
+
+	/**
+	 * The queries from begin up to end of a batch
+	 */
+	private class Batch extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int[] starts;
+		private final int[] goals;
+		private final int[] blockedCells;
+		private final int[][] paths;
+		private final int begin;
+		private final int end;
+
+		Batch(int[] starts, int[] goals, int[] blockedCells, int[][] paths, int begin, int end) {
+			this.starts = starts;
+			this.goals = goals;
+			this.blockedCells = blockedCells;
+			this.paths = paths;
+			this.begin = begin;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - begin <= SEQUENTIAL_THRESHOLD) {
+				for (int i = begin; i < end; i++) {
+					paths[i] = findPath(starts[i], goals[i], blockedCells);
+				}
+				return;
+			}
+
+			int middle = (begin + end) >>> 1;
+			invokeAll(new Batch(starts, goals, blockedCells, paths, begin, middle),
+					new Batch(starts, goals, blockedCells, paths, middle, end));
+		}
+	}
+}
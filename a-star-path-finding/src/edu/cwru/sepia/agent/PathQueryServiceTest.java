@@ -0,0 +1,91 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class PathQueryServiceTest {
+
+	private static final String[] MAZE = {
+		"....x.....",
+		".xx.x.xxx.",
+		".x..x...x.",
+		".x.xxxx.x.",
+		".x......x.",
+		".xxxxxxxx.",
+		"..........",
+	};
+
+	private static void assertWalkable(ObstacleGrid grid, int start, int goal, int[] cells) {
+		int previous = start;
+		for (int cell : cells) {
+			assertTrue(grid.isPassable(cell % 10, cell / 10));
+			assertTrue(Math.abs(cell % 10 - previous % 10) <= 1 && Math.abs(cell / 10 - previous / 10) <= 1);
+			previous = cell;
+		}
+		assertTrue(Math.abs(goal % 10 - previous % 10) <= 1 && Math.abs(goal / 10 - previous / 10) <= 1);
+	}
+
+	@Test
+	public void testBatchMatchesSingleSearches() {
+		ObstacleGrid grid = TestGrids.grid(MAZE);
+		GridSearch search = new GridSearch(grid);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		Random random = new Random(3);
+
+		int[] starts = new int[500];
+		int[] goals = new int[500];
+		for (int i = 0; i < starts.length; i++) {
+			do {
+				starts[i] = random.nextInt(70);
+				goals[i] = random.nextInt(70);
+			} while (!grid.isPassable(starts[i] % 10, starts[i] / 10) || !grid.isPassable(goals[i] % 10, goals[i] / 10));
+		}
+
+		for (boolean useJumpPoints : new boolean[] {false, true}) {
+			int[][] paths = new PathQueryService(grid, pool, useJumpPoints).findPaths(starts, goals);
+			for (int i = 0; i < starts.length; i++) {
+				search.beginSearch();
+				int reached = search.search(starts[i] % 10, starts[i] / 10, goals[i] % 10, goals[i] / 10);
+				if (reached == -1 || starts[i] == goals[i]) {
+					assertNull(paths[i]);
+					continue;
+				}
+
+				assertEquals(search.path(reached).length, paths[i].length);
+				assertWalkable(grid, starts[i], goals[i], paths[i]);
+			}
+		}
+		pool.shutdown();
+	}
+
+	@Test
+	public void testBlockedCells() {
+		PathQueryService service = new PathQueryService(TestGrids.grid(new String[] {
+			"..x..",
+			"..x..",
+			".....",
+			"..x..",
+		}));
+
+		// The only way through the wall is (2, 2)
+		assertArrayEquals(new int[] {6, 12, 8}, service.findPath(0, 4));
+		assertNull(service.findPath(0, 4, 12));
+		int[][] paths = service.findPaths(new int[] {0, 5, 3}, new int[] {4, 9, 4}, 12);
+		assertNull(paths[0]);
+		assertNull(paths[1]);
+		assertArrayEquals(new int[0], paths[2]);
+	}
+
+	@Test
+	public void testLayoutIsCopied() {
+		ObstacleGrid grid = TestGrids.grid(MAZE);
+		PathQueryService service = new PathQueryService(grid);
+
+		grid.setBlocked(9, 6, true);
+		assertNotNull(service.findPath(0, 69));
+	}
+}
@@ -0,0 +1,239 @@
+package edu.cwru.sepia.agent;
+
+import java.util.Arrays;
+
+/**
+ * Real-Time Adaptive A* (RTAA*) on an 8-connected grid where every step costs 1.
+ *
+ * Every call to step() runs A* from the current cell for at most a fixed number of
+ * expansions and returns only the first move toward the most promising cell on its
+ * frontier. The work per call is bounded by the lookahead, not by the size of the map or
+ * the length of the path. Before returning, every expanded cell learns a higher heuristic
+ * value: the f-value of that frontier cell minus its own g-value. The learned values are
+ * kept in a HeuristicTable between calls, so a unit that walks into a dead end raises the
+ * values there until it walks out, and repeated trips head straight to the goal.
+ *
+ * Cells blocked for a step, like the enemy footman's, can raise what a step learns well past
+ * the distance around the static obstacles alone. Those values are kept apart from the
+ * table and only used while the same cells are blocked, so the table never overestimates
+ * once the blocker has moved and stays valid across saves. A step learns apart whenever its
+ * lookahead ran into a blocked cell or leaned on a value learned apart.
+ *
+ * See Koenig and Likhachev, "Real-Time Adaptive A*" (AAMAS 2006).
+ */
+class RealTimeSearch {
+
+	final int xExtent;
+	final int yExtent;
+	final ObstacleGrid obstacles;
+	final int lookahead;
+	final HeuristicTable learned;
+
+	private final float[] g;
+	private final int[] parent;
+	private final int[] seen;
+	private final int[] closed;
+	private final int[] closedList;
+	private final long[] blocked;
+	private final IndexedMinHeap openList;
+
+	// Values learned around the cells blocked for a step, valid while blockerEpochs holds blockerEpoch
+	private final float[] blockerLearned;
+	private final int[] blockerEpochs;
+	private final long[] previousBlocked;
+	private int blockerEpoch = 1;
+	private boolean isDetour;
+
+	private int query;
+	private int goalX;
+	private int goalY;
+	private int lastExpansions;
+
+	/**
+	 * Allocates the search arrays for the map of an obstacle grid
+	 *
+	 * @param obstacles the static obstacles, read by every step
+	 * @param lookahead the most cells expanded per step, at least 1
+	 * @param learned the learned values, which are kept if they match the layout and goal
+	 */
+	public RealTimeSearch(ObstacleGrid obstacles, int lookahead, HeuristicTable learned) {
+		this.obstacles = obstacles;
+		this.xExtent = obstacles.xExtent;
+		this.yExtent = obstacles.yExtent;
+		this.lookahead = Math.max(1, lookahead);
+		this.learned = learned;
+
+		int size = xExtent * yExtent;
+		g = new float[size];
+		parent = new int[size];
+		seen = new int[size];
+		closed = new int[size];
+		closedList = new int[this.lookahead];
+		blocked = new long[(size + 63) >>> 6];
+		openList = new IndexedMinHeap(size);
+		blockerLearned = new float[size];
+		blockerEpochs = new int[size];
+		previousBlocked = new long[blocked.length];
+	}
+
+	/**
+	 * Forgets the cells blocked for the previous step. Block any cells that are impassable
+	 * besides the static obstacles and then call step().
+	 */
+	public void beginStep() {
+		Arrays.fill(blocked, 0);
+		openList.clear();
+		query++;
+		isDetour = false;
+	}
+
+	/**
+	 * Marks a cell as impassable for the current step. Out of bounds cells are ignored.
+	 *
+	 * @param x X coordinate of the cell
+	 * @param y Y coordinate of the cell
+	 */
+	public void block(int x, int y) {
+		if (x >= 0 && y >= 0 && x < xExtent && y < yExtent) {
+			int cell = y * xExtent + x;
+			blocked[cell >>> 6] |= 1L << cell;
+		}
+	}
+
+	/**
+	 * Searches ahead from the start, updates the learned values of the expanded cells and
+	 * picks the move to make
+	 *
+	 * @param startX X coordinate of the start
+	 * @param startY Y coordinate of the start
+	 * @param goalX X coordinate of the goal
+	 * @param goalY Y coordinate of the goal
+	 * @return the cell index to move to, which is the goal itself once the start is next to
+	 * it, or -1 if the goal cannot be reached. When the goal is walled off in a region larger
+	 * than the lookahead, that is only noticed once the learned values have grown past the
+	 * number of free cells.
+	 */
+	public int step(int startX, int startY, int goalX, int goalY) {
+		int start = startY * xExtent + startX;
+		int goal = goalY * xExtent + goalX;
+		this.goalX = goalX;
+		this.goalY = goalY;
+
+		if (!learned.matches(obstacles, goal)) {
+			learned.reset(obstacles, goal);
+			blockerEpoch++;
+		}
+
+		// What was learned around other blocked cells no longer holds
+		if (!Arrays.equals(blocked, previousBlocked)) {
+			System.arraycopy(blocked, 0, previousBlocked, 0, blocked.length);
+			blockerEpoch++;
+		}
+
+		g[start] = 0;
+		parent[start] = -1;
+		seen[start] = query;
+		openList.insert(start, heuristic(start));
+
+		int closedCount = 0;
+		while (!openList.isEmpty() && openList.peek() != goal && closedCount < lookahead) {
+			int cell = openList.poll();
+			closed[cell] = query;
+			closedList[closedCount++] = cell;
+			expand(cell);
+		}
+		lastExpansions = closedCount;
+
+		if (openList.isEmpty()) {
+			return -1;
+		}
+
+		int frontier = openList.peek();
+		float bound = (float) openList.peekKey();
+
+		// No path visits more cells than the map has free ones, so the goal is out of reach
+		if (bound > xExtent * yExtent - obstacles.blockedCount()) {
+			return -1;
+		}
+
+		// Every expanded cell is at least as far from the goal as the path through the best frontier cell
+		for (int i = 0; i < closedCount; i++) {
+			int cell = closedList[i];
+			if (isDetour) {
+				blockerLearned[cell] = bound - g[cell];
+				blockerEpochs[cell] = blockerEpoch;
+			}
+			else {
+				learned.set(cell, bound - g[cell]);
+			}
+		}
+
+		int next = frontier;
+		while (parent[next] != start) {
+			next = parent[next];
+		}
+		return next;
+	}
+
+	/**
+	 * @return the number of cells expanded by the last step
+	 */
+	public int lastExpansions() {
+		return lastExpansions;
+	}
+
+	/**
+	 * @return the counters of the open list, which add up over steps until reset
+	 */
+	public SearchCounters counters() {
+		return openList.counters;
+	}
+
+	private void expand(int cell) {
+		int x = cell % xExtent;
+		int y = cell / xExtent;
+
+		for (int free = obstacles.neighborMask(x, y); free != 0; free &= free - 1) {
+			int direction = Integer.numberOfTrailingZeros(free);
+			int neighborX = x + GridSearch.DX[direction];
+			int neighborY = y + GridSearch.DY[direction];
+			int neighbor = neighborY * xExtent + neighborX;
+			if ((blocked[neighbor >>> 6] & (1L << neighbor)) != 0) {
+				isDetour = true;
+				continue;
+			}
+			if (closed[neighbor] == query) {
+				continue;
+			}
+
+			float cost = g[cell] + 1;
+			if (seen[neighbor] != query) {
+				seen[neighbor] = query;
+				g[neighbor] = cost;
+				parent[neighbor] = cell;
+				openList.insert(neighbor, cost + heuristic(neighbor));
+			}
+			else if (cost < g[neighbor]) {
+				g[neighbor] = cost;
+				parent[neighbor] = cell;
+				openList.decreaseKey(neighbor, cost + heuristic(neighbor));
+			}
+		}
+	}
+
+	/**
+	 * @param cell a cell index
+	 * @return the largest of the learned value of the cell, the one learned around the cells
+	 * blocked now and its Chebyshev distance to the goal
+	 */
+	private float heuristic(int cell) {
+		int xDistance = Math.abs(cell % xExtent - goalX);
+		int yDistance = Math.abs(cell / xExtent - goalY);
+		float distance = Math.max(xDistance > yDistance ? xDistance : yDistance, learned.get(cell));
+		if (blockerEpochs[cell] == blockerEpoch && blockerLearned[cell] > distance) {
+			isDetour = true;
+			return blockerLearned[cell];
+		}
+		return distance;
+	}
+}
@@ -0,0 +1,155 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class RealTimeSearchTest {
+
+	/*
+	 * A dead end that opens toward the goal, so a short lookahead walks into it first
+	 */
+	private static final String[] DEAD_END = {
+		"..........",
+		".xxxxxxxx.",
+		"........x.",
+		"F.......xH",
+		"........x.",
+		".xxxxxxxx.",
+		"..........",
+	};
+
+	/**
+	 * Follows the moves of the search from F until it is next to H
+	 *
+	 * @return the number of moves, or -1 if it gave up
+	 */
+	private static int walk(RealTimeSearch search, int maxMoves) {
+		int x = 0;
+		int y = 3;
+		for (int moves = 0; moves < maxMoves; moves++) {
+			search.beginStep();
+			int next = search.step(x, y, 9, 3);
+			if (next == -1) {
+				return -1;
+			}
+			if (next == 3 * 10 + 9) {
+				return moves;
+			}
+
+			assertTrue(Math.abs(next % 10 - x) <= 1 && Math.abs(next / 10 - y) <= 1);
+			x = next % 10;
+			y = next / 10;
+		}
+		return -1;
+	}
+
+	@Test
+	public void testEscapesDeadEnd() {
+		ObstacleGrid grid = TestGrids.grid(DEAD_END);
+		RealTimeSearch search = new RealTimeSearch(grid, 4, new HeuristicTable());
+
+		int moves = walk(search, 200);
+		assertTrue(moves >= 10);
+		assertTrue(search.learned.learnedCount() > 0);
+	}
+
+	@Test
+	public void testRepeatedTripsImprove() {
+		ObstacleGrid grid = TestGrids.grid(DEAD_END);
+		RealTimeSearch search = new RealTimeSearch(grid, 4, new HeuristicTable());
+
+		int first = walk(search, 200);
+		int later = first;
+		for (int trip = 0; trip < 20; trip++) {
+			later = walk(search, 200);
+		}
+		assertTrue(later < first);
+
+		// The shortest walk from F around the wall to a cell next to H
+		assertEquals(12, later);
+		assertEquals(12, walk(new RealTimeSearch(grid, 1000, new HeuristicTable()), 200));
+	}
+
+	@Test
+	public void testLookaheadBoundsExpansions() {
+		RealTimeSearch search = new RealTimeSearch(TestGrids.grid(DEAD_END), 3, new HeuristicTable());
+		search.beginStep();
+		search.step(0, 3, 9, 3);
+		assertEquals(3, search.lastExpansions());
+	}
+
+	@Test
+	public void testUnreachableGoal() {
+		ObstacleGrid grid = TestGrids.grid(new String[] {
+			"F.x..",
+			"..x..",
+			"xxx.H",
+		});
+		RealTimeSearch search = new RealTimeSearch(grid, 100, new HeuristicTable());
+		search.beginStep();
+		assertEquals(-1, search.step(0, 0, 4, 2));
+
+		// With a short lookahead the learned values have to grow first
+		search = new RealTimeSearch(grid, 1, new HeuristicTable());
+		int x = 0;
+		int y = 0;
+		for (int moves = 0; moves < 1000; moves++) {
+			search.beginStep();
+			int next = search.step(x, y, 4, 2);
+			if (next == -1) {
+				return;
+			}
+			x = next % 5;
+			y = next / 5;
+		}
+		fail("Kept wandering without noticing the goal is walled off");
+	}
+
+	@Test
+	public void testBlockerDoesNotRaiseTable() {
+		/*
+		 * The enemy on (3, 2) makes the walk from F along the bottom row go over the wall
+		 */
+		ObstacleGrid grid = TestGrids.grid(new String[] {
+			".......",
+			".xxxxx.",
+			"F.....H",
+		});
+		HeuristicTable table = new HeuristicTable();
+		RealTimeSearch search = new RealTimeSearch(grid, 100, table);
+		search.beginStep();
+		search.block(3, 2);
+		assertEquals(1 * 7 + 0, search.step(0, 2, 6, 2));
+		assertEquals(0, table.learnedCount());
+
+		// Once it has moved nothing learned around it is left, and the bottom row is taken again
+		search.beginStep();
+		assertEquals(2 * 7 + 1, search.step(0, 2, 6, 2));
+		assertEquals(6, table.get(2 * 7 + 0), 0);
+	}
+
+	@Test
+	public void testTableIsResetForNewLayout() throws IOException {
+		ObstacleGrid grid = TestGrids.grid(DEAD_END);
+		HeuristicTable table = new HeuristicTable();
+		walk(new RealTimeSearch(grid, 4, table), 200);
+		int learned = table.learnedCount();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		table.write(new DataOutputStream(bytes));
+		HeuristicTable copy = new HeuristicTable();
+		copy.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		assertTrue(copy.matches(grid, 3 * 10 + 9));
+		assertEquals(learned, copy.learnedCount());
+
+		grid.setBlocked(8, 3, false);
+		assertFalse(copy.matches(grid, 3 * 10 + 9));
+	}
+}
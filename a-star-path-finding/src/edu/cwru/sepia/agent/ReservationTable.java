@@ -0,0 +1,113 @@
+package edu.cwru.sepia.agent;
+
+/**
+ * Space-time reservations for cooperative path planning.
+ *
+ * Each entry says which unit will stand on a cell at a time step. The entries live in an
+ * open addressing hash table keyed by (cell, time), so reserving a cell and looking up its
+ * owner are O(1) no matter how large the map or the time window is. The table is cleared
+ * by bumping a generation stamp instead of wiping its arrays.
+ */
+class ReservationTable {
+
+	private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+	private final long[] keys;
+	private final int[] owners;
+	private final int[] stamps;
+	private final int mask;
+	private final int shift;
+	private int generation = 1;
+	private int size;
+
+	/**
+	 * Creates a table that can hold the given number of reservations between clears
+	 *
+	 * @param capacity the most reservations that will be made between two calls to clear()
+	 */
+	public ReservationTable(int capacity) {
+		// Keep the load factor at or below one half so probe sequences stay short
+		int slots = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1;
+		keys = new long[slots];
+		owners = new int[slots];
+		stamps = new int[slots];
+		mask = slots - 1;
+		shift = 64 - Integer.numberOfTrailingZeros(slots);
+	}
+
+	/**
+	 * @return the number of reservations that can be made between two calls to clear()
+	 */
+	public int capacity() {
+		return keys.length / 2;
+	}
+
+	/**
+	 * @return the number of reservations made since the last clear()
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes every reservation in O(1)
+	 */
+	public void clear() {
+		generation++;
+		size = 0;
+	}
+
+	/**
+	 * Reserves a cell for a unit at a time step. Reserving a cell the unit already holds
+	 * does nothing.
+	 *
+	 * @param cell the cell index
+	 * @param time the time step
+	 * @param unit the unit making the reservation, at least 0
+	 * @return false if the cell was already reserved by another unit at that time
+	 */
+	public boolean reserve(int cell, int time, int unit) {
+		long key = key(cell, time);
+		int slot = slot(key);
+		while (stamps[slot] == generation) {
+			if (keys[slot] == key) {
+				return owners[slot] == unit;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		if (size >= capacity()) {
+			throw new IllegalStateException("Reservation table is full");
+		}
+		stamps[slot] = generation;
+		keys[slot] = key;
+		owners[slot] = unit;
+		size++;
+		return true;
+	}
+
+	/**
+	 * @param cell the cell index
+	 * @param time the time step
+	 * @return the unit that reserved the cell at that time, or -1 if it is free
+	 */
+	public int owner(int cell, int time) {
+		long key = key(cell, time);
+		int slot = slot(key);
+		while (stamps[slot] == generation) {
+			if (keys[slot] == key) {
+				return owners[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	private int slot(long key) {
+		return (int) ((key * HASH_MULTIPLIER) >>> shift);
+	}
+
+	private static long key(int cell, int time) {
+		return ((long) time << 32) | (cell & 0xFFFFFFFFL);
+	}
+}
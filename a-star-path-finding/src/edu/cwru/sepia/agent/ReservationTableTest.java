@@ -0,0 +1,47 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ReservationTableTest {
+
+	@Test
+	public void testReserveAndOwner() {
+		ReservationTable table = new ReservationTable(8);
+
+		assertTrue(table.reserve(5, 0, 1));
+		assertTrue(table.reserve(5, 1, 2));
+		assertEquals(1, table.owner(5, 0));
+		assertEquals(2, table.owner(5, 1));
+		assertEquals(-1, table.owner(5, 2));
+		assertEquals(-1, table.owner(6, 0));
+
+		// The same unit may reserve again, another unit may not
+		assertTrue(table.reserve(5, 0, 1));
+		assertFalse(table.reserve(5, 0, 2));
+		assertEquals(2, table.size());
+	}
+
+	@Test
+	public void testClear() {
+		ReservationTable table = new ReservationTable(4);
+		for (int time = 0; time < table.capacity(); time++) {
+			table.reserve(3, time, 0);
+		}
+
+		table.clear();
+		assertEquals(0, table.size());
+		assertEquals(-1, table.owner(3, 0));
+		assertTrue(table.reserve(3, 0, 1));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testFull() {
+		ReservationTable table = new ReservationTable(2);
+		for (int cell = 0; cell <= table.capacity(); cell++) {
+			table.reserve(cell, 0, 0);
+		}
+	}
+
+}
@@ -0,0 +1,42 @@
+package edu.cwru.sepia.agent;
+
+/**
+ * Work done by a search since the counters were last reset: nodes taken off the open list,
+ * nodes put on it, and the most nodes it held at once.
+ *
+ * Counting is a few increments per node, cheap enough to stay on for every search.
+ */
+class SearchCounters {
+
+	long expanded;
+	long generated;
+	int peakOpen;
+
+	/**
+	 * Starts counting from zero. The peak only counts nodes put on the open list from now on.
+	 */
+	public void reset() {
+		expanded = 0;
+		generated = 0;
+		peakOpen = 0;
+	}
+
+	/**
+	 * Counts a node put on the open list
+	 *
+	 * @param openSize the size of the open list with the node on it
+	 */
+	public void generated(int openSize) {
+		generated++;
+		if (openSize > peakOpen) {
+			peakOpen = openSize;
+		}
+	}
+
+	/**
+	 * Counts a node taken off the open list
+	 */
+	public void expanded() {
+		expanded++;
+	}
+}
@@ -0,0 +1,105 @@
+package edu.cwru.sepia.agent;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Collects one record per search of an episode and writes them to a JSON lines file, one
+ * object per line, when the episode ends.
+ *
+ * Each record holds the turn, the search mode, what triggered the search, the nodes
+ * expanded and generated, the peak size of the open list, the length of the path found,
+ * whether it came from the path cache and the wall time in nanoseconds. Records are kept in
+ * memory during the episode so no file is touched while the agent is playing.
+ */
+class SearchMetrics {
+
+	final File directory;
+	final String runName;
+
+	private final StringBuilder records = new StringBuilder();
+	private int episode;
+	private int searches;
+
+	/**
+	 * @param directory the directory the files are written to, created when needed
+	 * @param runName the start of every file name, the episode number and .jsonl are appended
+	 */
+	public SearchMetrics(File directory, String runName) {
+		this.directory = directory;
+		this.runName = runName;
+	}
+
+	/**
+	 * Drops any records not written yet and starts the next episode
+	 */
+	public void beginEpisode() {
+		episode++;
+		searches = 0;
+		records.setLength(0);
+	}
+
+	/**
+	 * Adds the record of a search to the current episode
+	 *
+	 * @param turn the turn the search ran on
+	 * @param mode the search mode
+	 * @param trigger why the search ran, such as initial or blocked
+	 * @param counters the work of the search, or null if the mode does not count it
+	 * @param pathLength the number of steps of the path found, or -1 if there is none
+	 * @param isCached true if the path came from the path cache
+	 * @param nanos the wall time of the search
+	 */
+	public void record(int turn, String mode, String trigger, SearchCounters counters, int pathLength, boolean isCached, long nanos) {
+		records.append("{\"episode\":").append(episode)
+			.append(",\"search\":").append(searches)
+			.append(",\"turn\":").append(turn)
+			.append(",\"mode\":\"").append(mode)
+			.append("\",\"trigger\":\"").append(trigger)
+			.append("\",\"expanded\":").append(counters == null ? 0 : counters.expanded)
+			.append(",\"generated\":").append(counters == null ? 0 : counters.generated)
+			.append(",\"peakOpen\":").append(counters == null ? 0 : counters.peakOpen)
+			.append(",\"pathLength\":").append(pathLength)
+			.append(",\"cached\":").append(isCached)
+			.append(",\"nanos\":").append(nanos)
+			.append("}\n");
+		searches++;
+	}
+
+	/**
+	 * @return the number of searches recorded in the current episode
+	 */
+	public int searches() {
+		return searches;
+	}
+
+	/**
+	 * Writes the records of the current episode and forgets them, so calling it again
+	 * before the next search writes nothing
+	 *
+	 * @return the file written, or null if there was nothing to write
+	 * @throws IOException if the directory or the file can't be written
+	 */
+	public File writeEpisode() throws IOException {
+		if (records.length() == 0) {
+			return null;
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Failed to create " + directory);
+		}
+
+		File file = new File(directory, runName + "-episode" + episode + ".jsonl");
+		Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+		try {
+			out.append(records);
+		} finally {
+			out.close();
+		}
+		records.setLength(0);
+		return file;
+	}
+}
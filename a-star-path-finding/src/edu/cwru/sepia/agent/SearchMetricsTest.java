@@ -0,0 +1,45 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SearchMetricsTest {
+
+	@Test
+	public void testWritesOneLinePerSearch() throws IOException {
+		File directory = Files.createTempDirectory("metrics").toFile();
+		SearchMetrics metrics = new SearchMetrics(new File(directory, "runs"), "astar-test");
+		try {
+			SearchCounters counters = new SearchCounters();
+			counters.generated(1);
+			counters.expanded();
+
+			metrics.beginEpisode();
+			metrics.record(0, "astar", "initial", counters, 12, false, 1500);
+			metrics.record(7, "astar", "blocked", null, -1, true, 300);
+			assertEquals(2, metrics.searches());
+
+			File file = metrics.writeEpisode();
+			assertEquals("astar-test-episode1.jsonl", file.getName());
+			List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+			assertEquals(2, lines.size());
+			assertEquals("{\"episode\":1,\"search\":0,\"turn\":0,\"mode\":\"astar\",\"trigger\":\"initial\",\"expanded\":1,\"generated\":1,"
+					+ "\"peakOpen\":1,\"pathLength\":12,\"cached\":false,\"nanos\":1500}", lines.get(0));
+			assertTrue(lines.get(1).contains("\"trigger\":\"blocked\",\"expanded\":0"));
+
+			// Written once per episode, however often the episode is ended
+			assertNull(metrics.writeEpisode());
+			file.delete();
+		} finally {
+			new File(directory, "runs").delete();
+			directory.delete();
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package edu.cwru.sepia.agent;
+
+/**
+ * A* over (cell, time) states that plans around a moving unit whose future cells are only
+ * known as a forecast.
+ *
+ * Every step is a move to a neighbor or a wait in place and takes one time step. States the
+ * forecast gives the moving unit at least BLOCKING_OCCUPANCY are left out, and so are the
+ * CLEARANCE states before it, since standing on a cell it is about to enter would make it
+ * turn around or swap cells with it. Other states cost more the likelier the unit is to be there,
+ * so the search waits or takes a short detour when that is cheaper than walking into it. Past
+ * the horizon of the forecast, or once next to the goal, the rest of the path follows the
+ * flow field.
+ */
+class SpaceTimeSearch {
+
+	// States at least this likely to hold the moving unit are treated as blocked
+	static final float BLOCKING_OCCUPANCY = 0.5f;
+
+	// Number of time steps to keep off a cell before the moving unit gets there
+	static final int CLEARANCE = 2;
+
+	// Extra cost of a step for each unit of probability that the moving unit is there
+	static final float RISK_COST = 4;
+
+	final int xExtent;
+	final int yExtent;
+	final int horizon;
+
+	private final int cells;
+
+	// Search arrays over (cell, time) states, indexed by time * cells + cell
+	private final int[] seen;
+	private final int[] closed;
+	private final int[] parent;
+	private final float[] cost;
+	private final IndexedMinHeap openList;
+	private int generation;
+
+	/**
+	 * Allocates the search arrays
+	 *
+	 * @param xExtent Width of the map
+	 * @param yExtent Height of the map
+	 * @param horizon the number of time steps planned around the moving unit
+	 */
+	public SpaceTimeSearch(int xExtent, int yExtent, int horizon) {
+		this.xExtent = xExtent;
+		this.yExtent = yExtent;
+		this.horizon = horizon;
+
+		cells = xExtent * yExtent;
+		seen = new int[cells * (horizon + 1)];
+		closed = new int[cells * (horizon + 1)];
+		parent = new int[cells * (horizon + 1)];
+		cost = new float[cells * (horizon + 1)];
+		openList = new IndexedMinHeap(cells * (horizon + 1));
+	}
+
+	/**
+	 * Plans a path from the start to a cell next to the goal
+	 *
+	 * @param start the cell index of the start
+	 * @param field distances to the goal, whose blocked cells are the static obstacles
+	 * @param blocker the forecast of the moving unit, with time 0 being now
+	 * @return the cell to stand on after each time step until next to the goal, where the
+	 * same cell twice in a row is a wait, or null if the goal can't be reached
+	 */
+	public int[] plan(int start, FlowField field, BlockerPredictor blocker) {
+		if (heuristic(start, field) == FlowField.UNREACHABLE) {
+			return null;
+		}
+
+		generation++;
+		openList.clear();
+
+		seen[start] = generation;
+		parent[start] = -1;
+		cost[start] = 0;
+		openList.insert(start, key(start, field));
+
+		// Without a way past the moving unit the path ignores it, the agent replans if it is still there
+		int end = start;
+		while (!openList.isEmpty()) {
+			int state = openList.poll();
+			closed[state] = generation;
+
+			int time = state / cells;
+			int cell = state - time * cells;
+			if (time == horizon || heuristic(cell, field) == 0) {
+				end = state;
+				break;
+			}
+
+			// Waiting in place
+			open(state, cell, time + 1, field, blocker);
+
+			int x = cell % xExtent;
+			int y = cell / xExtent;
+			for (int free = field.neighborMask(x, y); free != 0; free &= free - 1) {
+				int direction = Integer.numberOfTrailingZeros(free);
+				int neighborX = x + GridSearch.DX[direction];
+				int neighborY = y + GridSearch.DY[direction];
+				open(state, neighborY * xExtent + neighborX, time + 1, field, blocker);
+			}
+		}
+
+		int endTime = end / cells;
+		int[] path = new int[endTime + heuristic(end - endTime * cells, field)];
+		for (int state = end; parent[state] != -1; state = parent[state]) {
+			path[state / cells - 1] = state % cells;
+		}
+		for (int i = endTime, cell = end - endTime * cells; i < path.length; i++) {
+			cell = field.nextStep(cell % xExtent, cell / xExtent);
+			path[i] = cell;
+		}
+
+		return path;
+	}
+
+	/**
+	 * @return the counters of the open list, which add up over plans until reset
+	 */
+	public SearchCounters counters() {
+		return openList.counters;
+	}
+
+	private void open(int from, int cell, int time, FlowField field, BlockerPredictor blocker) {
+		int state = time * cells + cell;
+		if (heuristic(cell, field) == FlowField.UNREACHABLE || (seen[state] == generation && closed[state] == generation)) {
+			return;
+		}
+		for (int ahead = 1; ahead <= CLEARANCE; ahead++) {
+			if (blocker.occupancy(cell, time + ahead) >= BLOCKING_OCCUPANCY) {
+				return;
+			}
+		}
+
+		float occupancy = blocker.occupancy(cell, time);
+		if (occupancy >= BLOCKING_OCCUPANCY) {
+			return;
+		}
+
+		float newCost = cost[from] + 1 + RISK_COST * occupancy;
+		if (seen[state] != generation) {
+			seen[state] = generation;
+			cost[state] = newCost;
+			parent[state] = from;
+			openList.insert(state, key(state, field));
+		}
+		else if (newCost < cost[state]) {
+			cost[state] = newCost;
+			parent[state] = from;
+			openList.decreaseKey(state, key(state, field));
+		}
+	}
+
+	/**
+	 * Risk makes f fractional, so ties are broken below the resolution of f instead of on a
+	 * scale of their own. f is a float, and adding less than half of its ulp keeps every
+	 * difference between two f values while ordering the equal ones by time.
+	 *
+	 * @return f = cost + distance to the goal, with ties broken toward later states
+	 */
+	private double key(int state, FlowField field) {
+		int time = state / cells;
+		float f = cost[state] + heuristic(state - time * cells, field);
+		return f + 0.5 * Math.ulp(f) * (horizon - time) / (horizon + 1.0);
+	}
+
+	private int heuristic(int cell, FlowField field) {
+		return field.distance(cell % xExtent, cell / xExtent);
+	}
+}
@@ -0,0 +1,124 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SpaceTimeSearchTest {
+
+	/*
+	 * - - - - - - -
+	 * x x x - x x H
+	 *
+	 * The footman starts on (0, 0) and the enemy walks from (6, 0) down the corridor to (3, 1),
+	 * which it reaches at time 3 and leaves the corridor free again
+	 */
+	@Test
+	public void testAvoidsForecastCells() {
+		FlowField field = new FlowField(7, 2, 6, 1);
+		ObstacleGrid grid = new ObstacleGrid(7, 2);
+		for (int x : new int[] {0, 1, 2, 4, 5}) {
+			field.block(x, 1);
+			grid.setBlocked(x, 1, true);
+		}
+		field.build();
+
+		BlockerPredictor predictor = new BlockerPredictor(8);
+		predictor.observe(0, 6, 0, 3, 1);
+		predictor.predict(grid, -1);
+
+		SpaceTimeSearch search = new SpaceTimeSearch(7, 2, 8);
+		int[] path = search.plan(0, field, predictor);
+
+		assertNotNull(path);
+		int previous = 0;
+		for (int time = 1; time <= path.length; time++) {
+			int cell = path[time - 1];
+			assertTrue(predictor.occupancy(cell, time) < SpaceTimeSearch.BLOCKING_OCCUPANCY);
+			assertTrue(Math.abs(cell % 7 - previous % 7) <= 1 && Math.abs(cell / 7 - previous / 7) <= 1);
+			previous = cell;
+		}
+		// Ends next to the townhall
+		assertEquals(0, field.distance(previous % 7, previous / 7));
+	}
+
+	@Test
+	public void testWaitsForUnitToPass() {
+		/*
+		 * - x
+		 * - -
+		 * - H
+		 *
+		 * The enemy is about to step onto (0, 1), the only way down, and then moves on to (1, 1)
+		 */
+		FlowField field = new FlowField(2, 3, 1, 2);
+		field.block(1, 0);
+		field.build();
+		ObstacleGrid grid = new ObstacleGrid(2, 3);
+		grid.setBlocked(1, 0, true);
+
+		BlockerPredictor predictor = new BlockerPredictor(4);
+		predictor.observe(0, 0, 2, -1, -1);
+		predictor.observe(1, 0, 1, -1, -1);
+		predictor.predict(grid, -1);
+
+		SpaceTimeSearch search = new SpaceTimeSearch(2, 3, 4);
+		int[] path = search.plan(0, field, predictor);
+
+		assertNotNull(path);
+		for (int time = 1; time <= path.length; time++) {
+			assertTrue(predictor.occupancy(path[time - 1], time) < SpaceTimeSearch.BLOCKING_OCCUPANCY);
+		}
+	}
+
+	@Test
+	public void testTakesCheaperFractionalRisk() {
+		/*
+		 * - - - x
+		 * - x - -
+		 * - - H x
+		 *
+		 * Both ways down take two steps, the enemy may be on (2, 1) at time 2 with a small chance
+		 */
+		FlowField field = new FlowField(4, 3, 2, 2);
+		field.block(3, 0);
+		field.block(1, 1);
+		field.block(3, 2);
+		field.build();
+
+		BlockerPredictor predictor = new BlockerPredictor(3) {
+			@Override
+			public float occupancy(int cell, int time) {
+				return cell == 6 && time == 2 ? 0.03f : 0;
+			}
+		};
+		SpaceTimeSearch search = new SpaceTimeSearch(4, 3, 3);
+		assertArrayEquals(new int[] {4, 9}, search.plan(0, field, predictor));
+	}
+
+	@Test
+	public void testUnreachableGoal() {
+		FlowField field = new FlowField(3, 1, 2, 0);
+		field.block(1, 0);
+		field.build();
+
+		BlockerPredictor predictor = new BlockerPredictor(4);
+		SpaceTimeSearch search = new SpaceTimeSearch(3, 1, 4);
+		assertNull(search.plan(0, field, predictor));
+	}
+
+	@Test
+	public void testFollowsFieldWithoutUnit() {
+		FlowField field = new FlowField(8, 8, 7, 7);
+		field.build();
+
+		BlockerPredictor predictor = new BlockerPredictor(4);
+		predictor.predict(new ObstacleGrid(8, 8), -1);
+		SpaceTimeSearch search = new SpaceTimeSearch(8, 8, 4);
+		int[] path = search.plan(0, field, predictor);
+
+		// Six diagonal steps to (6, 6), without any waits
+		assertEquals(6, path.length);
+		assertEquals(6 * 8 + 6, path[5]);
+	}
+}
@@ -0,0 +1,122 @@
+package edu.cwru.sepia.agent;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plans ahead, on a background thread, the paths the agent would need if the enemy footman
+ * stepped onto its path next turn, so a blocked footman can switch paths without a search.
+ *
+ * Between turns the agent asks for paths from where its footman will stand around each cell
+ * the enemy footman could move to that lies ahead on the path. One daemon thread searches
+ * them on a copy of the obstacles and keeps them in a small path cache that evicts the least
+ * recently used. A new request supersedes the one still being worked on. When the enemy
+ * footman does get in the way the agent takes the path planned around its actual cell if it
+ * is ready, and searches itself otherwise.
+ */
+class SpeculativePlanner {
+
+	private final String mode;
+	private final boolean useJumpPoints;
+	private final PathCache ready;
+	private final ExecutorService thread;
+
+	// Bumped by every request, a request that is no longer the latest stops
+	private final AtomicInteger generation = new AtomicInteger();
+	private final AtomicInteger planned = new AtomicInteger();
+
+	// The copy of the obstacles searched by the thread and the fingerprint it was made from
+	private PathQueryService service;
+	private long fingerprint;
+
+	/**
+	 * @param mode the name of the search the agent would otherwise run, as in PathCache.Key
+	 * @param capacity the most paths kept, at least 1
+	 * @param useJumpPoints true to search with JPS instead of A*
+	 */
+	public SpeculativePlanner(String mode, int capacity, boolean useJumpPoints) {
+		this.mode = mode;
+		this.useJumpPoints = useJumpPoints;
+		this.ready = new PathCache(capacity);
+		this.thread = Executors.newSingleThreadExecutor(runnable -> {
+			Thread daemon = new Thread(runnable, "speculative-planner");
+			daemon.setDaemon(true);
+			return daemon;
+		});
+	}
+
+	/**
+	 * Starts planning a path for each pair of a start and a blocker, in the order given. At
+	 * most the capacity of the cache is planned, the pairs after that are dropped.
+	 *
+	 * @param obstacles the current obstacles, copied if they changed since the last request
+	 * @param goal the cell index of the goal
+	 * @param starts the cell index the footman is expected on when the blocker is at the same
+	 * index of blockers
+	 * @param blockers the cell indices the enemy footman could step onto
+	 */
+	public void request(ObstacleGrid obstacles, int goal, int[] starts, int[] blockers) {
+		int current = generation.incrementAndGet();
+		if (service == null || !service.obstacles.fits(obstacles.xExtent, obstacles.yExtent) || obstacles.fingerprint() != fingerprint) {
+			service = new PathQueryService(obstacles, ForkJoinPool.commonPool(), useJumpPoints);
+			fingerprint = obstacles.fingerprint();
+		}
+
+		PathQueryService layout = service;
+		long layoutFingerprint = fingerprint;
+		int count = Math.min(starts.length, ready.capacity());
+		thread.execute(() -> {
+			for (int i = 0; i < count && generation.get() == current; i++) {
+				int[] cells = layout.findPath(starts[i], goal, blockers[i]);
+				synchronized (ready) {
+					ready.put(new PathCache.Key(mode, starts[i], goal, blockers[i], layoutFingerprint), cells == null ? PathCache.NO_PATH : cells);
+				}
+				planned.incrementAndGet();
+			}
+		});
+	}
+
+	/**
+	 * Looks up a path planned ahead and counts it as a hit or a miss
+	 *
+	 * @param obstacles the current obstacles
+	 * @param start the cell index of the footman
+	 * @param goal the cell index of the goal
+	 * @param blocker the cell index of the enemy footman
+	 * @return the cells of the path in the order they are walked, PathCache.NO_PATH if there is
+	 * none, or null if it was not planned or is not ready yet
+	 */
+	public int[] get(ObstacleGrid obstacles, int start, int goal, int blocker) {
+		PathCache.Key key = new PathCache.Key(mode, start, goal, blocker, obstacles.fingerprint());
+		synchronized (ready) {
+			return ready.get(key);
+		}
+	}
+
+	/**
+	 * @return the number of paths the thread has planned
+	 */
+	public int planned() {
+		return planned.get();
+	}
+
+	/**
+	 * @return the number of lookups that found a path
+	 */
+	public long hits() {
+		synchronized (ready) {
+			return ready.hits();
+		}
+	}
+
+	/**
+	 * @return the number of lookups that found nothing
+	 */
+	public long misses() {
+		synchronized (ready) {
+			return ready.misses();
+		}
+	}
+}
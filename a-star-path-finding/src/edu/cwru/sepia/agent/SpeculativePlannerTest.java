@@ -0,0 +1,58 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SpeculativePlannerTest {
+
+	private static final String[] MAZE = {
+		"....x.....",
+		".xx.x.xxx.",
+		".x..x...x.",
+		".x.xxxx.x.",
+		".x......x.",
+		".xxxxxxxx.",
+		"..........",
+	};
+
+	private static void awaitPlanned(SpeculativePlanner planner, int count) throws InterruptedException {
+		for (int i = 0; i < 1000 && planner.planned() < count; i++) {
+			Thread.sleep(5);
+		}
+		assertEquals(count, planner.planned());
+	}
+
+	@Test
+	public void testPlansAroundEachBlocker() throws InterruptedException {
+		ObstacleGrid grid = TestGrids.grid(MAZE);
+		PathQueryService service = new PathQueryService(grid);
+		SpeculativePlanner planner = new SpeculativePlanner("ASTAR", 4, false);
+
+		// From the top left corner to the bottom right one, with the enemy on the left or the right column
+		planner.request(grid, 69, new int[] {0, 0}, new int[] {30, 39});
+		awaitPlanned(planner, 2);
+
+		assertArrayEquals(service.findPath(0, 69, 30), planner.get(grid, 0, 69, 30));
+		assertArrayEquals(service.findPath(0, 69, 39), planner.get(grid, 0, 69, 39));
+		assertNull(planner.get(grid, 0, 69, 31));
+		assertEquals(2, planner.hits());
+		assertEquals(1, planner.misses());
+	}
+
+	@Test
+	public void testLayoutChanges() throws InterruptedException {
+		ObstacleGrid grid = TestGrids.grid(MAZE);
+		SpeculativePlanner planner = new SpeculativePlanner("JPS", 4, true);
+
+		// Walled in by the enemy there is no path
+		planner.request(grid, 69, new int[] {0}, new int[] {10});
+		awaitPlanned(planner, 1);
+		grid.setBlocked(1, 0, true);
+		assertNull(planner.get(grid, 0, 69, 10));
+
+		planner.request(grid, 69, new int[] {0}, new int[] {10});
+		awaitPlanned(planner, 2);
+		assertSame(PathCache.NO_PATH, planner.get(grid, 0, 69, 10));
+	}
+}
@@ -0,0 +1,169 @@
+package edu.cwru.sepia.agent;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The cost of stepping onto each cell of a map, a small positive integer.
+ *
+ * Every cell costs 1 until it is set otherwise, so roads are cells left at 1 and swamps
+ * or cells near an enemy are cells that cost more. A step costs the same straight or
+ * diagonal, like every other step on the grid. The smallest and largest cost on the map are
+ * kept up to date for the heuristic and the bucket queue of BucketSearch.
+ *
+ * A terrain file has one line per map row with one digit from 1 to 9 per cell. Empty lines
+ * and lines starting with # are skipped.
+ */
+class TerrainCosts {
+
+	// Largest cost a cell can have, which bounds the number of buckets in BucketSearch
+	static final int MAX_COST = 255;
+
+	final int xExtent;
+	final int yExtent;
+
+	private final int[] costs;
+
+	// Number of cells with each cost, from which the smallest and largest cost are read
+	private final int[] cellsWithCost;
+	private int minCost = 1;
+	private int maxCost = 1;
+
+	/**
+	 * Creates terrain where every cell costs 1
+	 *
+	 * @param xExtent Width of the map
+	 * @param yExtent Height of the map
+	 */
+	public TerrainCosts(int xExtent, int yExtent) {
+		this.xExtent = xExtent;
+		this.yExtent = yExtent;
+
+		costs = new int[xExtent * yExtent];
+		Arrays.fill(costs, 1);
+		cellsWithCost = new int[MAX_COST + 1];
+		cellsWithCost[1] = costs.length;
+	}
+
+	/**
+	 * @return terrain with the same costs that later changes to this one do not affect
+	 */
+	public TerrainCosts copy() {
+		TerrainCosts copy = new TerrainCosts(xExtent, yExtent);
+		System.arraycopy(costs, 0, copy.costs, 0, costs.length);
+		System.arraycopy(cellsWithCost, 0, copy.cellsWithCost, 0, cellsWithCost.length);
+		copy.minCost = minCost;
+		copy.maxCost = maxCost;
+		return copy;
+	}
+
+	/**
+	 * @param x X coordinate of the cell
+	 * @param y Y coordinate of the cell
+	 * @param cost the cost of stepping onto the cell, from 1 to MAX_COST
+	 */
+	public void set(int x, int y, int cost) {
+		if (cost < 1 || cost > MAX_COST) {
+			throw new IllegalArgumentException("Cost " + cost + " of (" + x + ", " + y + ") is not between 1 and " + MAX_COST);
+		}
+
+		int cell = y * xExtent + x;
+		cellsWithCost[costs[cell]]--;
+		cellsWithCost[cost]++;
+		costs[cell] = cost;
+
+		while (cellsWithCost[minCost] == 0 && minCost < MAX_COST) {
+			minCost++;
+		}
+		minCost = Math.min(minCost, cost);
+		while (cellsWithCost[maxCost] == 0 && maxCost > 1) {
+			maxCost--;
+		}
+		maxCost = Math.max(maxCost, cost);
+	}
+
+	/**
+	 * @param cell a cell index
+	 * @return the cost of stepping onto the cell
+	 */
+	public int cost(int cell) {
+		return costs[cell];
+	}
+
+	/**
+	 * @return the smallest cost of any cell
+	 */
+	public int minCost() {
+		return minCost;
+	}
+
+	/**
+	 * @return the largest cost of any cell
+	 */
+	public int maxCost() {
+		return maxCost;
+	}
+
+	/**
+	 * @param xExtent Width of the map
+	 * @param yExtent Height of the map
+	 * @return true if the terrain was made for a map with the given dimensions
+	 */
+	public boolean fits(int xExtent, int yExtent) {
+		return this.xExtent == xExtent && this.yExtent == yExtent;
+	}
+
+	/**
+	 * Reads a terrain file
+	 *
+	 * @param file the file to read
+	 * @return the terrain, as wide as its rows and as high as its number of rows
+	 * @throws IOException if the file can't be read or holds something other than digits
+	 */
+	public static TerrainCosts load(File file) throws IOException {
+		List<String> rows = new ArrayList<String>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (!line.isEmpty() && !line.startsWith("#")) {
+					rows.add(line);
+				}
+			}
+		} finally {
+			in.close();
+		}
+
+		int xExtent = 0;
+		for (String row : rows) {
+			xExtent = Math.max(xExtent, row.length());
+		}
+		if (rows.isEmpty() || xExtent == 0) {
+			throw new IOException(file + " holds no terrain");
+		}
+
+		TerrainCosts terrain = new TerrainCosts(xExtent, rows.size());
+		for (int y = 0; y < rows.size(); y++) {
+			String row = rows.get(y);
+			if (row.length() != xExtent) {
+				throw new IOException("Row " + y + " of " + file + " has " + row.length() + " cells, expected " + xExtent);
+			}
+			for (int x = 0; x < xExtent; x++) {
+				char cost = row.charAt(x);
+				if (cost < '1' || cost > '9') {
+					throw new IOException("Unexpected '" + cost + "' at (" + x + ", " + y + ") of " + file);
+				}
+				terrain.set(x, y, cost - '0');
+			}
+		}
+		return terrain;
+	}
+}
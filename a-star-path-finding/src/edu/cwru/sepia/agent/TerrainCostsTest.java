@@ -0,0 +1,65 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TerrainCostsTest {
+
+	@Test
+	public void testMinAndMaxFollowChanges() {
+		TerrainCosts terrain = new TerrainCosts(4, 4);
+		assertEquals(1, terrain.minCost());
+		assertEquals(1, terrain.maxCost());
+
+		terrain.set(1, 1, 7);
+		assertEquals(1, terrain.minCost());
+		assertEquals(7, terrain.maxCost());
+		assertEquals(7, terrain.cost(5));
+
+		TerrainCosts copy = terrain.copy();
+		terrain.set(1, 1, 1);
+		assertEquals(1, terrain.maxCost());
+		assertEquals(7, copy.maxCost());
+
+		for (int cell = 0; cell < 16; cell++) {
+			terrain.set(cell % 4, cell / 4, 3);
+		}
+		assertEquals(3, terrain.minCost());
+		assertEquals(3, terrain.maxCost());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsZeroCost() {
+		new TerrainCosts(2, 2).set(0, 0, 0);
+	}
+
+	@Test
+	public void testLoad() throws IOException {
+		File file = File.createTempFile("terrain", ".txt");
+		try {
+			Files.write(file.toPath(), Arrays.asList("# swamp in the middle", "111", "191", "", "111"), StandardCharsets.UTF_8);
+			TerrainCosts terrain = TerrainCosts.load(file);
+
+			assertTrue(terrain.fits(3, 3));
+			assertEquals(9, terrain.cost(4));
+			assertEquals(9, terrain.maxCost());
+
+			Files.write(file.toPath(), Arrays.asList("111", "1x1"), StandardCharsets.UTF_8);
+			try {
+				TerrainCosts.load(file);
+				fail("Loaded a terrain file with an obstacle in it");
+			} catch (IOException e) {
+				assertTrue(e.getMessage().contains("(1, 1)"));
+			}
+		} finally {
+			file.delete();
+		}
+	}
+}
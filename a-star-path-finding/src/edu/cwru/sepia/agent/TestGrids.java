@@ -0,0 +1,27 @@
+package edu.cwru.sepia.agent;
+
+/**
+ * Obstacle grids drawn as rows of text for the tests
+ */
+class TestGrids {
+
+	private TestGrids() {
+	}
+
+	/**
+	 * @param rows one string per row of the map, top row first, where 'x' is an obstacle and
+	 * any other character a free cell
+	 * @return the obstacles of the map
+	 */
+	static ObstacleGrid grid(String... rows) {
+		ObstacleGrid grid = new ObstacleGrid(rows[0].length(), rows.length);
+		for (int y = 0; y < rows.length; y++) {
+			for (int x = 0; x < rows[y].length(); x++) {
+				if (rows[y].charAt(x) == 'x') {
+					grid.setBlocked(x, y, true);
+				}
+			}
+		}
+		return grid;
+	}
+}
@@ -0,0 +1,197 @@
+package edu.cwru.sepia.agent;
+
+import java.util.Arrays;
+
+/**
+ * Lazy Theta* on the search arrays of GridSearch: a path of waypoints where each one can
+ * see the next.
+ *
+ * A cell reached from a neighbor takes the neighbor's parent as its own parent, on the
+ * assumption that the parent can see it. The line of sight is only checked once the cell is
+ * taken off the open list. If it is blocked the cell falls back to the best closed neighbor,
+ * as in A*, and goes back on the open list with its higher cost. A straight line costs its
+ * Chebyshev length, which is the number of grid steps it takes, so the path is as short as
+ * the one of A* but has a waypoint only where it has to turn.
+ *
+ * A line from one cell to another is walked as the cells nearest to it, one step per unit
+ * of Chebyshev distance. It is seen through if every one of those cells is free, and path()
+ * walks the same cells.
+ */
+class ThetaSearch extends GridSearch {
+
+	/**
+	 * Allocates the search arrays for the map of an obstacle grid
+	 *
+	 * @param obstacles the static obstacles, read by every search
+	 */
+	public ThetaSearch(ObstacleGrid obstacles) {
+		super(obstacles);
+	}
+
+	@Override
+	public int search(int startX, int startY, int goalX, int goalY) {
+		this.goalX = goalX;
+		this.goalY = goalY;
+
+		int start = startY * xExtent + startX;
+		int goal = goalY * xExtent + goalX;
+		gCost[start] = 0;
+		parent[start] = -1;
+		open(start, 0);
+
+		while (!openSet.isEmpty()) {
+			int current = openSet.poll();
+
+			// A cell that costs more than assumed waits its turn again, and can still be reached cheaper
+			if (!checkParent(current)) {
+				open(current, gCost[current]);
+				continue;
+			}
+			if (current == goal) {
+				return goal;
+			}
+
+			setState(current, CLOSED);
+			expand(current);
+		}
+
+		return -1;
+	}
+
+	@Override
+	void expand(int cell) {
+		int x = cell % xExtent;
+		int y = cell / xExtent;
+		int from = parent[cell] == -1 ? cell : parent[cell];
+		for (int free = obstacles.neighborMask(x, y); free != 0; free &= free - 1) {
+			int direction = Integer.numberOfTrailingZeros(free);
+			int neighborX = x + DX[direction];
+			int neighborY = y + DY[direction];
+			int neighbor = neighborY * xExtent + neighborX;
+			relax(from, neighbor, gCost[from] + distance(from, neighbor));
+		}
+	}
+
+	/**
+	 * @param goal the cell index the last search returned
+	 * @return the cell indices in the order they are walked, without the start and the goal,
+	 * or null if the goal is the start
+	 */
+	@Override
+	public int[] path(int goal) {
+		if (parent[goal] == -1) {
+			return null;
+		}
+
+		int length = 0;
+		for (int cell = goal; parent[cell] != -1; cell = parent[cell]) {
+			length += distance(parent[cell], cell);
+		}
+
+		// Each line is walked from its far end back, the step into the goal is left out
+		int[] cells = new int[length - 1];
+		int index = length - 1;
+		for (int cell = goal; parent[cell] != -1; cell = parent[cell]) {
+			int from = parent[cell];
+			for (int step = distance(from, cell); step > 0; step--) {
+				if (index < length - 1) {
+					cells[index] = lineCell(from, cell, step);
+				}
+				index--;
+			}
+		}
+		return cells;
+	}
+
+	/**
+	 * @param goal the cell index the last search returned
+	 * @return the cells of path(goal) where the path turns, followed by its last cell, or an
+	 * empty array if the path has no cells
+	 */
+	public int[] waypoints(int goal) {
+		int[] cells = path(goal);
+		if (cells == null || cells.length == 0) {
+			return new int[0];
+		}
+
+		int count = 0;
+		for (int cell = parent[goal]; parent[cell] != -1; cell = parent[cell]) {
+			count++;
+		}
+
+		// The last line ends in the goal, so it ends at the cell before it instead
+		int[] waypoints = new int[count + 1];
+		waypoints[count] = cells[cells.length - 1];
+		for (int cell = parent[goal], index = count - 1; parent[cell] != -1; cell = parent[cell], index--) {
+			waypoints[index] = cell;
+		}
+		if (count > 0 && waypoints[count - 1] == waypoints[count]) {
+			return Arrays.copyOf(waypoints, count);
+		}
+		return waypoints;
+	}
+
+	/**
+	 * @param from a cell index
+	 * @param to a cell index
+	 * @return true if every cell on the line from one to the other is free in this search
+	 */
+	boolean lineOfSight(int from, int to) {
+		int steps = distance(from, to);
+		for (int step = 1; step < steps; step++) {
+			int cell = lineCell(from, to, step);
+			if (!obstacles.isPassable(cell % xExtent, cell / xExtent) || state(cell) == BLOCKED) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gives a cell whose parent can't see it the closed neighbor that reaches it cheapest
+	 *
+	 * @return true if the parent can see the cell
+	 */
+	private boolean checkParent(int cell) {
+		int from = parent[cell];
+		if (from == -1 || lineOfSight(from, cell)) {
+			return true;
+		}
+
+		int x = cell % xExtent;
+		int y = cell / xExtent;
+		gCost[cell] = Float.POSITIVE_INFINITY;
+		for (int free = obstacles.neighborMask(x, y); free != 0; free &= free - 1) {
+			int direction = Integer.numberOfTrailingZeros(free);
+			int neighborX = x + DX[direction];
+			int neighborY = y + DY[direction];
+			int neighbor = neighborY * xExtent + neighborX;
+			if (state(neighbor) == CLOSED && gCost[neighbor] + 1 < gCost[cell]) {
+				gCost[cell] = gCost[neighbor] + 1;
+				parent[cell] = neighbor;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the number of steps from one cell to the other
+	 */
+	private int distance(int from, int to) {
+		return Math.max(Math.abs(to % xExtent - from % xExtent), Math.abs(to / xExtent - from / xExtent));
+	}
+
+	/**
+	 * @return the cell a number of steps along the line from one cell to the other
+	 */
+	private int lineCell(int from, int to, int step) {
+		int fromX = from % xExtent;
+		int fromY = from / xExtent;
+		int steps = distance(from, to);
+
+		// Rounds to the nearest cell, halves up
+		int x = fromX + Math.floorDiv(2 * step * (to % xExtent - fromX) + steps, 2 * steps);
+		int y = fromY + Math.floorDiv(2 * step * (to / xExtent - fromY) + steps, 2 * steps);
+		return y * xExtent + x;
+	}
+}
@@ -0,0 +1,109 @@
+package edu.cwru.sepia.agent;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ThetaSearchTest {
+
+	@Test
+	public void testOpenMapNeedsNoTurns() {
+		ThetaSearch search = new ThetaSearch(new ObstacleGrid(12, 6));
+		search.beginSearch();
+		int goal = search.search(0, 0, 10, 3);
+
+		int[] cells = search.path(goal);
+		assertEquals(9, cells.length);
+		assertArrayEquals(new int[] {cells[8]}, search.waypoints(goal));
+		assertEquals(goal, cells[8] + 1);
+	}
+
+	@Test
+	public void testTurnsAroundWall() {
+		/*
+		 * S . . x . .
+		 * . . . x . .
+		 * . . . x . .
+		 * . . . . . G
+		 */
+		ObstacleGrid grid = new ObstacleGrid(6, 4);
+		for (int y = 0; y < 3; y++) {
+			grid.setBlocked(3, y, true);
+		}
+
+		ThetaSearch search = new ThetaSearch(grid);
+		search.beginSearch();
+		int goal = search.search(0, 0, 5, 3);
+
+		assertEquals(4, search.path(goal).length);
+		int[] waypoints = search.waypoints(goal);
+		assertEquals(2, waypoints.length);
+		assertTrue(search.lineOfSight(waypoints[0], waypoints[1]));
+		assertFalse(search.lineOfSight(0, waypoints[1]));
+	}
+
+	@Test
+	public void testPathsAreAsShortAsAstar() {
+		Random random = new Random(11);
+		ObstacleGrid grid = new ObstacleGrid(30, 20);
+		for (int cell = 0; cell < 30 * 20; cell++) {
+			if (random.nextInt(4) == 0) {
+				grid.setBlocked(cell % 30, cell / 30, true);
+			}
+		}
+
+		ThetaSearch theta = new ThetaSearch(grid);
+		GridSearch astar = new GridSearch(grid);
+		for (int query = 0; query < 300; query++) {
+			int start = random.nextInt(30 * 20);
+			int goal = random.nextInt(30 * 20);
+			if (start == goal || !grid.isPassable(start % 30, start / 30) || !grid.isPassable(goal % 30, goal / 30)) {
+				continue;
+			}
+
+			astar.beginSearch();
+			theta.beginSearch();
+			int expected = astar.search(start % 30, start / 30, goal % 30, goal / 30);
+			int reached = theta.search(start % 30, start / 30, goal % 30, goal / 30);
+			if (expected == -1) {
+				assertEquals(-1, reached);
+				continue;
+			}
+
+			int[] cells = theta.path(reached);
+			assertEquals(astar.path(expected).length, cells.length);
+
+			int previous = start;
+			for (int cell : cells) {
+				assertTrue(grid.isPassable(cell % 30, cell / 30));
+				assertTrue(Math.abs(cell % 30 - previous % 30) <= 1 && Math.abs(cell / 30 - previous / 30) <= 1);
+				previous = cell;
+			}
+
+			// Every leg but the one into the goal, which stops short of it, is a straight line
+			int[] waypoints = theta.waypoints(reached);
+			previous = start;
+			for (int i = 0; i < waypoints.length - 1; i++) {
+				assertTrue(theta.lineOfSight(previous, waypoints[i]));
+				previous = waypoints[i];
+			}
+			assertTrue(cells.length == 0 || waypoints[waypoints.length - 1] == cells[cells.length - 1]);
+		}
+	}
+
+	@Test
+	public void testBlockedCellCutsLineOfSight() {
+		ThetaSearch search = new ThetaSearch(new ObstacleGrid(5, 3));
+		search.beginSearch();
+		search.block(2, 0);
+
+		assertFalse(search.lineOfSight(0, 4));
+		int goal = search.search(0, 0, 4, 0);
+		assertEquals(3, search.path(goal).length);
+
+		// One line from the start passes below the blocked cell
+		assertArrayEquals(new int[] {8}, search.waypoints(goal));
+	}
+}